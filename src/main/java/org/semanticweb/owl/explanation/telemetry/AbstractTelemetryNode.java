@@ -0,0 +1,126 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.semanticweb.owlapi.model.OWLAxiom;
+
+/**
+ * A base for {@link TelemetryNode} implementations that derives the convenience methods from
+ * {@link #getProperties()} and {@link #getChildren()}.  The maximum, minimum and mean of a property are computed
+ * over the subtree rooted at the node, including the node itself, and only take account of values that can be
+ * parsed as numbers.  The first aggregate query on a node indexes its subtree with {@link TelemetryAggregateIndex},
+ * so later queries on the node, and on the nodes in its subtree, are looked up rather than computed.
+ */
+public abstract class AbstractTelemetryNode implements TelemetryNode {
+
+    private volatile Map<String, PropertyAggregate> aggregates;
+
+    public boolean hasPropertyValue(String name) {
+        return getProperties().getProperty(name) != null;
+    }
+
+    public Set<String> getPropertyNames() {
+        Set<String> result = new LinkedHashSet<String>();
+        for (Object key : getProperties().keySet()) {
+            result.add((String) key);
+        }
+        return result;
+    }
+
+    public Set<String> getChildPropertyNames() {
+        Set<String> result = new LinkedHashSet<String>();
+        for (TelemetryNode child : getChildren()) {
+            result.addAll(child.getPropertyNames());
+        }
+        return result;
+    }
+
+    public Double getMaxPropertyValue(String name) {
+        return getPropertyAggregate(name).getMax();
+    }
+
+    public Double getMinPropertyValue(String name) {
+        return getPropertyAggregate(name).getMin();
+    }
+
+    public Double getMeanPropertyValue(String name) {
+        return getPropertyAggregate(name).getMean();
+    }
+
+    /**
+     * Gets the aggregate of a property over the subtree rooted at this node.  The subtree is indexed by
+     * {@link TelemetryAggregateIndex} if it has not been indexed already.
+     * @return The aggregate.  If no node in the subtree has a numeric value for the property then the aggregate
+     * has a count of zero.
+     */
+    public PropertyAggregate getPropertyAggregate(String name) {
+        Map<String, PropertyAggregate> index = aggregates;
+        if (index == null) {
+            index = TelemetryAggregateIndex.build(this);
+        }
+        PropertyAggregate aggregate = index.get(name);
+        return aggregate != null ? aggregate : new PropertyAggregate();
+    }
+
+    Map<String, PropertyAggregate> getAggregates() {
+        return aggregates;
+    }
+
+    void setAggregates(Map<String, PropertyAggregate> aggregates) {
+        this.aggregates = aggregates;
+    }
+
+    /**
+     * Discards the aggregates of this node and its ancestors, which no longer hold once the subtree has changed.
+     * A subtree is always indexed as a whole, so the ancestors of a node that has not been indexed have not been
+     * indexed either, and nothing is walked whilst a tree that has not been queried, such as one that a reader is
+     * building, changes.
+     */
+    protected void invalidateAggregates() {
+        TelemetryNode node = this;
+        while (node instanceof AbstractTelemetryNode && ((AbstractTelemetryNode) node).aggregates != null) {
+            ((AbstractTelemetryNode) node).aggregates = null;
+            node = node.getParent();
+        }
+    }
+
+    /**
+     * Axioms are recorded as objects rather than as property values, so this implementation always returns null.
+     * The rendering of an axiom can be read with {@link #getInputStream(String)}.
+     */
+    public OWLAxiom getPropertyValueAsAxiom(String name) {
+        return null;
+    }
+
+    public Integer getPropertyValueAsInt(String name) {
+        String value = getProperties().getProperty(name);
+        if (value == null) {
+            return null;
+        }
+        return Integer.valueOf(value.trim());
+    }
+
+    public Double getPropertyValueAsDouble(String name) {
+        return parseDouble(getProperties().getProperty(name));
+    }
+
+    static Double parseDouble(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        Properties properties = getProperties();
+        return getName() + properties;
+    }
+}
@@ -0,0 +1,445 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TelemetryReceiver} that folds consecutive siblings with the same name into a single aggregated
+ * transmission before passing them on to another receiver.  This keeps the shape of the tree, but a transmission
+ * with thousands of identically named children is written with one child instead of thousands.
+ * <p>
+ * An aggregated transmission has the name of the transmissions that it folds and a
+ * {@link #AGGREGATED_COUNT_MEASUREMENT_NAME} measurement giving how many there were.  Each numeric measurement
+ * <code>m</code> of the folded transmissions becomes the measurements <code>m.count</code>, <code>m.sum</code>,
+ * <code>m.min</code>, <code>m.max</code> and <code>m.mean</code>; booleans count as 1 or 0.  A measurement that
+ * is not numeric keeps the first value that was recorded for it.  Objects and exceptions are counted in
+ * {@link #OBJECT_COUNT_MEASUREMENT_NAME} and {@link #EXCEPTION_COUNT_MEASUREMENT_NAME} measurements.
+ * <p>
+ * The children of the folded transmissions are folded in the same way, into runs of consecutive children with
+ * the same name.  The runs of each folded transmission are matched, in order, with the runs of the ones before
+ * it, so folding transmissions that each have an <code>a</code>, a <code>b</code> and then another
+ * <code>a</code> child gives an aggregated transmission with those three children, in that order.
+ * <p>
+ * A transmission that has no sibling with the same name next to it, at any level, is passed on as it is, with its
+ * objects and exceptions, so trees with few repeats are not made larger.  Top level transmissions, and
+ * transmissions whose names have been exempted, are never folded, although an exempt transmission that is nested
+ * in a folded transmission is folded with it.  Transmissions are held back until it is known whether they are
+ * folded, that is, until a sibling with another name begins or their parent ends.
+ */
+public class AggregatingTelemetryReceiver implements TelemetryReceiver, Closeable {
+
+    public static final String AGGREGATED_COUNT_MEASUREMENT_NAME = "aggregated-count";
+
+    public static final String OBJECT_COUNT_MEASUREMENT_NAME = "object-count";
+
+    public static final String EXCEPTION_COUNT_MEASUREMENT_NAME = "exception-count";
+
+    private static final Logger logger = LoggerFactory.getLogger(AggregatingTelemetryReceiver.class);
+
+    private final TelemetryReceiver delegate;
+
+    private final Set<String> exemptNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final ThreadLocal<Stack<Frame>> frameStack = new ThreadLocal<Stack<Frame>>() {
+        @Override
+        protected Stack<Frame> initialValue() {
+            return new Stack<Frame>();
+        }
+    };
+
+    public AggregatingTelemetryReceiver(TelemetryReceiver delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Exempts transmissions with a particular name from folding, so that each of them is passed on as it is.
+     */
+    public void addExemptName(String name) {
+        exemptNames.add(name);
+    }
+
+    public void removeExemptName(String name) {
+        exemptNames.remove(name);
+    }
+
+    /**
+     * Closes the delegate if it is {@link Closeable}.
+     */
+    public void close() {
+        if (delegate instanceof Closeable) {
+            try {
+                ((Closeable) delegate).close();
+            } catch (IOException e) {
+                logger.error("An error occurred whilst closing the delegate receiver: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    public boolean isEnabled(String name) {
+        return delegate.isEnabled(name);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void beginTransmission(TelemetryInfo info) {
+        Stack<Frame> stack = frameStack.get();
+        String name = info.getName();
+        if (stack.isEmpty()) {
+            delegate.beginTransmission(info);
+            stack.push(new Frame(null));
+            return;
+        }
+        Frame parent = stack.peek();
+        AggregateNode node;
+        if (parent.node != null) {
+            node = parent.nextChild(name);
+        }
+        else if (exemptNames.contains(name)) {
+            flushRun(parent);
+            delegate.beginTransmission(info);
+            stack.push(new Frame(null));
+            return;
+        }
+        else {
+            if (parent.run == null || !parent.run.name.equals(name)) {
+                flushRun(parent);
+                parent.run = new AggregateNode(name);
+            }
+            node = parent.run;
+        }
+        node.add(info);
+        stack.push(new Frame(node));
+    }
+
+    /**
+     * Gets the aggregated transmission that the current thread is recording into.
+     * @return The node, or null if the current transmission is being passed on as it is.
+     */
+    private AggregateNode getCurrentNode() {
+        Stack<Frame> stack = frameStack.get();
+        return stack.isEmpty() ? null : stack.peek().node;
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
+        AggregateNode node = getCurrentNode();
+        if (node == null) {
+            delegate.recordMeasurement(info, propertyName, value);
+            return;
+        }
+        TelemetryEvent event = node.addFirstEvent(TelemetryEvent.MEASUREMENT);
+        if (event != null) {
+            event.name = propertyName;
+            event.stringValue = value;
+        }
+        if (propertyName == null || value == null) {
+            return;
+        }
+        Double numericValue = AbstractTelemetryNode.parseDouble(value);
+        if (numericValue != null) {
+            node.addValue(propertyName, numericValue);
+        }
+        else if (!node.textValues.containsKey(propertyName)) {
+            node.textValues.put(propertyName, value);
+        }
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        AggregateNode node = getCurrentNode();
+        if (node == null) {
+            delegate.recordLong(info, propertyName, value);
+            return;
+        }
+        TelemetryEvent event = node.addFirstEvent(TelemetryEvent.LONG);
+        if (event != null) {
+            event.name = propertyName;
+            event.longValue = value;
+        }
+        if (propertyName != null) {
+            node.addValue(propertyName, value);
+        }
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        AggregateNode node = getCurrentNode();
+        if (node == null) {
+            delegate.recordDouble(info, propertyName, value);
+            return;
+        }
+        TelemetryEvent event = node.addFirstEvent(TelemetryEvent.DOUBLE);
+        if (event != null) {
+            event.name = propertyName;
+            event.doubleValue = value;
+        }
+        if (propertyName != null) {
+            node.addValue(propertyName, value);
+        }
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        AggregateNode node = getCurrentNode();
+        if (node == null) {
+            delegate.recordBoolean(info, propertyName, value);
+            return;
+        }
+        TelemetryEvent event = node.addFirstEvent(TelemetryEvent.BOOLEAN);
+        if (event != null) {
+            event.name = propertyName;
+            event.longValue = value ? 1 : 0;
+        }
+        if (propertyName != null) {
+            node.addValue(propertyName, value ? 1 : 0);
+        }
+    }
+
+    public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
+        AggregateNode node = getCurrentNode();
+        if (node == null) {
+            delegate.recordObject(info, namePrefix, nameSuffix, object);
+            return;
+        }
+        TelemetryEvent event = node.addFirstEvent(TelemetryEvent.OBJECT);
+        if (event != null) {
+            event.name = namePrefix;
+            event.suffix = nameSuffix;
+            event.object = object;
+        }
+        node.objectCount++;
+    }
+
+    public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
+        if (getCurrentNode() == null) {
+            delegate.recordTiming(info, name, telemetryTimer);
+        }
+        else {
+            TelemetryReceiver.super.recordTiming(info, name, telemetryTimer);
+        }
+    }
+
+    public void recordException(TelemetryInfo info, Throwable exception) {
+        AggregateNode node = getCurrentNode();
+        if (node == null) {
+            delegate.recordException(info, exception);
+            return;
+        }
+        TelemetryEvent event = node.addFirstEvent(TelemetryEvent.EXCEPTION);
+        if (event != null) {
+            event.object = exception;
+        }
+        node.exceptionCount++;
+    }
+
+    public void endTransmission(TelemetryInfo info) {
+        Stack<Frame> stack = frameStack.get();
+        if (stack.isEmpty()) {
+            delegate.endTransmission(info);
+            return;
+        }
+        Frame frame = stack.pop();
+        if (frame.node == null) {
+            flushRun(frame);
+            delegate.endTransmission(info);
+        }
+    }
+
+    /**
+     * Passes on the run of children that is being built for a transmission that is passed on as it is, if there
+     * is one.
+     */
+    private void flushRun(Frame frame) {
+        if (frame.run != null) {
+            writeNode(frame.run);
+            frame.run = null;
+        }
+    }
+
+    private void writeNode(AggregateNode node) {
+        if (node.firstEvents != null) {
+            writeFirst(node);
+            return;
+        }
+        TelemetryInfo info = new DefaultTelemetryInfo(node.name);
+        delegate.beginTransmission(info);
+        delegate.recordLong(info, AGGREGATED_COUNT_MEASUREMENT_NAME, node.count);
+        for (Map.Entry<String, String> entry : node.textValues.entrySet()) {
+            delegate.recordMeasurement(info, entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, PropertyAggregate> entry : node.values.entrySet()) {
+            String name = entry.getKey();
+            PropertyAggregate aggregate = entry.getValue();
+            delegate.recordLong(info, name + ".count", aggregate.getCount());
+            delegate.recordDouble(info, name + ".sum", aggregate.getSum());
+            delegate.recordDouble(info, name + ".min", aggregate.getMin());
+            delegate.recordDouble(info, name + ".max", aggregate.getMax());
+            delegate.recordDouble(info, name + ".mean", aggregate.getMean());
+        }
+        if (node.objectCount > 0) {
+            delegate.recordLong(info, OBJECT_COUNT_MEASUREMENT_NAME, node.objectCount);
+        }
+        if (node.exceptionCount > 0) {
+            delegate.recordLong(info, EXCEPTION_COUNT_MEASUREMENT_NAME, node.exceptionCount);
+        }
+        for (AggregateNode child : node.children) {
+            writeNode(child);
+        }
+        delegate.endTransmission(info);
+    }
+
+    /**
+     * Passes on a transmission that was not folded with any other as it was recorded, with its events and its
+     * children in their original order.
+     */
+    private void writeFirst(AggregateNode node) {
+        TelemetryInfo info = new DetachedTelemetryInfo(node.firstId, node.name, node.firstAutoFlush);
+        delegate.beginTransmission(info);
+        int childIndex = 0;
+        for (int i = 0; i < node.firstEvents.size(); i++) {
+            int childrenBefore = node.firstEventPositions.get(i);
+            while (childIndex < childrenBefore) {
+                writeNode(node.children.get(childIndex++));
+            }
+            node.firstEvents.get(i).replay(info, delegate);
+        }
+        while (childIndex < node.children.size()) {
+            writeNode(node.children.get(childIndex++));
+        }
+        delegate.endTransmission(info);
+    }
+
+    /**
+     * An open transmission of a thread.
+     */
+    private static class Frame {
+
+        /**
+         * The aggregated transmission that the transmission is folded into, or null if the transmission is passed
+         * on as it is.
+         */
+        private final AggregateNode node;
+
+        /**
+         * The run that the latest children of a transmission that is passed on as it is are being folded into.
+         */
+        private AggregateNode run;
+
+        /**
+         * The index, in the children of the node, of the run that the latest child of a folded transmission was
+         * folded into, or -1 if it has had no children.
+         */
+        private int childIndex = -1;
+
+        private Frame(AggregateNode node) {
+            this.node = node;
+        }
+
+        /**
+         * Gets the run of the node that a child of the folded transmission with a particular name is folded into.
+         * This is the run of the previous child if that has the same name, otherwise the next run with the name,
+         * otherwise a new run that is inserted after the run of the previous child.
+         */
+        private AggregateNode nextChild(String name) {
+            List<AggregateNode> children = node.children;
+            if (childIndex >= 0 && children.get(childIndex).name.equals(name)) {
+                return children.get(childIndex);
+            }
+            for (int i = childIndex + 1; i < children.size(); i++) {
+                if (children.get(i).name.equals(name)) {
+                    childIndex = i;
+                    return children.get(i);
+                }
+            }
+            childIndex++;
+            AggregateNode child = new AggregateNode(name);
+            children.add(childIndex, child);
+            return child;
+        }
+    }
+
+    /**
+     * The aggregate of a run of transmissions with the same name.
+     */
+    private static class AggregateNode {
+
+        private final String name;
+
+        private long count = 0;
+
+        private long objectCount = 0;
+
+        private long exceptionCount = 0;
+
+        private final Map<String, PropertyAggregate> values = new LinkedHashMap<String, PropertyAggregate>();
+
+        private final Map<String, String> textValues = new LinkedHashMap<String, String>();
+
+        private final List<AggregateNode> children = new ArrayList<AggregateNode>();
+
+        private long firstId;
+
+        private boolean firstAutoFlush;
+
+        /**
+         * The events of the first transmission of the run, so that it can be passed on as it is if no other
+         * transmission is folded with it, or null once another has been.
+         */
+        private List<TelemetryEvent> firstEvents;
+
+        /**
+         * The number of children that the first transmission had when each of its events was recorded.
+         */
+        private List<Integer> firstEventPositions;
+
+        private AggregateNode(String name) {
+            this.name = name;
+        }
+
+        private void add(TelemetryInfo info) {
+            count++;
+            if (count == 1) {
+                firstId = info.getID();
+                firstAutoFlush = info.isAutoFlush();
+                firstEvents = new ArrayList<TelemetryEvent>();
+                firstEventPositions = new ArrayList<Integer>();
+            }
+            else {
+                firstEvents = null;
+                firstEventPositions = null;
+            }
+        }
+
+        /**
+         * Records an event of the first transmission of the run.
+         * @return The event, to be filled in, or null if the run already has more than one transmission.
+         */
+        private TelemetryEvent addFirstEvent(int type) {
+            if (firstEvents == null) {
+                return null;
+            }
+            TelemetryEvent event = new TelemetryEvent();
+            event.type = type;
+            firstEvents.add(event);
+            firstEventPositions.add(children.size());
+            return event;
+        }
+
+        private void addValue(String propertyName, double value) {
+            PropertyAggregate aggregate = values.get(propertyName);
+            if (aggregate == null) {
+                aggregate = new PropertyAggregate();
+                values.put(propertyName, aggregate);
+            }
+            aggregate.add(value);
+        }
+    }
+}
@@ -0,0 +1,762 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TelemetryReceiver} that moves the work of another receiver off the measured thread.  Events are copied
+ * into a bounded ring buffer and a background thread replays them, in order, on the delegate receiver.  The
+ * measured thread therefore only pays for copying a handful of fields, rather than for the XML or zip output of
+ * the delegate, and there is no receiver overhead to charge to the running timers.
+ * <p>
+ * Each producer thread is given its own lane: a ring buffer of the capacity given to the constructor, which is
+ * allocated in full when the lane is started, and a consumer thread that replays only that producer's events.  A
+ * delegate therefore sees the events of each producer on a thread of their own, so delegates that track nesting
+ * per thread, such as {@link XMLTelemetryReceiver} and {@link ZipTelemetryReceiver}, keep each producer's
+ * transmissions properly nested, just as if the producers had called them directly.  Events of one producer are
+ * replayed in the order in which they were recorded, but there is no order between the events of different
+ * producers.
+ * <p>
+ * At most {@link #DEFAULT_MAX_CONSUMER_THREADS}, or the number given to the constructor, lanes run at once.  A lane
+ * whose producer has had no open transmission and has recorded nothing for {@link #LANE_IDLE_TIMEOUT_MILLIS} is
+ * retired, its consumer thread stops and its ring is kept for the next lane.  A producer that begins a top level
+ * transmission, or records an event outside a transmission, whilst every lane is taken by another producer passes
+ * its events straight to the delegate, on its own thread, until that top level transmission ends.  Consumer
+ * threads could not be shared between producers, since a delegate that tracks nesting per thread would see their
+ * transmissions interleaved, and a producer cannot wait for a lane, since the producer that holds it may be
+ * waiting for it.
+ * Under the dropping {@link OverflowPolicy}s the measured thread never waits.  A slot is kept free for the end of
+ * each transmission that has been queued, and a transmission that begins when there is no room for it is dropped
+ * together with everything that is nested in it, so the delegate always sees properly nested transmissions.
+ * <p>
+ * Timers are read when timings are recorded, and when transmissions end, and the delegate is given stopped
+ * snapshots of them, so it sees the times that the measured thread measured and cannot disturb its timers.  The
+ * delegate sees each transmission through a {@link TelemetryInfo} that reports the same clocks as the original and
+ * that, at the end of the transmission, carries a snapshot of the original's first timer.  Objects are recorded by reference and serialised later by the
+ * delegate, so they must not be modified after they have been recorded.
+ */
+public class AsyncTelemetryReceiver implements TelemetryReceiver, Closeable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * The name of the measurement that records the number of events that were dropped under
+     * {@link OverflowPolicy#DROP_AND_COUNT}.
+     */
+    public static final String DROPPED_EVENTS_MEASUREMENT_NAME = "dropped-events";
+
+    public static final int DEFAULT_MAX_CONSUMER_THREADS = 4;
+
+    /**
+     * How long a lane waits for its producer, when the producer has no open transmission, before it is retired.
+     */
+    public static final long LANE_IDLE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * Returned by {@link Lane#acquireSlot(int)} when the lane has been retired.
+     */
+    private static final TelemetryEvent RETIRED = new TelemetryEvent();
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncTelemetryReceiver.class);
+
+    private final TelemetryReceiver delegate;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final int capacity;
+
+    private final int maxConsumerThreads;
+
+    private final AtomicLong droppedEventCount = new AtomicLong();
+
+    /**
+     * The lanes that have not been retired.  Guarded by itself.
+     */
+    private final List<Lane> lanes = new ArrayList<Lane>();
+
+    /**
+     * The rings of retired lanes, which are given to new lanes.  Guarded by lanes.
+     */
+    private final List<TelemetryEvent[]> freeRings = new ArrayList<TelemetryEvent[]>();
+
+    /**
+     * Guarded by lanes.
+     */
+    private boolean closed = false;
+
+    private final ThreadLocal<Producer> producers = new ThreadLocal<Producer>() {
+        @Override
+        protected Producer initialValue() {
+            return new Producer();
+        }
+    };
+
+    private final Thread shutdownHook;
+
+    public AsyncTelemetryReceiver(TelemetryReceiver delegate) {
+        this(delegate, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    public AsyncTelemetryReceiver(TelemetryReceiver delegate, int capacity, OverflowPolicy overflowPolicy) {
+        this(delegate, capacity, overflowPolicy, DEFAULT_MAX_CONSUMER_THREADS);
+    }
+
+    /**
+     * Creates a receiver that replays events on a delegate.
+     * @param delegate The receiver that events are replayed on.
+     * @param capacity The number of events of each producer thread that can be queued.  This is rounded up to a
+     * power of two.
+     * @param overflowPolicy What to do with events that are recorded when the queue is full.
+     * @param maxConsumerThreads The number of lanes, each with its own consumer thread and ring, that can run at
+     * once.
+     */
+    public AsyncTelemetryReceiver(TelemetryReceiver delegate, int capacity, OverflowPolicy overflowPolicy, int maxConsumerThreads) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (maxConsumerThreads < 1) {
+            throw new IllegalArgumentException("maxConsumerThreads must be positive: " + maxConsumerThreads);
+        }
+        this.delegate = delegate;
+        this.overflowPolicy = overflowPolicy;
+        this.maxConsumerThreads = maxConsumerThreads;
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        shutdownHook = new Thread() {
+            @Override
+            public void run() {
+                close();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Gets the number of events that have been dropped because the queue was full.
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    /**
+     * Waits until every event recorded so far has been replayed on the delegate.
+     */
+    public void flush() {
+        for (Lane lane : getLanes()) {
+            lane.flush();
+        }
+    }
+
+    /**
+     * Replays any outstanding events, stops the consumer threads and closes the delegate if it is
+     * {@link Closeable}.  Events recorded after this receiver has been closed are discarded.
+     */
+    public void close() {
+        List<Lane> closing;
+        synchronized (lanes) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closing = new ArrayList<Lane>(lanes);
+        }
+        for (Lane lane : closing) {
+            lane.close();
+        }
+        if (delegate instanceof Closeable) {
+            try {
+                ((Closeable) delegate).close();
+            } catch (IOException e) {
+                logger.error("An error occurred whilst closing the delegate receiver: {}", e.getMessage(), e);
+            }
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down
+        }
+    }
+
+    private List<Lane> getLanes() {
+        synchronized (lanes) {
+            return new ArrayList<Lane>(lanes);
+        }
+    }
+
+    /**
+     * Gets a slot for an event of the current thread, starting a lane for the thread if it has none.  If a slot is
+     * returned then the lock of the producer's lane is held and the caller must fill the slot and then call
+     * {@link Lane#publish()}.  If null is returned then the event should be passed straight to the delegate if
+     * the producer is {@link Producer#direct}, and discarded otherwise.
+     */
+    private TelemetryEvent acquireSlot(Producer producer, int type) {
+        if (producer.direct) {
+            if (producer.directDepth > 0) {
+                if (type == TelemetryEvent.BEGIN) {
+                    producer.directDepth++;
+                }
+                else if (type == TelemetryEvent.END) {
+                    producer.directDepth--;
+                }
+                return null;
+            }
+            // Between top level transmissions, so a lane can be tried again
+            producer.direct = false;
+        }
+        while (true) {
+            if (producer.lane == null) {
+                producer.lane = startLane(producer);
+                if (producer.lane == null) {
+                    if (producer.direct && type == TelemetryEvent.BEGIN) {
+                        producer.directDepth = 1;
+                    }
+                    return null;
+                }
+            }
+            TelemetryEvent event = producer.lane.acquireSlot(type);
+            if (event != RETIRED) {
+                return event;
+            }
+            producer.lane = null;
+        }
+    }
+
+    /**
+     * Starts a lane for a producer.
+     * @return The lane, or null if this receiver has been closed, or if every lane is taken, in which case the
+     * producer is made {@link Producer#direct}.
+     */
+    private Lane startLane(Producer producer) {
+        Lane lane;
+        synchronized (lanes) {
+            if (closed) {
+                return null;
+            }
+            if (lanes.size() >= maxConsumerThreads) {
+                producer.direct = true;
+                return null;
+            }
+            TelemetryEvent[] ring = freeRings.isEmpty() ? new TelemetryEvent[capacity] : freeRings.remove(freeRings.size() - 1);
+            lane = new Lane(ring);
+            lanes.add(lane);
+        }
+        lane.start();
+        return lane;
+    }
+
+    /**
+     * Asks the delegate whether a transmission with a particular name would be recorded.  The delegate is asked on
+     * the producer's thread, so a delegate whose answer depends on the transmissions that are open on the calling
+     * thread should not be wrapped.
+     */
+    public boolean isEnabled(String name) {
+        return delegate.isEnabled(name);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void beginTransmission(TelemetryInfo info) {
+        Producer producer = producers.get();
+        TelemetryEvent event = acquireSlot(producer, TelemetryEvent.BEGIN);
+        if (event != null) {
+            try {
+                event.type = TelemetryEvent.BEGIN;
+                event.setInfo(info);
+                event.infoClocks = info.getClocks();
+            } finally {
+                producer.lane.publish();
+            }
+        }
+        else if (producer.direct) {
+            delegate.beginTransmission(info);
+        }
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
+        Producer producer = producers.get();
+        TelemetryEvent event = acquireSlot(producer, TelemetryEvent.MEASUREMENT);
+        if (event != null) {
+            try {
+                event.type = TelemetryEvent.MEASUREMENT;
+                event.setInfo(info);
+                event.name = propertyName;
+                event.stringValue = value;
+            } finally {
+                producer.lane.publish();
+            }
+        }
+        else if (producer.direct) {
+            delegate.recordMeasurement(info, propertyName, value);
+        }
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        Producer producer = producers.get();
+        TelemetryEvent event = acquireSlot(producer, TelemetryEvent.LONG);
+        if (event != null) {
+            try {
+                event.type = TelemetryEvent.LONG;
+                event.setInfo(info);
+                event.name = propertyName;
+                event.longValue = value;
+            } finally {
+                producer.lane.publish();
+            }
+        }
+        else if (producer.direct) {
+            delegate.recordLong(info, propertyName, value);
+        }
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        Producer producer = producers.get();
+        TelemetryEvent event = acquireSlot(producer, TelemetryEvent.DOUBLE);
+        if (event != null) {
+            try {
+                event.type = TelemetryEvent.DOUBLE;
+                event.setInfo(info);
+                event.name = propertyName;
+                event.doubleValue = value;
+            } finally {
+                producer.lane.publish();
+            }
+        }
+        else if (producer.direct) {
+            delegate.recordDouble(info, propertyName, value);
+        }
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        Producer producer = producers.get();
+        TelemetryEvent event = acquireSlot(producer, TelemetryEvent.BOOLEAN);
+        if (event != null) {
+            try {
+                event.type = TelemetryEvent.BOOLEAN;
+                event.setInfo(info);
+                event.name = propertyName;
+                event.longValue = value ? 1 : 0;
+            } finally {
+                producer.lane.publish();
+            }
+        }
+        else if (producer.direct) {
+            delegate.recordBoolean(info, propertyName, value);
+        }
+    }
+
+    public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
+        Producer producer = producers.get();
+        TelemetryEvent event = acquireSlot(producer, TelemetryEvent.OBJECT);
+        if (event != null) {
+            try {
+                event.type = TelemetryEvent.OBJECT;
+                event.setInfo(info);
+                event.name = namePrefix;
+                event.suffix = nameSuffix;
+                event.object = object;
+            } finally {
+                producer.lane.publish();
+            }
+        }
+        else if (producer.direct) {
+            delegate.recordObject(info, namePrefix, nameSuffix, object);
+        }
+    }
+
+    public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
+        Producer producer = producers.get();
+        TelemetryEvent event = acquireSlot(producer, TelemetryEvent.TIMING);
+        if (event != null) {
+            try {
+                event.type = TelemetryEvent.TIMING;
+                event.setInfo(info);
+                event.name = name;
+                event.setTimer(telemetryTimer);
+            } finally {
+                producer.lane.publish();
+            }
+        }
+        else if (producer.direct) {
+            delegate.recordTiming(info, name, telemetryTimer);
+        }
+    }
+
+    public void recordException(TelemetryInfo info, Throwable exception) {
+        Producer producer = producers.get();
+        TelemetryEvent event = acquireSlot(producer, TelemetryEvent.EXCEPTION);
+        if (event != null) {
+            try {
+                event.type = TelemetryEvent.EXCEPTION;
+                event.setInfo(info);
+                event.object = exception;
+            } finally {
+                producer.lane.publish();
+            }
+        }
+        else if (producer.direct) {
+            delegate.recordException(info, exception);
+        }
+    }
+
+    public void endTransmission(TelemetryInfo info) {
+        Producer producer = producers.get();
+        TelemetryEvent event = acquireSlot(producer, TelemetryEvent.END);
+        if (event != null) {
+            try {
+                event.type = TelemetryEvent.END;
+                event.setInfo(info);
+                List<TelemetryTimer> timers = info.getTimers();
+                if (!timers.isEmpty()) {
+                    event.setTimer(timers.get(0));
+                }
+                if (overflowPolicy == OverflowPolicy.DROP_AND_COUNT) {
+                    event.longValue = producer.lane.uncountedDroppedEvents;
+                    producer.lane.uncountedDroppedEvents = 0;
+                }
+            } finally {
+                producer.lane.publish();
+            }
+        }
+        else if (producer.direct) {
+            delegate.endTransmission(info);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The lane and mode of a single producer thread.  Only touched by the producer.
+     */
+    private static class Producer {
+
+        /**
+         * The producer's lane, or null if it has none.
+         */
+        private Lane lane;
+
+        /**
+         * Whether the producer's events are passed straight to the delegate, because no lane was free.
+         */
+        private boolean direct = false;
+
+        /**
+         * The depth of the transmissions that have been passed straight to the delegate and not yet ended.
+         */
+        private int directDepth = 0;
+    }
+
+    /**
+     * The queue of a single producer thread and the consumer thread that replays it.
+     */
+    private class Lane {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition notEmpty = lock.newCondition();
+
+        private final Condition notFull = lock.newCondition();
+
+        private final Condition drained = lock.newCondition();
+
+        /**
+         * The slots.  The array is allocated in full, but the events in it are created as they are first needed and
+         * are then reused, along with the array, by later lanes.
+         */
+        private final TelemetryEvent[] ring;
+
+        /**
+         * The sequence number of the next event to be consumed.  Guarded by lock.
+         */
+        private long head = 0;
+
+        /**
+         * The sequence number of the next event to be published.  Guarded by lock.
+         */
+        private long tail = 0;
+
+        /**
+         * Guarded by lock.
+         */
+        private boolean closed = false;
+
+        /**
+         * Whether the lane has been retired.  Guarded by lock.
+         */
+        private boolean retired = false;
+
+        /**
+         * The number of events dropped since the last end of a transmission was queued.  Only touched by the
+         * producer.
+         */
+        private long uncountedDroppedEvents = 0;
+
+        /**
+         * The number of queued transmissions that the producer has begun but not yet ended.  Guarded by lock.
+         */
+        private int openDepth = 0;
+
+        /**
+         * The depth of the dropped transmission that the producer is in, or 0 if it is not in a dropped
+         * transmission.  Guarded by lock.
+         */
+        private int skipDepth = 0;
+
+        /**
+         * Infos for the transmissions that the consumer has begun but not yet ended.  Only touched by the
+         * consumer.
+         */
+        private final Map<Long, TelemetryInfo> openInfos = new HashMap<Long, TelemetryInfo>();
+
+        private final Thread consumer;
+
+        private Lane(TelemetryEvent[] ring) {
+            this.ring = ring;
+            consumer = new Thread(new Runnable() {
+                public void run() {
+                    consume();
+                }
+            }, "telemetry-async-receiver");
+            consumer.setDaemon(true);
+        }
+
+        private void start() {
+            consumer.start();
+        }
+
+        /**
+         * Acquires the lock and returns the next free slot, waiting for space if the policy is
+         * {@link OverflowPolicy#BLOCK}.  If a slot is returned then the lock is held and the caller must fill the
+         * slot and then call {@link #publish()}.  If null is returned then the event should be discarded and the
+         * lock is not held.
+         * @param type The type of the event.
+         * @return The slot, null, or {@link #RETIRED} if the lane has been retired, in which case the lock is not
+         * held and the producer needs a new lane.
+         */
+        private TelemetryEvent acquireSlot(int type) {
+            lock.lock();
+            boolean acquired = false;
+            try {
+                if (retired) {
+                    return RETIRED;
+                }
+                if (closed) {
+                    return null;
+                }
+                if (overflowPolicy != OverflowPolicy.BLOCK && !reserve(type)) {
+                    dropped();
+                    return null;
+                }
+                while (tail - head == ring.length && !closed) {
+                    notFull.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return null;
+                }
+                if (type == TelemetryEvent.BEGIN) {
+                    openDepth++;
+                }
+                else if (type == TelemetryEvent.END && openDepth > 0) {
+                    openDepth--;
+                }
+                acquired = true;
+                int index = (int) (tail & (ring.length - 1));
+                TelemetryEvent event = ring[index];
+                if (event == null) {
+                    event = new TelemetryEvent();
+                    ring[index] = event;
+                }
+                return event;
+            } finally {
+                if (!acquired) {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Decides whether an event can be queued without waiting.  A slot is kept free for the end of each open
+         * transmission, so a transmission is only begun if there is space for its beginning and its end as well as
+         * for the ends of the transmissions that it is nested in, and other events are only queued if they leave
+         * those slots free.  A transmission that cannot be begun is dropped together with everything nested in it.
+         * Called with the lock held.
+         * @return true if the event can be queued, or false if it should be dropped.
+         */
+        private boolean reserve(int type) {
+            if (skipDepth > 0) {
+                if (type == TelemetryEvent.BEGIN) {
+                    skipDepth++;
+                }
+                else if (type == TelemetryEvent.END) {
+                    skipDepth--;
+                }
+                return false;
+            }
+            long free = ring.length - (tail - head);
+            if (type == TelemetryEvent.BEGIN) {
+                if (free >= openDepth + 2) {
+                    return true;
+                }
+                skipDepth = 1;
+                return false;
+            }
+            if (type == TelemetryEvent.END) {
+                return openDepth > 0 || free >= 1;
+            }
+            return free >= openDepth + 1;
+        }
+
+        private void dropped() {
+            droppedEventCount.incrementAndGet();
+            uncountedDroppedEvents++;
+        }
+
+        private void publish() {
+            try {
+                tail++;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void flush() {
+            lock.lock();
+            try {
+                long target = tail;
+                while (head < target && consumer.isAlive()) {
+                    drained.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void close() {
+            lock.lock();
+            try {
+                closed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            boolean interrupted = false;
+            while (consumer.isAlive()) {
+                try {
+                    consumer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Waits for events, and retires the lane if none arrive for {@link #LANE_IDLE_TIMEOUT_MILLIS} whilst the
+         * producer has no open transmission.  Called with the lock held.
+         * @return true if there are events to replay, or false if the lane has been closed or retired.
+         */
+        private boolean awaitEvents() {
+            long idleNanos = TimeUnit.MILLISECONDS.toNanos(LANE_IDLE_TIMEOUT_MILLIS);
+            while (head == tail && !closed) {
+                if (idleNanos <= 0) {
+                    if (openDepth == 0 && skipDepth == 0) {
+                        retired = true;
+                        return false;
+                    }
+                    idleNanos = TimeUnit.MILLISECONDS.toNanos(LANE_IDLE_TIMEOUT_MILLIS);
+                }
+                try {
+                    idleNanos = notEmpty.awaitNanos(idleNanos);
+                } catch (InterruptedException e) {
+                    // Consumers are only stopped by closing the receiver
+                }
+            }
+            return head != tail;
+        }
+
+        private void consume() {
+            while (true) {
+                long from;
+                long to;
+                lock.lock();
+                try {
+                    if (!awaitEvents()) {
+                        drained.signalAll();
+                        break;
+                    }
+                    from = head;
+                    to = tail;
+                } finally {
+                    lock.unlock();
+                }
+                // Slots between from and to are not reused by the producer until head is advanced
+                int mask = ring.length - 1;
+                for (long seq = from; seq < to; seq++) {
+                    TelemetryEvent event = ring[(int) (seq & mask)];
+                    try {
+                        dispatch(event);
+                    } catch (RuntimeException e) {
+                        logger.error("An error occurred whilst replaying a telemetry event: {}", e.getMessage(), e);
+                    }
+                    event.clear();
+                }
+                lock.lock();
+                try {
+                    head = to;
+                    notFull.signalAll();
+                    drained.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            synchronized (lanes) {
+                lanes.remove(this);
+                freeRings.add(ring);
+            }
+        }
+
+        private void dispatch(TelemetryEvent event) {
+            TelemetryInfo info;
+            if (event.type == TelemetryEvent.BEGIN) {
+                info = event.createInfo();
+                openInfos.put(event.infoId, info);
+            }
+            else if (event.type == TelemetryEvent.END) {
+                TelemetryInfo open = openInfos.remove(event.infoId);
+                if (open != null) {
+                    event.infoClocks = open.getClocks();
+                }
+                info = event.createInfo();
+                if (event.longValue > 0) {
+                    delegate.recordLong(info, DROPPED_EVENTS_MEASUREMENT_NAME, event.longValue);
+                }
+            }
+            else {
+                info = openInfos.get(event.infoId);
+                if (info == null) {
+                    info = new DetachedTelemetryInfo(event.infoId, event.infoName, event.autoFlush);
+                }
+            }
+            event.replay(info, delegate);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.semanticweb.owl.explanation.telemetry.BinaryTelemetryFormat.*;
+
+/**
+ * Encodes events as records of the binary telemetry format (see {@link BinaryTelemetryFormat}).  Each call to an
+ * encode method appends one record, preceded by the {@link BinaryTelemetryFormat#DEFINE} records of any names that
+ * have not been seen before, to a reusable buffer.  Callers copy the buffer to their output and then call
+ * {@link #reset()}.  Instances are not thread safe.
+ */
+class BinaryTelemetryEncoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+    private byte[] buffer = new byte[1024];
+
+    private int length = 0;
+
+    private byte[] payload = new byte[256];
+
+    private int payloadLength = 0;
+
+    private final ObjectBuffer objectBuffer = new ObjectBuffer();
+
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    void reset() {
+        length = 0;
+    }
+
+    void encodeHeader() {
+        ensureCapacity(MAGIC.length + 1);
+        System.arraycopy(MAGIC, 0, buffer, length, MAGIC.length);
+        length += MAGIC.length;
+        buffer[length++] = (byte) VERSION;
+    }
+
+    void encodeChannel(int channel) {
+        startPayload();
+        putVarint(channel);
+        endRecord(CHANNEL);
+    }
+
+    void encodeBegin(String name, long id) {
+        int nameId = getNameId(name);
+        startPayload();
+        putVarint(nameId);
+        putVarlong(id);
+        endRecord(BEGIN);
+    }
+
+    void encodeEnd(long id) {
+        startPayload();
+        putVarlong(id);
+        endRecord(END);
+    }
+
+    void encodeString(String name, String value) {
+        int nameId = getNameId(name);
+        startPayload();
+        putVarint(nameId);
+        putString(value);
+        endRecord(STRING);
+    }
+
+    void encodeLong(String name, long value) {
+        int nameId = getNameId(name);
+        startPayload();
+        putVarint(nameId);
+        putVarlong(value);
+        endRecord(LONG);
+    }
+
+    void encodeDouble(String name, double value) {
+        int nameId = getNameId(name);
+        startPayload();
+        putVarint(nameId);
+        long bits = Double.doubleToRawLongBits(value);
+        ensurePayloadCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            payload[payloadLength++] = (byte) (bits >>> shift);
+        }
+        endRecord(DOUBLE);
+    }
+
+    void encodeBoolean(String name, boolean value) {
+        int nameId = getNameId(name);
+        startPayload();
+        putVarint(nameId);
+        ensurePayloadCapacity(1);
+        payload[payloadLength++] = (byte) (value ? 1 : 0);
+        endRecord(BOOLEAN);
+    }
+
+    /**
+     * Serialises an object in the same way as the zip receiver and encodes it as an object record.
+     */
+    void encodeObject(String name, Object object) throws IOException {
+        int nameId = getNameId(name);
+        objectBuffer.reset();
+        if (object instanceof TelemetryObject) {
+            ((TelemetryObject) object).serialise(objectBuffer);
+        }
+        else {
+            PrintWriter pw = new PrintWriter(objectBuffer);
+            pw.print(object);
+            pw.flush();
+        }
+        startPayload();
+        putVarint(nameId);
+        putVarint(objectBuffer.size());
+        putBytes(objectBuffer.getBuffer(), 0, objectBuffer.size());
+        endRecord(OBJECT);
+    }
+
+    void encodeException(Throwable exception) {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        exception.printStackTrace(pw);
+        pw.flush();
+        startPayload();
+        putString(sw.toString());
+        endRecord(EXCEPTION);
+    }
+
+    private int getNameId(String name) {
+        Integer id = dictionary.get(name);
+        if (id == null) {
+            id = dictionary.size();
+            dictionary.put(name, id);
+            startPayload();
+            putVarint(id);
+            putString(name);
+            endRecord(DEFINE);
+        }
+        return id;
+    }
+
+    private void startPayload() {
+        payloadLength = 0;
+    }
+
+    private void endRecord(int tag) {
+        ensureCapacity(1 + 5 + payloadLength);
+        buffer[length++] = (byte) tag;
+        int value = payloadLength;
+        while ((value & ~0x7F) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+        System.arraycopy(payload, 0, buffer, length, payloadLength);
+        length += payloadLength;
+    }
+
+    private void putVarint(int value) {
+        ensurePayloadCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            payload[payloadLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        payload[payloadLength++] = (byte) value;
+    }
+
+    private void putVarlong(long value) {
+        ensurePayloadCapacity(10);
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            payload[payloadLength++] = (byte) ((zigZag & 0x7F) | 0x80);
+            zigZag >>>= 7;
+        }
+        payload[payloadLength++] = (byte) zigZag;
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        putVarint(bytes.length);
+        putBytes(bytes, 0, bytes.length);
+    }
+
+    private void putBytes(byte[] bytes, int offset, int count) {
+        ensurePayloadCapacity(count);
+        System.arraycopy(bytes, offset, payload, payloadLength, count);
+        payloadLength += count;
+    }
+
+    private void ensurePayloadCapacity(int extra) {
+        if (payloadLength + extra > payload.length) {
+            byte[] grown = new byte[Math.max(payload.length * 2, payloadLength + extra)];
+            System.arraycopy(payload, 0, grown, 0, payloadLength);
+            payload = grown;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * A byte array output stream whose buffer can be read without copying it.
+     */
+    private static class ObjectBuffer extends ByteArrayOutputStream {
+
+        private byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+/**
+ * Constants that describe the binary telemetry format written by {@link BinaryTelemetryReceiver} and read by
+ * {@link BinaryTelemetryReader}.
+ * <p>
+ * A stream starts with the four magic bytes <code>TLMB</code> and a version byte, which are followed by records.
+ * Each record is a tag byte, the length of its payload as an unsigned varint, and the payload.  A tag of zero, or
+ * the end of the stream, marks the end of the records.  Readers skip records with tags that they do not
+ * understand.
+ * <p>
+ * Names (of transmissions, measurements and objects) are written once, in a {@link #DEFINE} record that assigns
+ * them an id, and are referred to by that id afterwards.  Integers are written as unsigned varints and longs as
+ * zig-zag encoded varints.  Strings are written as the varint length of their UTF-8 encoding followed by the
+ * encoding itself.  Records from different threads are separated by {@link #CHANNEL} records so that each
+ * thread's transmissions nest independently.
+ */
+final class BinaryTelemetryFormat {
+
+    static final byte[] MAGIC = {'T', 'L', 'M', 'B'};
+
+    static final int VERSION = 1;
+
+    /**
+     * Defines a name: id (varint), name (string).
+     */
+    static final int DEFINE = 1;
+
+    /**
+     * Switches the channel that following records belong to: channel (varint).
+     */
+    static final int CHANNEL = 2;
+
+    /**
+     * Begins a transmission: name id (varint), transmission id (long).
+     */
+    static final int BEGIN = 3;
+
+    /**
+     * Ends the innermost open transmission: transmission id (long).
+     */
+    static final int END = 4;
+
+    /**
+     * A measurement with a string value: name id (varint), value (string).
+     */
+    static final int STRING = 5;
+
+    /**
+     * A measurement with a long value: name id (varint), value (long).
+     */
+    static final int LONG = 6;
+
+    /**
+     * A measurement with a double value: name id (varint), value (eight bytes, big endian IEEE 754 bits).
+     */
+    static final int DOUBLE = 7;
+
+    /**
+     * A measurement with a boolean value: name id (varint), value (one byte).
+     */
+    static final int BOOLEAN = 8;
+
+    /**
+     * An object: name id (varint), content length (varint), content bytes.
+     */
+    static final int OBJECT = 9;
+
+    /**
+     * An exception: stack trace (string).
+     */
+    static final int EXCEPTION = 10;
+
+    /**
+     * The name of the object that holds the stack trace of a recorded exception when telemetry is read back.
+     */
+    static final String EXCEPTION_OBJECT_NAME = "exception";
+
+    private BinaryTelemetryFormat() {
+    }
+}
@@ -0,0 +1,293 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import static org.semanticweb.owl.explanation.telemetry.BinaryTelemetryFormat.*;
+
+/**
+ * Reads the binary telemetry format written by {@link BinaryTelemetryReceiver} as a stream of top level
+ * {@link TelemetryNode} trees.  Records are decoded one at a time and only the transmissions that are still open
+ * are held in memory.  Long, double and boolean measurements are exposed as the usual string property values.
+ * <p>
+ * If the stream ends before all transmissions have been ended, for example because the process that was writing
+ * it was killed, the transmissions that were left open are returned, with whatever they contained, after all of
+ * the complete ones.  A recorded exception is exposed as an object named <code>exception</code> that contains its
+ * stack trace.
+ */
+public class BinaryTelemetryReader implements TelemetryNodeReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final InputStream inputStream;
+
+    private final List<String> names = new ArrayList<String>();
+
+    private final Map<Integer, Stack<DefaultTelemetryNode>> channelStacks = new HashMap<Integer, Stack<DefaultTelemetryNode>>();
+
+    private Stack<DefaultTelemetryNode> currentStack;
+
+    private int tag;
+
+    private byte[] payload = new byte[256];
+
+    private int payloadLength;
+
+    private int position;
+
+    private boolean endOfRecords = false;
+
+    private Deque<DefaultTelemetryNode> incompleteRoots;
+
+    public BinaryTelemetryReader(File file) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file), 1024 * 1024));
+    }
+
+    public BinaryTelemetryReader(InputStream inputStream) throws IOException {
+        this.inputStream = inputStream;
+        for (byte magicByte : MAGIC) {
+            if (inputStream.read() != magicByte) {
+                throw new IOException("Not a binary telemetry stream");
+            }
+        }
+        int version = inputStream.read();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary telemetry version: " + version);
+        }
+        currentStack = getChannelStack(0);
+    }
+
+    public TelemetryNode readNext() throws IOException {
+        while (!endOfRecords) {
+            if (!readRecord()) {
+                endOfRecords = true;
+                break;
+            }
+            DefaultTelemetryNode completed = processRecord();
+            if (completed != null) {
+                return completed;
+            }
+        }
+        if (incompleteRoots == null) {
+            incompleteRoots = new ArrayDeque<DefaultTelemetryNode>();
+            for (Stack<DefaultTelemetryNode> stack : channelStacks.values()) {
+                if (!stack.isEmpty()) {
+                    incompleteRoots.add(stack.get(0));
+                }
+                stack.clear();
+            }
+        }
+        return incompleteRoots.poll();
+    }
+
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    /**
+     * Reads the tag and payload of the next record.
+     * @return true if a record was read, or false if there are no more records.  A record that has been truncated
+     * is treated as the end of the records.
+     */
+    private boolean readRecord() throws IOException {
+        tag = inputStream.read();
+        if (tag <= 0) {
+            return false;
+        }
+        try {
+            int length = readStreamVarint();
+            if (length > payload.length) {
+                payload = new byte[Math.max(length, payload.length * 2)];
+            }
+            int read = 0;
+            while (read < length) {
+                int count = inputStream.read(payload, read, length - read);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                read += count;
+            }
+            payloadLength = length;
+            position = 0;
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Applies the current record.
+     * @return The node of a top level transmission that the record ended, or null.
+     */
+    private DefaultTelemetryNode processRecord() throws IOException {
+        switch (tag) {
+            case DEFINE: {
+                int id = getVarint();
+                String name = getString();
+                while (names.size() <= id) {
+                    names.add(null);
+                }
+                names.set(id, name);
+                return null;
+            }
+            case CHANNEL:
+                currentStack = getChannelStack(getVarint());
+                return null;
+            case BEGIN: {
+                DefaultTelemetryNode node = new DefaultTelemetryNode(getName(getVarint()));
+                if (!currentStack.isEmpty()) {
+                    currentStack.peek().addChild(node);
+                }
+                currentStack.push(node);
+                return null;
+            }
+            case END: {
+                if (currentStack.isEmpty()) {
+                    return null;
+                }
+                DefaultTelemetryNode node = currentStack.pop();
+                return currentStack.isEmpty() ? node : null;
+            }
+            default:
+                break;
+        }
+        if (currentStack.isEmpty()) {
+            // Measurements outside of any transmission have nowhere to go
+            return null;
+        }
+        DefaultTelemetryNode node = currentStack.peek();
+        switch (tag) {
+            case STRING: {
+                String name = getName(getVarint());
+                node.setProperty(name, getString());
+                break;
+            }
+            case LONG: {
+                String name = getName(getVarint());
+                node.setProperty(name, Long.toString(getVarlong()));
+                break;
+            }
+            case DOUBLE: {
+                String name = getName(getVarint());
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = (bits << 8) | (getByte() & 0xFF);
+                }
+                node.setProperty(name, Double.toString(Double.longBitsToDouble(bits)));
+                break;
+            }
+            case BOOLEAN: {
+                String name = getName(getVarint());
+                node.setProperty(name, Boolean.toString(getByte() != 0));
+                break;
+            }
+            case OBJECT: {
+                String name = getName(getVarint());
+                node.addObject(name, getBytes(getVarint()));
+                break;
+            }
+            case EXCEPTION: {
+                node.addObject(EXCEPTION_OBJECT_NAME, getBytes(getVarint()));
+                break;
+            }
+            default:
+                // Unknown record
+                break;
+        }
+        return null;
+    }
+
+    private Stack<DefaultTelemetryNode> getChannelStack(int channel) {
+        Stack<DefaultTelemetryNode> stack = channelStacks.get(channel);
+        if (stack == null) {
+            stack = new Stack<DefaultTelemetryNode>();
+            channelStacks.put(channel, stack);
+        }
+        return stack;
+    }
+
+    private String getName(int id) throws IOException {
+        if (id >= names.size() || names.get(id) == null) {
+            throw new IOException("Undefined name id: " + id);
+        }
+        return names.get(id);
+    }
+
+    private int readStreamVarint() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = inputStream.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private byte getByte() throws IOException {
+        if (position >= payloadLength) {
+            throw new IOException("Truncated record");
+        }
+        return payload[position++];
+    }
+
+    private int getVarint() throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = getByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private long getVarlong() throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = getByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IOException("Malformed varlong");
+    }
+
+    private byte[] getBytes(int count) throws IOException {
+        if (position + count > payloadLength) {
+            throw new IOException("Truncated record");
+        }
+        byte[] bytes = new byte[count];
+        System.arraycopy(payload, position, bytes, 0, count);
+        position += count;
+        return bytes;
+    }
+
+    private String getString() throws IOException {
+        int count = getVarint();
+        if (position + count > payloadLength) {
+            throw new IOException("Truncated record");
+        }
+        String result = new String(payload, position, count, UTF_8);
+        position += count;
+        return result;
+    }
+}
@@ -0,0 +1,262 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TelemetryReceiver} that writes a compact, length-prefixed binary record stream (see
+ * {@link BinaryTelemetryFormat}).  Names are written once and referred to by id, and numeric values are written
+ * as varints, so the output is a fraction of the size of the equivalent XML.  The output can be read back with
+ * {@link BinaryTelemetryReader}.
+ * <p>
+ * Each thread that records telemetry is given its own channel in the stream, so transmissions that are begun
+ * concurrently on different threads nest correctly when they are read back.
+ */
+public class BinaryTelemetryReceiver implements TelemetryReceiver, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryTelemetryReceiver.class);
+
+    private final BinaryTelemetryEncoder encoder = new BinaryTelemetryEncoder();
+
+    private final OutputStream outputStream;
+
+    private final AtomicInteger channelCounter = new AtomicInteger();
+
+    private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState(channelCounter.getAndIncrement());
+        }
+    };
+
+    /**
+     * The channel of the last record that was written.  Guarded by encoder.
+     */
+    private int currentChannel = 0;
+
+    private boolean closed = false;
+
+    private final Thread shutdownHook;
+
+    public BinaryTelemetryReceiver(File file) {
+        this(openFile(file));
+    }
+
+    private static OutputStream openFile(File file) {
+        try {
+            return new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public BinaryTelemetryReceiver(OutputStream outputStream) {
+        this.outputStream = outputStream;
+        synchronized (encoder) {
+            encoder.encodeHeader();
+            write();
+        }
+        shutdownHook = new Thread() {
+            @Override
+            public void run() {
+                close();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public void close() {
+        synchronized (encoder) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                logger.error("An error occurred whilst closing the output: {}", e.getMessage(), e);
+            }
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void beginTransmission(TelemetryInfo info) {
+        ThreadState state = threadState.get();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        try {
+            synchronized (encoder) {
+                selectChannel(state);
+                encoder.encodeBegin(info.getName(), info.getID());
+                write();
+            }
+        } finally {
+            overhead.exit();
+        }
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
+        if (propertyName == null || value == null) {
+            return;
+        }
+        ThreadState state = threadState.get();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        try {
+            synchronized (encoder) {
+                selectChannel(state);
+                encoder.encodeString(propertyName, value);
+                write();
+            }
+        } finally {
+            overhead.exit();
+        }
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        if (propertyName == null) {
+            return;
+        }
+        ThreadState state = threadState.get();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        try {
+            synchronized (encoder) {
+                selectChannel(state);
+                encoder.encodeLong(propertyName, value);
+                write();
+            }
+        } finally {
+            overhead.exit();
+        }
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        if (propertyName == null) {
+            return;
+        }
+        ThreadState state = threadState.get();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        try {
+            synchronized (encoder) {
+                selectChannel(state);
+                encoder.encodeDouble(propertyName, value);
+                write();
+            }
+        } finally {
+            overhead.exit();
+        }
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        if (propertyName == null) {
+            return;
+        }
+        ThreadState state = threadState.get();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        try {
+            synchronized (encoder) {
+                selectChannel(state);
+                encoder.encodeBoolean(propertyName, value);
+                write();
+            }
+        } finally {
+            overhead.exit();
+        }
+    }
+
+    public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
+        ThreadState state = threadState.get();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        try {
+            synchronized (encoder) {
+                selectChannel(state);
+                encoder.encodeObject(namePrefix + nameSuffix, object);
+                write();
+            }
+        } catch (IOException e) {
+            logger.error("An error occurred whilst serialising an object: {}", e.getMessage(), e);
+        } finally {
+            overhead.exit();
+        }
+    }
+
+    public void recordException(TelemetryInfo info, Throwable exception) {
+        ThreadState state = threadState.get();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        try {
+            synchronized (encoder) {
+                selectChannel(state);
+                encoder.encodeException(exception);
+                write();
+            }
+        } finally {
+            overhead.exit();
+        }
+    }
+
+    public void endTransmission(TelemetryInfo info) {
+        ThreadState state = threadState.get();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        try {
+            synchronized (encoder) {
+                selectChannel(state);
+                encoder.encodeEnd(info.getID());
+                write();
+            }
+        } finally {
+            overhead.exit();
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes a channel record if the last record belonged to another thread.  Must be called whilst holding the
+     * encoder lock.
+     */
+    private void selectChannel(ThreadState state) {
+        if (state.channel != currentChannel) {
+            encoder.encodeChannel(state.channel);
+            currentChannel = state.channel;
+        }
+    }
+
+    /**
+     * Writes the encoded records to the output.  Must be called whilst holding the encoder lock.
+     */
+    private void write() {
+        try {
+            if (!closed) {
+                outputStream.write(encoder.getBuffer(), 0, encoder.getLength());
+            }
+        } catch (IOException e) {
+            logger.error("An error occurred whilst writing telemetry: {}", e.getMessage(), e);
+        } finally {
+            encoder.reset();
+        }
+    }
+
+
+    private static class ThreadState {
+
+        private final int channel;
+
+        private ThreadState(int channel) {
+            this.channel = channel;
+        }
+    }
+}
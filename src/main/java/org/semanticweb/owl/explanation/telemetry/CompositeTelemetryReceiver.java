@@ -0,0 +1,173 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link TelemetryReceiver} that passes every event on to several sinks, so that one run can, for example, be
+ * archived as XML, summarised in histograms and have its objects written to a zip file.  Each sink is fed through
+ * its own {@link AsyncTelemetryReceiver}, with its own bounded queue and consumer thread, so a sink that falls
+ * behind only fills its own queue and does not hold up the other sinks or the measured code.  An exception thrown
+ * by a sink is logged by its consumer and does not reach the other sinks.
+ * <p>
+ * By default a sink whose queue is full has its events dropped and counted, see
+ * {@link OverflowPolicy#DROP_AND_COUNT}, so passing an event on never waits for a sink.  A transmission that begins
+ * when a sink's queue is full is dropped for that sink together with everything nested in it, so each sink still
+ * sees properly nested transmissions.  The rules for {@link AsyncTelemetryReceiver} apply to each sink: sinks see
+ * the events of each producer thread on a consumer thread of its own, and objects must not be modified after they
+ * have been recorded.
+ */
+public class CompositeTelemetryReceiver implements TelemetryReceiver, Closeable {
+
+    private final List<Sink> sinks = new CopyOnWriteArrayList<Sink>();
+
+    public CompositeTelemetryReceiver(TelemetryReceiver... sinks) {
+        for (TelemetryReceiver sink : sinks) {
+            addSink(sink);
+        }
+    }
+
+    /**
+     * Adds a sink with a queue of {@link AsyncTelemetryReceiver#DEFAULT_CAPACITY} events that drops and counts
+     * events when it is full.
+     */
+    public void addSink(TelemetryReceiver sink) {
+        addSink(sink, AsyncTelemetryReceiver.DEFAULT_CAPACITY, OverflowPolicy.DROP_AND_COUNT);
+    }
+
+    /**
+     * Adds a sink.  Events that are recorded from now on are passed on to it.
+     * @param sink The sink.
+     * @param capacity The number of events that can be queued for the sink.
+     * @param overflowPolicy What to do with events for the sink when its queue is full.
+     */
+    public void addSink(TelemetryReceiver sink, int capacity, OverflowPolicy overflowPolicy) {
+        sinks.add(new Sink(sink, new AsyncTelemetryReceiver(sink, capacity, overflowPolicy)));
+    }
+
+    public List<TelemetryReceiver> getSinks() {
+        List<TelemetryReceiver> result = new ArrayList<TelemetryReceiver>();
+        for (Sink sink : sinks) {
+            result.add(sink.receiver);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of events that have been dropped for a sink because its queue was full.
+     * @throws IllegalArgumentException If the receiver is not a sink of this receiver.
+     */
+    public long getDroppedEventCount(TelemetryReceiver sink) {
+        for (Sink candidate : sinks) {
+            if (candidate.receiver == sink) {
+                return candidate.queue.getDroppedEventCount();
+            }
+        }
+        throw new IllegalArgumentException("Not a sink of this receiver: " + sink);
+    }
+
+    /**
+     * Waits until every event recorded so far has been passed on to every sink.
+     */
+    public void flush() {
+        for (Sink sink : sinks) {
+            sink.queue.flush();
+        }
+    }
+
+    /**
+     * Passes on any outstanding events, stops the consumer threads and closes the sinks that are
+     * {@link Closeable}.
+     */
+    public void close() {
+        for (Sink sink : sinks) {
+            sink.queue.close();
+        }
+    }
+
+    /**
+     * Determines whether a transmission with a particular name would be recorded by at least one sink.
+     */
+    public boolean isEnabled(String name) {
+        for (Sink sink : sinks) {
+            if (sink.queue.isEnabled(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void beginTransmission(TelemetryInfo info) {
+        for (Sink sink : sinks) {
+            sink.queue.beginTransmission(info);
+        }
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
+        for (Sink sink : sinks) {
+            sink.queue.recordMeasurement(info, propertyName, value);
+        }
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        for (Sink sink : sinks) {
+            sink.queue.recordLong(info, propertyName, value);
+        }
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        for (Sink sink : sinks) {
+            sink.queue.recordDouble(info, propertyName, value);
+        }
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        for (Sink sink : sinks) {
+            sink.queue.recordBoolean(info, propertyName, value);
+        }
+    }
+
+    public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
+        for (Sink sink : sinks) {
+            sink.queue.recordObject(info, namePrefix, nameSuffix, object);
+        }
+    }
+
+    public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
+        for (Sink sink : sinks) {
+            sink.queue.recordTiming(info, name, telemetryTimer);
+        }
+    }
+
+    public void recordException(TelemetryInfo info, Throwable exception) {
+        for (Sink sink : sinks) {
+            sink.queue.recordException(info, exception);
+        }
+    }
+
+    public void endTransmission(TelemetryInfo info) {
+        for (Sink sink : sinks) {
+            sink.queue.endTransmission(info);
+        }
+    }
+
+    /**
+     * A sink and the queue that feeds it.
+     */
+    private static class Sink {
+
+        private final TelemetryReceiver receiver;
+
+        private final AsyncTelemetryReceiver queue;
+
+        private Sink(TelemetryReceiver receiver, AsyncTelemetryReceiver queue) {
+            this.receiver = receiver;
+            this.queue = queue;
+        }
+    }
+}
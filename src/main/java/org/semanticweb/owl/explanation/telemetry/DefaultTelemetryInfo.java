@@ -1,7 +1,10 @@
 package org.semanticweb.owl.explanation.telemetry;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 /*
  * Copyright (C) 2010, University of Manchester
@@ -34,26 +37,84 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class DefaultTelemetryInfo implements TelemetryInfo {
 
+    /**
+     * The number of IDs that a thread takes from the counter at a time, so that threads creating infos do not
+     * contend on it.
+     */
+    private static final int ID_BLOCK_SIZE = 1024;
+
+    static final Set<TelemetryClock> ALL_CLOCKS = Collections.unmodifiableSet(EnumSet.allOf(TelemetryClock.class));
+
+    private static final TelemetryTimer[] NO_TIMERS = new TelemetryTimer[0];
+
     private static AtomicLong counter = new AtomicLong();
 
-    private long id = counter.incrementAndGet();
+    /**
+     * The next ID of the current thread's block and the end of the block.
+     */
+    private static final ThreadLocal<long[]> idBlock = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    private long id = nextID();
 
     private String name;
 
+    /**
+     * The symbol for the name, or -1 if it has not been looked up yet.
+     */
+    private int nameSymbol = -1;
+
     private List<TelemetryTimer> telemetryTimers;
 
     private boolean autoFlush;
 
-    public DefaultTelemetryInfo(String name, boolean autoFlush, TelemetryTimer ... telemetryTimers) {
+    private Set<TelemetryClock> clocks;
+
+    /**
+     * @param clocks The clocks that are reported when a timing is recorded for the transmission.
+     */
+    public DefaultTelemetryInfo(String name, boolean autoFlush, Set<TelemetryClock> clocks, TelemetryTimer ... telemetryTimers) {
         this.name = name;
         this.autoFlush = autoFlush;
-        this.telemetryTimers = Arrays.asList(telemetryTimers);
+        if (clocks == ALL_CLOCKS || clocks.size() == ALL_CLOCKS.size()) {
+            this.clocks = ALL_CLOCKS;
+        }
+        else {
+            this.clocks = Collections.unmodifiableSet(clocks.isEmpty() ? EnumSet.noneOf(TelemetryClock.class) : EnumSet.copyOf(clocks));
+        }
+        this.telemetryTimers = telemetryTimers.length == 0 ? Collections.<TelemetryTimer>emptyList() : Arrays.asList(telemetryTimers);
+    }
+
+    public DefaultTelemetryInfo(String name, boolean autoFlush, TelemetryTimer ... telemetryTimers) {
+        this(name, autoFlush, ALL_CLOCKS, telemetryTimers);
     }
 
     public DefaultTelemetryInfo(String name, TelemetryTimer ... telemetryTimers) {
         this(name, true, telemetryTimers);
     }
 
+    public DefaultTelemetryInfo(String name) {
+        this(name, true, ALL_CLOCKS, NO_TIMERS);
+    }
+
+    /**
+     * Gets a new ID for a transmission.  IDs are unique but, as each thread takes them from its own block, they do
+     * not increase in the order in which they are handed out across threads.
+     */
+    static long nextID() {
+        long[] block = idBlock.get();
+        if (block[0] == block[1]) {
+            long start = counter.getAndAdd(ID_BLOCK_SIZE) + 1;
+            block[0] = start;
+            block[1] = start + ID_BLOCK_SIZE;
+        }
+        return block[0]++;
+    }
+
     public boolean isAutoFlush() {
         return autoFlush;
     }
@@ -66,10 +127,23 @@ public class DefaultTelemetryInfo implements TelemetryInfo {
         return name;
     }
 
+    public int getNameSymbol() {
+        int symbol = nameSymbol;
+        if (symbol == -1) {
+            symbol = TelemetrySymbols.getSymbol(name);
+            nameSymbol = symbol;
+        }
+        return symbol;
+    }
+
     public List<TelemetryTimer> getTimers() {
         return telemetryTimers;
     }
 
+    public Set<TelemetryClock> getClocks() {
+        return clocks;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if(obj == this) {
@@ -0,0 +1,78 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A {@link TelemetryNode} that holds its properties, children and objects in memory.
+ */
+public class DefaultTelemetryNode extends AbstractTelemetryNode {
+
+    private final String name;
+
+    private DefaultTelemetryNode parent;
+
+    private final Properties properties = new Properties();
+
+    private final List<TelemetryNode> children = new ArrayList<TelemetryNode>();
+
+    private final Map<String, byte[]> objects = new LinkedHashMap<String, byte[]>();
+
+    public DefaultTelemetryNode(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TelemetryNode getParent() {
+        return parent;
+    }
+
+    public Properties getProperties() {
+        return properties;
+    }
+
+    public List<TelemetryNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public List<String> getObjectNames() {
+        return new ArrayList<String>(objects.keySet());
+    }
+
+    public InputStream getInputStream(String objectName) throws IOException {
+        byte[] content = objects.get(objectName);
+        if (content == null) {
+            throw new FileNotFoundException("No object named " + objectName + " in " + name);
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    public void setProperty(String propertyName, String value) {
+        properties.setProperty(propertyName, value);
+        invalidateAggregates();
+    }
+
+    /**
+     * Adds a child to the end of the children of this node and makes this node its parent.
+     */
+    public void addChild(DefaultTelemetryNode child) {
+        child.parent = this;
+        children.add(child);
+        invalidateAggregates();
+    }
+
+    public void addObject(String objectName, byte[] content) {
+        objects.put(objectName, content);
+    }
+}
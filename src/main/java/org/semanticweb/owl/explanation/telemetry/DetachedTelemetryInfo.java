@@ -0,0 +1,78 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A copy of the identity of a {@link TelemetryInfo} without its timers.  Receivers that process events on a
+ * thread other than the one that produced them hand these to their delegates so that the delegates cannot stop
+ * and start the producer's timers (which measure the time of whichever thread calls them).  A copy may instead
+ * carry {@link SnapshotTelemetryTimer}s of the producer's timers.
+ */
+class DetachedTelemetryInfo implements TelemetryInfo {
+
+    private final long id;
+
+    private final String name;
+
+    private final boolean autoFlush;
+
+    private final Set<TelemetryClock> clocks;
+
+    private final List<TelemetryTimer> timers;
+
+    DetachedTelemetryInfo(long id, String name, boolean autoFlush) {
+        this(id, name, autoFlush, DefaultTelemetryInfo.ALL_CLOCKS, Collections.<TelemetryTimer>emptyList());
+    }
+
+    DetachedTelemetryInfo(long id, String name, boolean autoFlush, Set<TelemetryClock> clocks, List<TelemetryTimer> timers) {
+        this.id = id;
+        this.name = name;
+        this.autoFlush = autoFlush;
+        this.clocks = clocks;
+        this.timers = timers;
+    }
+
+    public boolean isAutoFlush() {
+        return autoFlush;
+    }
+
+    public long getID() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<TelemetryTimer> getTimers() {
+        return timers;
+    }
+
+    public Set<TelemetryClock> getClocks() {
+        return clocks;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(obj == this) {
+            return true;
+        }
+        if(!(obj instanceof TelemetryInfo)) {
+            return false;
+        }
+        TelemetryInfo other = (TelemetryInfo) obj;
+        return this.id == other.getID() && (name == null ? other.getName() == null : name.equals(other.getName()));
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) id + (name == null ? 0 : name.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return name + "." + id;
+    }
+}
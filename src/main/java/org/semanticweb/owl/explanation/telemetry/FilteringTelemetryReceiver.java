@@ -0,0 +1,381 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TelemetryReceiver} that passes on only the transmissions and measurements that its rules include, so
+ * that noisy subtrees can be cut out without changing the instrumented code or the receiver that they are passed on
+ * to.
+ * <p>
+ * Transmission rules are matched against the path of a transmission, which is the names of the transmissions that
+ * it is nested in and its own name, separated by slashes, for example <code>hitting-set-tree/node/justification</code>.
+ * Measurement rules are matched against the names of measurements and timings.  A rule is a glob, in which
+ * <code>*</code> and <code>?</code> match any characters and any single character within a name and
+ * <code>**</code> matches any characters including slashes, or a regular expression prefixed with
+ * <code>regex:</code>.  A glob may also be prefixed with <code>glob:</code>.  Rules are tried in the order in which
+ * they were added and the last rule that matches decides; anything that no rule matches is included.
+ * <p>
+ * A transmission that is excluded is skipped together with everything nested in it, at the cost of counting its
+ * depth, so the receiver that it would have been passed on to does no timer or stack work for it.  Rules are
+ * compiled when they are added, and the decision for each path and for each measurement name is made once and then
+ * looked up.  Rules should be added before transmissions begin.
+ */
+public class FilteringTelemetryReceiver implements TelemetryReceiver, Closeable {
+
+    /**
+     * The number of decisions that are remembered for each kind of rule.  Beyond this, for instance when names
+     * contain identifiers, decisions are made afresh each time.
+     */
+    private static final int MAX_CACHED_DECISIONS = 1 << 16;
+
+    private static final Logger logger = LoggerFactory.getLogger(FilteringTelemetryReceiver.class);
+
+    private final TelemetryReceiver delegate;
+
+    private volatile Rules transmissionRules = new Rules(new Rule[0]);
+
+    private volatile Rules measurementRules = new Rules(new Rule[0]);
+
+    private final ThreadLocal<FilterState> filterState = new ThreadLocal<FilterState>() {
+        @Override
+        protected FilterState initialValue() {
+            return new FilterState();
+        }
+    };
+
+    public FilteringTelemetryReceiver(TelemetryReceiver delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Adds a rule that excludes the transmissions whose paths match a pattern, together with their subtrees.
+     */
+    public synchronized void addExcludeRule(String pattern) {
+        transmissionRules = transmissionRules.add(new Rule(pattern, false));
+    }
+
+    /**
+     * Adds a rule that includes the transmissions whose paths match a pattern.  This only has an effect for
+     * transmissions that an earlier rule excludes and that are not nested in an excluded transmission.
+     */
+    public synchronized void addIncludeRule(String pattern) {
+        transmissionRules = transmissionRules.add(new Rule(pattern, true));
+    }
+
+    /**
+     * Adds a rule that excludes the measurements and timings whose names match a pattern.
+     */
+    public synchronized void addMeasurementExcludeRule(String pattern) {
+        measurementRules = measurementRules.add(new Rule(pattern, false));
+    }
+
+    /**
+     * Adds a rule that includes the measurements and timings whose names match a pattern.
+     */
+    public synchronized void addMeasurementIncludeRule(String pattern) {
+        measurementRules = measurementRules.add(new Rule(pattern, true));
+    }
+
+    /**
+     * Closes the delegate if it is {@link Closeable}.
+     */
+    public void close() {
+        if (delegate instanceof Closeable) {
+            try {
+                ((Closeable) delegate).close();
+            } catch (IOException e) {
+                logger.error("An error occurred whilst closing the delegate receiver: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Determines whether a transmission with a particular name that the current thread began now would be passed
+     * on.
+     */
+    public boolean isEnabled(String name) {
+        FilterState state = filterState.get();
+        if (state.skipDepth > 0) {
+            return false;
+        }
+        PathNode parent = state.depth == 0 ? transmissionRules.root : state.path[state.depth - 1];
+        return parent.getChild(name).included && delegate.isEnabled(name);
+    }
+
+    private boolean isMeasurementIncluded(String name) {
+        return name == null || measurementRules.isIncluded(name);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void beginTransmission(TelemetryInfo info) {
+        FilterState state = filterState.get();
+        if (state.skipDepth > 0) {
+            state.skipDepth++;
+            return;
+        }
+        PathNode parent = state.depth == 0 ? transmissionRules.root : state.path[state.depth - 1];
+        PathNode node = parent.getChild(info.getName());
+        if (node.included) {
+            state.push(node);
+            delegate.beginTransmission(info);
+        }
+        else {
+            state.skipDepth = 1;
+        }
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
+        if (filterState.get().skipDepth == 0 && isMeasurementIncluded(propertyName)) {
+            delegate.recordMeasurement(info, propertyName, value);
+        }
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        if (filterState.get().skipDepth == 0 && isMeasurementIncluded(propertyName)) {
+            delegate.recordLong(info, propertyName, value);
+        }
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        if (filterState.get().skipDepth == 0 && isMeasurementIncluded(propertyName)) {
+            delegate.recordDouble(info, propertyName, value);
+        }
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        if (filterState.get().skipDepth == 0 && isMeasurementIncluded(propertyName)) {
+            delegate.recordBoolean(info, propertyName, value);
+        }
+    }
+
+    public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
+        if (filterState.get().skipDepth == 0) {
+            delegate.recordObject(info, namePrefix, nameSuffix, object);
+        }
+    }
+
+    public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
+        if (filterState.get().skipDepth == 0 && isMeasurementIncluded(name)) {
+            delegate.recordTiming(info, name, telemetryTimer);
+        }
+    }
+
+    public void recordException(TelemetryInfo info, Throwable exception) {
+        if (filterState.get().skipDepth == 0) {
+            delegate.recordException(info, exception);
+        }
+    }
+
+    public void endTransmission(TelemetryInfo info) {
+        FilterState state = filterState.get();
+        if (state.skipDepth > 0) {
+            state.skipDepth--;
+            return;
+        }
+        if (state.depth > 0) {
+            state.pop();
+        }
+        delegate.endTransmission(info);
+    }
+
+    /**
+     * An include or exclude rule.
+     */
+    private static class Rule {
+
+        private static final String REGEX_PREFIX = "regex:";
+
+        private static final String GLOB_PREFIX = "glob:";
+
+        private final Pattern pattern;
+
+        private final boolean include;
+
+        private Rule(String pattern, boolean include) {
+            if (pattern.startsWith(REGEX_PREFIX)) {
+                this.pattern = Pattern.compile(pattern.substring(REGEX_PREFIX.length()));
+            }
+            else if (pattern.startsWith(GLOB_PREFIX)) {
+                this.pattern = compileGlob(pattern.substring(GLOB_PREFIX.length()));
+            }
+            else {
+                this.pattern = compileGlob(pattern);
+            }
+            this.include = include;
+        }
+
+        private static Pattern compileGlob(String glob) {
+            StringBuilder regex = new StringBuilder();
+            int literalStart = 0;
+            for (int i = 0; i < glob.length(); i++) {
+                char ch = glob.charAt(i);
+                if (ch != '*' && ch != '?') {
+                    continue;
+                }
+                if (literalStart < i) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                if (ch == '?') {
+                    regex.append("[^/]");
+                }
+                else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                }
+                else {
+                    regex.append("[^/]*");
+                }
+                literalStart = i + 1;
+            }
+            if (literalStart < glob.length()) {
+                regex.append(Pattern.quote(glob.substring(literalStart)));
+            }
+            return Pattern.compile(regex.toString());
+        }
+    }
+
+    /**
+     * A list of rules, together with the decisions that have been made with them.  A new list is made whenever a
+     * rule is added, which throws away the decisions that were made with the old one.
+     */
+    private static class Rules {
+
+        private final Rule[] rules;
+
+        private final PathNode root;
+
+        private final AtomicInteger cachedPathCount = new AtomicInteger();
+
+        private final AtomicInteger cachedNameCount = new AtomicInteger();
+
+        private final Map<String, Boolean> nameDecisions = new ConcurrentHashMap<String, Boolean>();
+
+        private Rules(Rule[] rules) {
+            this.rules = rules;
+            this.root = new PathNode(this, "", true);
+        }
+
+        private Rules add(Rule rule) {
+            Rule[] added = Arrays.copyOf(rules, rules.length + 1);
+            added[rules.length] = rule;
+            return new Rules(added);
+        }
+
+        private boolean decide(String name) {
+            boolean included = true;
+            for (Rule rule : rules) {
+                if (rule.pattern.matcher(name).matches()) {
+                    included = rule.include;
+                }
+            }
+            return included;
+        }
+
+        private boolean isIncluded(String name) {
+            if (rules.length == 0) {
+                return true;
+            }
+            Boolean included = nameDecisions.get(name);
+            if (included == null) {
+                included = decide(name);
+                if (reserveCachedDecision(cachedNameCount)) {
+                    nameDecisions.put(name, included);
+                }
+            }
+            return included;
+        }
+
+        /**
+         * Takes one of the {@link #MAX_CACHED_DECISIONS} places in a cache, unless they have all been taken.
+         * @param count The number of places in the cache that have been taken.
+         * @return true if a place was taken, or false if the cache is full.
+         */
+        private static boolean reserveCachedDecision(AtomicInteger count) {
+            while (true) {
+                int current = count.get();
+                if (current >= MAX_CACHED_DECISIONS) {
+                    return false;
+                }
+                if (count.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * A transmission path that has been seen, with the decision for it and the paths of the transmissions that
+     * have been nested in it.
+     */
+    private static class PathNode {
+
+        private final Rules rules;
+
+        private final String path;
+
+        private final boolean included;
+
+        private final Map<String, PathNode> children = new ConcurrentHashMap<String, PathNode>();
+
+        private PathNode(Rules rules, String path, boolean included) {
+            this.rules = rules;
+            this.path = path;
+            this.included = included;
+        }
+
+        private PathNode getChild(String name) {
+            PathNode child = children.get(name);
+            if (child == null) {
+                String childPath = path.isEmpty() ? name : path + "/" + name;
+                child = new PathNode(rules, childPath, rules.decide(childPath));
+                if (Rules.reserveCachedDecision(rules.cachedPathCount)) {
+                    PathNode existing = children.putIfAbsent(name, child);
+                    if (existing != null) {
+                        child = existing;
+                    }
+                }
+            }
+            return child;
+        }
+    }
+
+    /**
+     * The filtering state of a single thread.
+     */
+    private static class FilterState {
+
+        /**
+         * The depth of the excluded subtree that the thread is in, or 0 if the thread is not in an excluded subtree.
+         */
+        private int skipDepth = 0;
+
+        /**
+         * The paths of the open transmissions that have been passed on.
+         */
+        private PathNode[] path = new PathNode[16];
+
+        private int depth = 0;
+
+        private void push(PathNode node) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = node;
+        }
+
+        private void pop() {
+            path[--depth] = null;
+        }
+    }
+}
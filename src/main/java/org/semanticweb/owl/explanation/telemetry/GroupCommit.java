@@ -0,0 +1,101 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Makes what has been written to a file durable, batching the requests of concurrent threads into a single
+ * {@link FileChannel#force(boolean)}.  A thread that calls {@link #commit()} must already have written its data to
+ * the channel, for example by flushing the streams above it.  The first thread to ask becomes the leader: it waits
+ * for the commit window, so that other threads can join in, and then forces the file once on behalf of every
+ * thread that asked before the force began.  Threads that ask whilst a force is in progress are committed by the
+ * next one.
+ */
+class GroupCommit {
+
+    private final FileChannel channel;
+
+    private volatile long windowNanos = 0;
+
+    private final Object lock = new Object();
+
+    /**
+     * The number of commits that have been requested.  Guarded by lock.
+     */
+    private long requested = 0;
+
+    /**
+     * The number of requests that have been made durable.  Guarded by lock.
+     */
+    private long committed = 0;
+
+    private boolean committing = false;
+
+    GroupCommit(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Forces the content of the file, but not its metadata, to the storage device.
+     */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Sets how long the leader of a group commit waits for other threads to join it before forcing the file.
+     */
+    void setWindow(long window, TimeUnit unit) {
+        windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * Returns once everything that the calling thread had written to the channel before calling this method has
+     * been forced to the storage device.
+     * @throws IOException If this thread led the commit and the force failed.
+     */
+    void commit() throws IOException {
+        long ticket;
+        synchronized (lock) {
+            ticket = ++requested;
+            while (true) {
+                if (committed >= ticket) {
+                    return;
+                }
+                if (!committing) {
+                    committing = true;
+                    break;
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted whilst waiting for a group commit");
+                }
+            }
+        }
+        long window = windowNanos;
+        if (window > 0) {
+            LockSupport.parkNanos(window);
+        }
+        long target;
+        synchronized (lock) {
+            target = requested;
+        }
+        boolean forced = false;
+        try {
+            force();
+            forced = true;
+        } finally {
+            synchronized (lock) {
+                committing = false;
+                if (forced) {
+                    committed = Math.max(committed, target);
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TelemetryReceiver} that accumulates timings in histograms instead of passing each of them on to another
+ * receiver.  There is a {@link LogLinearHistogram} for each pair of transmission name and timing name, so the
+ * memory used does not grow with the number of timings.  Everything other than timings is passed on unchanged.
+ * <p>
+ * Snapshots of the histograms are passed on as transmissions named {@link #HISTOGRAM_TRANSMISSION_NAME}, one per
+ * histogram, with measurements for the transmission and timing names, the count, mean and maximum and the 50th,
+ * 90th, 99th and 99.9th percentiles.  Snapshots are written on demand, by {@link #writeSnapshot()}, and once more
+ * when the receiver is closed, so the output does not grow with the number of top level transmissions.  If turned
+ * on, a snapshot of every histogram is also written inside each top level transmission just before it ends.  The
+ * histograms accumulate over the life of the receiver.
+ * <p>
+ * Histograms are found by the {@link TelemetrySymbols symbols} for the transmission and timing names, in arrays
+ * indexed by symbol, so recording a timing does not hash any names once its histogram exists.
+ */
+public class HistogramTelemetryReceiver implements TelemetryReceiver, Closeable {
+
+    public static final String HISTOGRAM_TRANSMISSION_NAME = "histogram";
+
+    public static final String HISTOGRAMS_TRANSMISSION_NAME = "histograms";
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private static final int CLOCK_COUNT = TelemetryClock.values().length;
+
+    private static final Logger logger = LoggerFactory.getLogger(HistogramTelemetryReceiver.class);
+
+    private final TelemetryReceiver delegate;
+
+    /**
+     * The histograms by transmission name and then by timing name.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, LogLinearHistogram>> histograms = new ConcurrentHashMap<String, ConcurrentMap<String, LogLinearHistogram>>();
+
+    /**
+     * The same histograms indexed by the symbol for the transmission name, the symbol for the timing name and then
+     * by clock, with a slot for each clock as a primary clock followed by a slot for each clock as a secondary
+     * clock, since the two are reported under different names.  Missing rows are null.  The arrays are never
+     * modified once published; a histogram is added by copying the arrays on its path, under slotLock.
+     */
+    private volatile LogLinearHistogram[][][] histogramSlots = new LogLinearHistogram[0][][];
+
+    private final Object slotLock = new Object();
+
+    private volatile boolean snapshotAtRootEnd = false;
+
+    private final ThreadLocal<int[]> transmissionDepth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    public HistogramTelemetryReceiver(TelemetryReceiver delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Sets whether a snapshot of the histograms is written inside each top level transmission before it ends.
+     * Defaults to false.  Each snapshot repeats the cumulative histograms, so the output grows with the number of
+     * top level transmissions.
+     */
+    public void setSnapshotAtRootEnd(boolean snapshotAtRootEnd) {
+        this.snapshotAtRootEnd = snapshotAtRootEnd;
+    }
+
+    /**
+     * Gets the histogram for a timing.
+     * @return The histogram, or null if no timings with the specified names have been recorded.
+     */
+    public LogLinearHistogram getHistogram(String transmissionName, String timingName) {
+        Map<String, LogLinearHistogram> timingHistograms = histograms.get(transmissionName);
+        return timingHistograms != null ? timingHistograms.get(timingName) : null;
+    }
+
+    private LogLinearHistogram getOrCreateHistogram(String transmissionName, String timingName) {
+        ConcurrentMap<String, LogLinearHistogram> timingHistograms = histograms.get(transmissionName);
+        if (timingHistograms == null) {
+            histograms.putIfAbsent(transmissionName, new ConcurrentHashMap<String, LogLinearHistogram>());
+            timingHistograms = histograms.get(transmissionName);
+        }
+        LogLinearHistogram histogram = timingHistograms.get(timingName);
+        if (histogram == null) {
+            timingHistograms.putIfAbsent(timingName, new LogLinearHistogram());
+            histogram = timingHistograms.get(timingName);
+        }
+        return histogram;
+    }
+
+    private LogLinearHistogram getOrCreateHistogram(TelemetryInfo info, int timingSymbol, TelemetryTimer timer, TelemetryClock clock) {
+        int transmissionSymbol = info.getNameSymbol();
+        int slot = timer.isPrimaryClock(clock) ? clock.ordinal() : CLOCK_COUNT + clock.ordinal();
+        LogLinearHistogram[][][] slots = histogramSlots;
+        if (transmissionSymbol < slots.length) {
+            LogLinearHistogram[][] row = slots[transmissionSymbol];
+            if (row != null && timingSymbol < row.length) {
+                LogLinearHistogram[] clockSlots = row[timingSymbol];
+                if (clockSlots != null && clockSlots[slot] != null) {
+                    return clockSlots[slot];
+                }
+            }
+        }
+        return addHistogramSlot(transmissionSymbol, timingSymbol, slot, timer, clock);
+    }
+
+    private LogLinearHistogram addHistogramSlot(int transmissionSymbol, int timingSymbol, int slot, TelemetryTimer timer, TelemetryClock clock) {
+        synchronized (slotLock) {
+            LogLinearHistogram[][][] slots = histogramSlots;
+            if (transmissionSymbol >= slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(transmissionSymbol + 1, TelemetrySymbols.getSymbolCount()));
+            }
+            else {
+                slots = slots.clone();
+            }
+            LogLinearHistogram[][] row = slots[transmissionSymbol];
+            if (row == null) {
+                row = new LogLinearHistogram[Math.max(timingSymbol + 1, TelemetrySymbols.getSymbolCount())][];
+            }
+            else if (timingSymbol >= row.length) {
+                row = Arrays.copyOf(row, Math.max(timingSymbol + 1, TelemetrySymbols.getSymbolCount()));
+            }
+            else {
+                row = row.clone();
+            }
+            LogLinearHistogram[] clockSlots = row[timingSymbol];
+            clockSlots = clockSlots == null ? new LogLinearHistogram[CLOCK_COUNT * 2] : clockSlots.clone();
+            if (clockSlots[slot] == null) {
+                String timingName = timer.getMeasurementName(TelemetrySymbols.getName(timingSymbol), clock);
+                clockSlots[slot] = getOrCreateHistogram(TelemetrySymbols.getName(transmissionSymbol), timingName);
+            }
+            row[timingSymbol] = clockSlots;
+            slots[transmissionSymbol] = row;
+            histogramSlots = slots;
+            return clockSlots[slot];
+        }
+    }
+
+    /**
+     * Writes a snapshot of every histogram inside a transmission named {@link #HISTOGRAMS_TRANSMISSION_NAME}.  The
+     * transmission is nested in the current transmission of the calling thread, if it has one open.
+     */
+    public void writeSnapshot() {
+        TelemetryInfo info = new DefaultTelemetryInfo(HISTOGRAMS_TRANSMISSION_NAME);
+        delegate.beginTransmission(info);
+        writeHistograms();
+        delegate.endTransmission(info);
+    }
+
+    private void writeHistograms() {
+        List<String> transmissionNames = new ArrayList<String>(histograms.keySet());
+        Collections.sort(transmissionNames);
+        for (String transmissionName : transmissionNames) {
+            Map<String, LogLinearHistogram> timingHistograms = histograms.get(transmissionName);
+            List<String> timingNames = new ArrayList<String>(timingHistograms.keySet());
+            Collections.sort(timingNames);
+            for (String timingName : timingNames) {
+                writeHistogram(transmissionName, timingName, timingHistograms.get(timingName));
+            }
+        }
+    }
+
+    private void writeHistogram(String transmissionName, String timingName, LogLinearHistogram histogram) {
+        TelemetryInfo info = new DefaultTelemetryInfo(HISTOGRAM_TRANSMISSION_NAME);
+        delegate.beginTransmission(info);
+        delegate.recordMeasurement(info, "transmission", transmissionName);
+        delegate.recordMeasurement(info, "timing", timingName);
+        delegate.recordLong(info, "count", histogram.getCount());
+        delegate.recordDouble(info, "mean", histogram.getMean());
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            delegate.recordLong(info, PERCENTILE_NAMES[i], histogram.getValueAtPercentile(PERCENTILES[i]));
+        }
+        delegate.recordLong(info, "max", histogram.getMax());
+        delegate.endTransmission(info);
+    }
+
+    /**
+     * Writes a final snapshot, if any timings have been recorded, and closes the delegate if it is
+     * {@link Closeable}.
+     */
+    public void close() {
+        if (!histograms.isEmpty()) {
+            writeSnapshot();
+        }
+        if (delegate instanceof Closeable) {
+            try {
+                ((Closeable) delegate).close();
+            } catch (IOException e) {
+                logger.error("An error occurred whilst closing the delegate receiver: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    public boolean isEnabled(String name) {
+        return delegate.isEnabled(name);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void beginTransmission(TelemetryInfo info) {
+        transmissionDepth.get()[0]++;
+        delegate.beginTransmission(info);
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
+        delegate.recordMeasurement(info, propertyName, value);
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        delegate.recordLong(info, propertyName, value);
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        delegate.recordDouble(info, propertyName, value);
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        delegate.recordBoolean(info, propertyName, value);
+    }
+
+    public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
+        delegate.recordObject(info, namePrefix, nameSuffix, object);
+    }
+
+    public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
+        recordTiming(info, TelemetrySymbols.getSymbol(name), telemetryTimer);
+    }
+
+    public void recordTiming(TelemetryInfo info, int nameSymbol, TelemetryTimer telemetryTimer) {
+        for (TelemetryClock clock : telemetryTimer.getClocks()) {
+            if (info.getClocks().contains(clock)) {
+                getOrCreateHistogram(info, nameSymbol, telemetryTimer, clock).record(telemetryTimer.getEllapsedTime(clock));
+            }
+        }
+    }
+
+    public void recordException(TelemetryInfo info, Throwable exception) {
+        delegate.recordException(info, exception);
+    }
+
+    public void endTransmission(TelemetryInfo info) {
+        int[] depth = transmissionDepth.get();
+        if (depth[0] > 0) {
+            depth[0]--;
+            if (depth[0] == 0 && snapshotAtRootEnd) {
+                writeHistograms();
+            }
+        }
+        delegate.endTransmission(info);
+    }
+}
@@ -0,0 +1,320 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.Arrays;
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A {@link TelemetryReceiver} that records telemetry as JDK Flight Recorder events, so that it can be recorded
+ * cheaply, alongside the events of the virtual machine, and be analysed with the standard JFR tools.  Nothing is
+ * written unless a recording with the events enabled is running, for example one started with
+ * <code>-XX:StartFlightRecording</code>, in which case the events are written to the recording's file.
+ * <p>
+ * Each transmission becomes a {@link TransmissionEvent} that lasts from its beginning to its end, with its name,
+ * ID, the ID of the transmission that it is nested in and its nesting depth.  If its info has timers, the elapsed
+ * times of the first timer are added to the event.  Measurements and timings become measurement events of their
+ * own, with the name and ID of their transmission, and exceptions become {@link ExceptionEvent}s.  Objects are not
+ * recorded.  All events are in the {@link #CATEGORY} category and, apart from exceptions, are recorded without
+ * stack traces.
+ * <p>
+ * This receiver needs a virtual machine that has Flight Recorder, which is Java 11 and later and Java 8 from update
+ * 262.
+ */
+public class JfrTelemetryReceiver implements TelemetryReceiver {
+
+    public static final String CATEGORY = "Telemetry";
+
+    /**
+     * An event that is never committed, and is only used to find out whether transmission events are enabled
+     * without allocating an event each time.
+     */
+    private static final TransmissionEvent PROBE = new TransmissionEvent();
+
+    private final ThreadLocal<TransmissionStack> transmissionStack = new ThreadLocal<TransmissionStack>() {
+        @Override
+        protected TransmissionStack initialValue() {
+            return new TransmissionStack();
+        }
+    };
+
+    /**
+     * Determines whether transmissions are being recorded, that is, whether a recording with
+     * {@link TransmissionEvent}s enabled is running.
+     */
+    public boolean isEnabled(String name) {
+        return PROBE.isEnabled();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void beginTransmission(TelemetryInfo info) {
+        TransmissionStack stack = transmissionStack.get();
+        TransmissionEvent event = null;
+        if (PROBE.isEnabled()) {
+            event = new TransmissionEvent();
+            event.name = info.getName();
+            event.id = info.getID();
+            event.parentId = stack.depth > 0 ? stack.infos[stack.depth - 1].getID() : 0;
+            event.depth = stack.depth;
+            event.begin();
+        }
+        stack.push(info, event);
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
+        MeasurementEvent event = new MeasurementEvent();
+        if (event.isEnabled()) {
+            event.transmissionName = info.getName();
+            event.transmissionId = info.getID();
+            event.name = propertyName;
+            event.value = value;
+            event.commit();
+        }
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        LongMeasurementEvent event = new LongMeasurementEvent();
+        if (event.isEnabled()) {
+            event.transmissionName = info.getName();
+            event.transmissionId = info.getID();
+            event.name = propertyName;
+            event.value = value;
+            event.commit();
+        }
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        DoubleMeasurementEvent event = new DoubleMeasurementEvent();
+        if (event.isEnabled()) {
+            event.transmissionName = info.getName();
+            event.transmissionId = info.getID();
+            event.name = propertyName;
+            event.value = value;
+            event.commit();
+        }
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        BooleanMeasurementEvent event = new BooleanMeasurementEvent();
+        if (event.isEnabled()) {
+            event.transmissionName = info.getName();
+            event.transmissionId = info.getID();
+            event.name = propertyName;
+            event.value = value;
+            event.commit();
+        }
+    }
+
+    public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
+    }
+
+    public void recordException(TelemetryInfo info, Throwable exception) {
+        ExceptionEvent event = new ExceptionEvent();
+        if (event.isEnabled()) {
+            event.transmissionName = info.getName();
+            event.transmissionId = info.getID();
+            event.exceptionClass = exception.getClass().getName();
+            event.message = exception.getMessage();
+            event.commit();
+        }
+    }
+
+    public void endTransmission(TelemetryInfo info) {
+        TransmissionStack stack = transmissionStack.get();
+        if (stack.depth == 0) {
+            return;
+        }
+        TransmissionEvent event = stack.pop();
+        if (event != null) {
+            event.end();
+            List<TelemetryTimer> timers = info.getTimers();
+            if (!timers.isEmpty()) {
+                TelemetryTimer timer = timers.get(0);
+                event.wallTime = getEllapsedTime(timer, TelemetryClock.WALL);
+                event.cpuTime = getEllapsedTime(timer, TelemetryClock.CPU);
+                event.userTime = getEllapsedTime(timer, TelemetryClock.USER);
+                event.allocatedBytes = getEllapsedTime(timer, TelemetryClock.ALLOCATED_BYTES);
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * Gets the elapsed time of a timer on a clock.
+     * @return The time, or 0 if the timer does not measure the clock.
+     */
+    private static long getEllapsedTime(TelemetryTimer timer, TelemetryClock clock) {
+        return timer.isMeasuring(clock) ? timer.getEllapsedTime(clock) : 0;
+    }
+
+    /**
+     * The open transmissions of a single thread, with their events.  The event of a transmission that began whilst
+     * transmission events were disabled is null.
+     */
+    private static class TransmissionStack {
+
+        private TelemetryInfo[] infos = new TelemetryInfo[16];
+
+        private TransmissionEvent[] events = new TransmissionEvent[16];
+
+        private int depth = 0;
+
+        private void push(TelemetryInfo info, TransmissionEvent event) {
+            if (depth == infos.length) {
+                infos = Arrays.copyOf(infos, depth * 2);
+                events = Arrays.copyOf(events, depth * 2);
+            }
+            infos[depth] = info;
+            events[depth] = event;
+            depth++;
+        }
+
+        private TransmissionEvent pop() {
+            depth--;
+            TransmissionEvent event = events[depth];
+            infos[depth] = null;
+            events[depth] = null;
+            return event;
+        }
+    }
+
+    @Name("telemetry.Transmission")
+    @Label("Transmission")
+    @Description("A telemetry transmission, from its beginning to its end")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class TransmissionEvent extends Event {
+
+        @Label("Name")
+        String name;
+
+        @Label("ID")
+        long id;
+
+        @Label("Parent ID")
+        @Description("The ID of the transmission that this transmission is nested in, or 0 if it is a top level transmission")
+        long parentId;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Wall Time")
+        @Timespan
+        long wallTime;
+
+        @Label("CPU Time")
+        @Timespan
+        long cpuTime;
+
+        @Label("User Time")
+        @Timespan
+        long userTime;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocatedBytes;
+    }
+
+    @Name("telemetry.Measurement")
+    @Label("Measurement")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class MeasurementEvent extends Event {
+
+        @Label("Transmission")
+        String transmissionName;
+
+        @Label("Transmission ID")
+        long transmissionId;
+
+        @Label("Name")
+        String name;
+
+        @Label("Value")
+        String value;
+    }
+
+    @Name("telemetry.LongMeasurement")
+    @Label("Long Measurement")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class LongMeasurementEvent extends Event {
+
+        @Label("Transmission")
+        String transmissionName;
+
+        @Label("Transmission ID")
+        long transmissionId;
+
+        @Label("Name")
+        String name;
+
+        @Label("Value")
+        long value;
+    }
+
+    @Name("telemetry.DoubleMeasurement")
+    @Label("Double Measurement")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class DoubleMeasurementEvent extends Event {
+
+        @Label("Transmission")
+        String transmissionName;
+
+        @Label("Transmission ID")
+        long transmissionId;
+
+        @Label("Name")
+        String name;
+
+        @Label("Value")
+        double value;
+    }
+
+    @Name("telemetry.BooleanMeasurement")
+    @Label("Boolean Measurement")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class BooleanMeasurementEvent extends Event {
+
+        @Label("Transmission")
+        String transmissionName;
+
+        @Label("Transmission ID")
+        long transmissionId;
+
+        @Label("Name")
+        String name;
+
+        @Label("Value")
+        boolean value;
+    }
+
+    @Name("telemetry.Exception")
+    @Label("Exception")
+    @Category(CATEGORY)
+    public static class ExceptionEvent extends Event {
+
+        @Label("Transmission")
+        String transmissionName;
+
+        @Label("Transmission ID")
+        long transmissionId;
+
+        @Label("Exception Class")
+        String exceptionClass;
+
+        @Label("Message")
+        String message;
+    }
+}
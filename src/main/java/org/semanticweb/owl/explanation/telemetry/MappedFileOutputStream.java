@@ -0,0 +1,110 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An output stream that appends to a memory-mapped region of a file.  The file is mapped in fixed size segments
+ * and grown a segment at a time, so writes are plain memory stores rather than system calls.  Because the data
+ * lives in the operating system's page cache as soon as it is written, it survives the death of the JVM.
+ * <p>
+ * Each call to {@link #write(byte[], int, int)} writes its first byte last, after a fence.  The unwritten part of
+ * a segment is zero filled, so a reader that treats a zero byte as the end of the data never sees a partially
+ * written block, provided that blocks start with a non-zero byte (as records of the binary telemetry format do).
+ * A block is never split across two segments.  Closing the stream truncates the file to the data that was written.
+ */
+class MappedFileOutputStream extends OutputStream {
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final int segmentSize;
+
+    private MappedByteBuffer segment;
+
+    private long segmentStart = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Written and then read between the body and the first byte of each block, which stops the stores of the
+     * first byte and of the body from being reordered.
+     */
+    private volatile int fence;
+
+    MappedFileOutputStream(File file, int segmentSize) throws IOException {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("segmentSize must be positive: " + segmentSize);
+        }
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return;
+        }
+        if (segment == null || segment.remaining() < len) {
+            mapNextSegment(len);
+        }
+        int start = segment.position();
+        segment.position(start + 1);
+        segment.put(b, off + 1, len - 1);
+        fence = len;
+        if (fence != 0) {
+            segment.put(start, b[off]);
+        }
+    }
+
+    private void mapNextSegment(int minimumSize) throws IOException {
+        if (segment != null) {
+            segmentStart += segment.position();
+        }
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, Math.max(segmentSize, minimumSize));
+    }
+
+    /**
+     * Forces the data that has been written so far to the storage device.
+     */
+    public synchronized void force() {
+        if (segment != null && !closed) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        long length = segmentStart;
+        if (segment != null) {
+            segment.force();
+            length += segment.position();
+        }
+        closed = true;
+        segment = null;
+        try {
+            channel.truncate(length);
+        } finally {
+            channel.close();
+            file.close();
+        }
+    }
+}
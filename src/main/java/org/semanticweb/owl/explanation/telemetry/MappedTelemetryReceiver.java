@@ -0,0 +1,52 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A {@link BinaryTelemetryReceiver} that appends its records to a memory-mapped file.  The file is grown in fixed
+ * size segments and records are written with plain memory stores, so recording an event does not make a system
+ * call.  The mapped pages belong to the operating system, so everything that has been recorded survives the JVM
+ * being killed, even though the shutdown hook never runs.  A file that was not closed has a zero filled tail,
+ * which {@link BinaryTelemetryReader} treats as the end of the records; transmissions that were open at the time
+ * are read back with whatever had been recorded for them.
+ */
+public class MappedTelemetryReceiver extends BinaryTelemetryReceiver {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final MappedFileOutputStream outputStream;
+
+    public MappedTelemetryReceiver(File file) {
+        this(openFile(file, DEFAULT_SEGMENT_SIZE));
+    }
+
+    /**
+     * @param file The file to write to.  Any existing content is discarded.
+     * @param segmentSize The number of bytes by which the file is grown when the mapped region is full.
+     */
+    public MappedTelemetryReceiver(File file, int segmentSize) {
+        this(openFile(file, segmentSize));
+    }
+
+    private MappedTelemetryReceiver(MappedFileOutputStream outputStream) {
+        super(outputStream);
+        this.outputStream = outputStream;
+    }
+
+    private static MappedFileOutputStream openFile(File file, int segmentSize) {
+        try {
+            return new MappedFileOutputStream(file, segmentSize);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Forces the records written so far to the storage device, which protects them against the loss of the
+     * machine as well as of the JVM.
+     */
+    public void force() {
+        outputStream.force();
+    }
+}
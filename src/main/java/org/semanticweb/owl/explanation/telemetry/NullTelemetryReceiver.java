@@ -30,12 +30,25 @@ package org.semanticweb.owl.explanation.telemetry;
  */
 public class NullTelemetryReceiver implements TelemetryReceiver {
 
+    public boolean isEnabled(String name) {
+        return false;
+    }
+
     public void beginTransmission(TelemetryInfo transmitter) {
     }
 
     public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
     }
 
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+    }
+
     public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
     }
 
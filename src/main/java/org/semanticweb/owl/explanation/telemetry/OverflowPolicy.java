@@ -0,0 +1,26 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+/**
+ * Determines what a bounded receiver queue does with a new event when the queue is full.  The dropping policies
+ * never make the producing thread wait, and they keep the nesting seen by the receiver that consumes the queue
+ * intact: the end of a transmission that has been queued always has room, and a transmission that begins when the
+ * queue is full is discarded together with everything nested in it.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The producing thread waits until the consumer has made space.
+     */
+    BLOCK,
+
+    /**
+     * The new event is discarded.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The new event is discarded and the number of discarded events is recorded as a measurement on the next
+     * transmission that ends.
+     */
+    DROP_AND_COUNT
+}
@@ -0,0 +1,98 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+/**
+ * The count, sum, minimum, maximum and sum of squares of the numeric values of a property over a subtree of
+ * {@link TelemetryNode}s.  Aggregates are built bottom up by {@link TelemetryAggregateIndex}, so the aggregate for
+ * a node is the combination of the value at the node and the aggregates of its children.
+ */
+public class PropertyAggregate {
+
+    private long count = 0;
+
+    private double sum = 0;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+    private double sumOfSquares = 0;
+
+    PropertyAggregate() {
+    }
+
+    PropertyAggregate(long count, double sum, double min, double max, double sumOfSquares) {
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.sumOfSquares = sumOfSquares;
+    }
+
+    void add(double value) {
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sumOfSquares += value * value;
+    }
+
+    void add(PropertyAggregate aggregate) {
+        count += aggregate.count;
+        sum += aggregate.sum;
+        min = Math.min(min, aggregate.min);
+        max = Math.max(max, aggregate.max);
+        sumOfSquares += aggregate.sumOfSquares;
+    }
+
+    /**
+     * Gets the number of values that have been aggregated.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getSumOfSquares() {
+        return sumOfSquares;
+    }
+
+    /**
+     * @return The minimum value, or null if no values have been aggregated.
+     */
+    public Double getMin() {
+        return count == 0 ? null : min;
+    }
+
+    /**
+     * @return The maximum value, or null if no values have been aggregated.
+     */
+    public Double getMax() {
+        return count == 0 ? null : max;
+    }
+
+    /**
+     * @return The mean value, or null if no values have been aggregated.
+     */
+    public Double getMean() {
+        return count == 0 ? null : sum / count;
+    }
+
+    /**
+     * @return The population variance of the values, or null if no values have been aggregated.
+     */
+    public Double getVariance() {
+        if (count == 0) {
+            return null;
+        }
+        double mean = sum / count;
+        return Math.max(0, sumOfSquares / count - mean * mean);
+    }
+
+    @Override
+    public String toString() {
+        return "PropertyAggregate(count=" + count + " sum=" + sum + " min=" + getMin() + " max=" + getMax() + ")";
+    }
+}
@@ -0,0 +1,494 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TelemetryReceiver} that writes telemetry into a series of segment files instead of one file that grows
+ * for the life of the process.  Each segment is written by its own receiver, which is created by a
+ * {@link SegmentFactory} and closed when the segment is complete, so every segment is a complete document or
+ * archive that can be shipped and read whilst later segments are still being written.
+ * <p>
+ * Segments only change at top level transmission boundaries.  Once the current segment has grown beyond the
+ * maximum size, or has been open for longer than the maximum duration, the next top level transmission to begin
+ * starts a new segment.  Top level transmissions that are still open in the old segment on other threads are
+ * finished there, and the old segment is closed when the last of them ends.  The size of a segment is the length
+ * of its file.  If a maximum size has been set and the segment's receiver is {@link Flushable}, it is flushed
+ * whenever a top level transmission ends so that the length is up to date.
+ * <p>
+ * Segments are named with a prefix, a sequence number and a suffix, in a directory.  Once a segment, and every
+ * segment that was started before it, has been closed, a line is appended to the {@link #MANIFEST_NAME} file in
+ * the same directory, giving the name of the segment, the times in milliseconds at which it was started and
+ * closed, and the number of top level transmissions that it holds, separated by tabs.  The manifest therefore
+ * lists the complete segments in the order in which they were started, even when a long top level transmission
+ * keeps an old segment open whilst later segments are closed.
+ * <p>
+ * An unbalanced end of a transmission at the top level closes the current segment, and {@link #close()} closes
+ * the current segment once the transmissions that are open in it have ended.
+ */
+public class RollingTelemetryReceiver implements TelemetryReceiver, Closeable {
+
+    public static final String MANIFEST_NAME = "manifest.tsv";
+
+    private static final Logger logger = LoggerFactory.getLogger(RollingTelemetryReceiver.class);
+
+    /**
+     * Creates the receivers that write segments.
+     */
+    public interface SegmentFactory {
+
+        /**
+         * Creates a receiver that writes a new segment to a file.  The receiver is closed, if it is
+         * {@link Closeable}, when the segment is complete.
+         */
+        TelemetryReceiver createSegment(File segmentFile) throws IOException;
+    }
+
+    private final File directory;
+
+    private final String prefix;
+
+    private final String suffix;
+
+    private final SegmentFactory segmentFactory;
+
+    private volatile long maxSegmentSize = Long.MAX_VALUE;
+
+    private volatile long maxSegmentDuration = Long.MAX_VALUE;
+
+    /**
+     * Guards currentSegment, nextSegmentIndex, closed, unlistedSegments, the open root counts of segments and the
+     * manifest.
+     */
+    private final Object segmentLock = new Object();
+
+    /**
+     * The segments that have been started but not yet listed in the manifest, in the order in which they were
+     * started.
+     */
+    private final ArrayDeque<Segment> unlistedSegments = new ArrayDeque<Segment>();
+
+    private Segment currentSegment;
+
+    private int nextSegmentIndex = 0;
+
+    private boolean closed = false;
+
+    private final ThreadLocal<ThreadState> threadState = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    /**
+     * @param directory The directory that segments and the manifest are written to.  Created if it does not
+     * exist.
+     * @param prefix The prefix of segment file names.
+     * @param suffix The suffix of segment file names, for example ".xml".
+     * @param segmentFactory Creates the receiver for each segment.
+     */
+    public RollingTelemetryReceiver(File directory, String prefix, String suffix, SegmentFactory segmentFactory) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.segmentFactory = segmentFactory;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new RuntimeException("Could not create segment directory: " + directory);
+        }
+    }
+
+    /**
+     * Creates a receiver that writes segments as XML documents.
+     */
+    public static RollingTelemetryReceiver createXMLReceiver(File directory, String prefix) {
+        return new RollingTelemetryReceiver(directory, prefix, ".xml", new SegmentFactory() {
+            public TelemetryReceiver createSegment(File segmentFile) {
+                return new XMLTelemetryReceiver(segmentFile);
+            }
+        });
+    }
+
+    /**
+     * Creates a receiver that writes segments as zip archives.
+     */
+    public static RollingTelemetryReceiver createZipReceiver(File directory, String prefix) {
+        return new RollingTelemetryReceiver(directory, prefix, ".zip", new SegmentFactory() {
+            public TelemetryReceiver createSegment(File segmentFile) {
+                return new ZipTelemetryReceiver(segmentFile);
+            }
+        });
+    }
+
+    /**
+     * Sets the size, in bytes, beyond which a segment is not given any more top level transmissions.
+     */
+    public void setMaxSegmentSize(long maxSegmentSize) {
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Sets the time, in milliseconds, after which a segment is not given any more top level transmissions.
+     */
+    public void setMaxSegmentDuration(long maxSegmentDuration) {
+        this.maxSegmentDuration = maxSegmentDuration;
+    }
+
+    /**
+     * Closes the current segment once the transmissions that are open in it have ended.  Top level transmissions
+     * that begin afterwards are not recorded.
+     */
+    public void close() {
+        Segment retired;
+        synchronized (segmentLock) {
+            closed = true;
+            retired = retireCurrentSegment();
+        }
+        if (retired != null) {
+            closeSegment(retired);
+        }
+    }
+
+    /**
+     * Asks the receiver of the segment that the current thread's top level transmission is written to whether a
+     * transmission with a particular name would be recorded.  Outside a top level transmission the segment is not
+     * yet known, so true is returned.
+     */
+    public boolean isEnabled(String name) {
+        ThreadState state = threadState.get();
+        if (state.depth == 0) {
+            return true;
+        }
+        return state.segment != null && state.segment.receiver.isEnabled(name);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void beginTransmission(TelemetryInfo info) {
+        ThreadState state = threadState.get();
+        if (state.depth == 0) {
+            state.segment = acquireSegment();
+        }
+        state.depth++;
+        if (state.segment != null) {
+            state.segment.receiver.beginTransmission(info);
+        }
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
+        ThreadState state = threadState.get();
+        Segment segment = getSegment(state);
+        if (segment != null) {
+            try {
+                segment.receiver.recordMeasurement(info, propertyName, value);
+            } finally {
+                releaseTopLevelSegment(state, segment);
+            }
+        }
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        ThreadState state = threadState.get();
+        Segment segment = getSegment(state);
+        if (segment != null) {
+            try {
+                segment.receiver.recordLong(info, propertyName, value);
+            } finally {
+                releaseTopLevelSegment(state, segment);
+            }
+        }
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        ThreadState state = threadState.get();
+        Segment segment = getSegment(state);
+        if (segment != null) {
+            try {
+                segment.receiver.recordDouble(info, propertyName, value);
+            } finally {
+                releaseTopLevelSegment(state, segment);
+            }
+        }
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        ThreadState state = threadState.get();
+        Segment segment = getSegment(state);
+        if (segment != null) {
+            try {
+                segment.receiver.recordBoolean(info, propertyName, value);
+            } finally {
+                releaseTopLevelSegment(state, segment);
+            }
+        }
+    }
+
+    public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
+        ThreadState state = threadState.get();
+        Segment segment = getSegment(state);
+        if (segment != null) {
+            try {
+                segment.receiver.recordObject(info, namePrefix, nameSuffix, object);
+            } finally {
+                releaseTopLevelSegment(state, segment);
+            }
+        }
+    }
+
+    public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
+        ThreadState state = threadState.get();
+        Segment segment = getSegment(state);
+        if (segment != null) {
+            try {
+                segment.receiver.recordTiming(info, name, telemetryTimer);
+            } finally {
+                releaseTopLevelSegment(state, segment);
+            }
+        }
+    }
+
+    public void recordException(TelemetryInfo info, Throwable exception) {
+        ThreadState state = threadState.get();
+        Segment segment = getSegment(state);
+        if (segment != null) {
+            try {
+                segment.receiver.recordException(info, exception);
+            } finally {
+                releaseTopLevelSegment(state, segment);
+            }
+        }
+    }
+
+    public void endTransmission(TelemetryInfo info) {
+        ThreadState state = threadState.get();
+        if (state.depth == 0) {
+            // Unbalanced end at the top level - by convention this ends the current segment
+            Segment retired;
+            synchronized (segmentLock) {
+                retired = retireCurrentSegment();
+            }
+            if (retired != null) {
+                closeSegment(retired);
+            }
+            return;
+        }
+        state.depth--;
+        Segment segment = state.segment;
+        if (segment == null) {
+            return;
+        }
+        segment.receiver.endTransmission(info);
+        if (state.depth == 0) {
+            state.segment = null;
+            releaseSegment(segment, true);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Gets the segment that something recorded by a thread is written to.  If the thread has no transmission open
+     * then the segment must be released with {@link #releaseTopLevelSegment(ThreadState, Segment)}.
+     */
+    private Segment getSegment(ThreadState state) {
+        return state.depth > 0 ? state.segment : acquireSegment();
+    }
+
+    private void releaseTopLevelSegment(ThreadState state, Segment segment) {
+        if (state.depth == 0) {
+            releaseSegment(segment, false);
+        }
+    }
+
+    /**
+     * Gets the segment that a new top level transmission is written to, starting a new segment if the current one
+     * is full or too old.  The segment is not closed until it is released.
+     * @return The segment, or null if this receiver has been closed or a segment could not be created.
+     */
+    private Segment acquireSegment() {
+        Segment retired = null;
+        Segment segment;
+        synchronized (segmentLock) {
+            if (closed) {
+                return null;
+            }
+            Segment current = currentSegment;
+            if (current != null && (current.full
+                    || System.currentTimeMillis() - current.startTime >= maxSegmentDuration)) {
+                retired = retireCurrentSegment();
+            }
+            if (currentSegment == null) {
+                currentSegment = createSegment();
+            }
+            segment = currentSegment;
+            if (segment != null) {
+                segment.openRoots++;
+            }
+        }
+        if (retired != null) {
+            closeSegment(retired);
+        }
+        return segment;
+    }
+
+    /**
+     * @param rootEnded true if a top level transmission has ended, in which case the size of the segment is
+     * checked.
+     */
+    private void releaseSegment(Segment segment, boolean rootEnded) {
+        boolean full = rootEnded && maxSegmentSize != Long.MAX_VALUE && getSize(segment) >= maxSegmentSize;
+        boolean close;
+        synchronized (segmentLock) {
+            if (rootEnded) {
+                segment.rootCount++;
+                segment.full |= full;
+            }
+            segment.openRoots--;
+            close = segment.retired && segment.openRoots == 0;
+        }
+        if (close) {
+            closeSegment(segment);
+        }
+    }
+
+    private static long getSize(Segment segment) {
+        if (segment.receiver instanceof Flushable) {
+            try {
+                ((Flushable) segment.receiver).flush();
+            } catch (IOException e) {
+                logger.error("An error occurred whilst flushing the telemetry segment {}: {}", segment.file, e.getMessage(), e);
+            }
+        }
+        return segment.file.length();
+    }
+
+    /**
+     * Stops giving top level transmissions to the current segment.  Must be called whilst holding segmentLock.
+     * @return The segment if it can be closed straight away, otherwise null, in which case it is closed when its
+     * last open top level transmission ends.
+     */
+    private Segment retireCurrentSegment() {
+        Segment segment = currentSegment;
+        if (segment == null) {
+            return null;
+        }
+        currentSegment = null;
+        segment.retired = true;
+        return segment.openRoots == 0 ? segment : null;
+    }
+
+    /**
+     * Must be called whilst holding segmentLock.
+     */
+    private Segment createSegment() {
+        File file;
+        do {
+            file = new File(directory, String.format("%s%06d%s", prefix, nextSegmentIndex, suffix));
+            nextSegmentIndex++;
+        } while (file.exists());
+        try {
+            Segment segment = new Segment(file, segmentFactory.createSegment(file));
+            unlistedSegments.add(segment);
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not create the telemetry segment {}: {}", file, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private void closeSegment(Segment segment) {
+        if (segment.receiver instanceof Closeable) {
+            try {
+                ((Closeable) segment.receiver).close();
+            } catch (IOException e) {
+                logger.error("An error occurred whilst closing the telemetry segment {}: {}", segment.file, e.getMessage(), e);
+            }
+        }
+        synchronized (segmentLock) {
+            segment.closeTime = System.currentTimeMillis();
+            writeManifest();
+        }
+    }
+
+    /**
+     * Lists the closed segments at the head of the unlisted segments in the manifest, stopping at the first that
+     * is still open.  Must be called whilst holding segmentLock.
+     */
+    private void writeManifest() {
+        Segment head = unlistedSegments.peek();
+        if (head == null || head.closeTime == 0) {
+            return;
+        }
+        try {
+            Writer manifest = new FileWriter(new File(directory, MANIFEST_NAME), true);
+            try {
+                while (head != null && head.closeTime != 0) {
+                    manifest.write(head.file.getName() + "\t" + head.startTime + "\t"
+                            + head.closeTime + "\t" + head.rootCount + "\n");
+                    unlistedSegments.poll();
+                    head = unlistedSegments.peek();
+                }
+            } finally {
+                manifest.close();
+            }
+        } catch (IOException e) {
+            logger.error("An error occurred whilst writing the telemetry manifest: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A segment file and the receiver that writes it.
+     */
+    private static class Segment {
+
+        private final File file;
+
+        private final TelemetryReceiver receiver;
+
+        private final long startTime = System.currentTimeMillis();
+
+        // Guarded by segmentLock
+
+        /**
+         * The number of top level transmissions, or top level measurements, that are being written to this
+         * segment.
+         */
+        private int openRoots = 0;
+
+        private int rootCount = 0;
+
+        private boolean full = false;
+
+        private boolean retired = false;
+
+        /**
+         * The time at which the segment was closed, or 0 if it is still open.
+         */
+        private long closeTime = 0;
+
+        private Segment(File file, TelemetryReceiver receiver) {
+            this.file = file;
+            this.receiver = receiver;
+        }
+    }
+
+    /**
+     * The segment that a thread's current top level transmission is written to.
+     */
+    private static class ThreadState {
+
+        private Segment segment;
+
+        private int depth = 0;
+    }
+}
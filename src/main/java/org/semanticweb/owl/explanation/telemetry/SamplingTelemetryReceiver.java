@@ -0,0 +1,412 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TelemetryReceiver} that passes only a sample of transmissions on to another receiver.  For each
+ * transmission name a rate of 1 in n can be set, in which case every nth transmission with that name is passed on
+ * together with its subtree, and the others are skipped.  Transmissions whose names have no rate are always passed
+ * on.  A skipped subtree costs no more than counting its depth, so it is about as cheap as a
+ * {@link NullTelemetryReceiver}.  Within a subtree that is passed on, descendants are sampled at their own rates.
+ * <p>
+ * So that outliers are always captured, a reservoir size can also be set for a name.  The wall clock time of each
+ * transmission with that name that is not sampled is then measured, and the ID, duration and path of the slowest
+ * of them are kept in a reservoir of that size.  Their subtrees are still skipped, and a reservoir is a fixed set
+ * of slots, so keeping it allocates nothing unless a transmission is slow enough to enter it.  The reservoirs are
+ * passed on, and emptied, when the next top level transmission that is passed on ends, by whichever thread, just
+ * before its end.  They are also passed on when {@link #flushReservoirs()} is called, when this receiver is closed
+ * and, at most every {@link #setReservoirInterval(long, TimeUnit) reservoir interval}, when a skipped transmission
+ * that is not nested in a transmission that is passed on ends.
+ * <p>
+ * Each reservoir is passed on as a {@link #RESERVOIR_TRANSMISSION_NAME} transmission with a
+ * {@link #RESERVOIR_NAME_MEASUREMENT_NAME} measurement, containing a transmission for each outlier, slowest first,
+ * that is named after it and that has {@link #ID_MEASUREMENT_NAME}, {@link #DURATION_MEASUREMENT_NAME} (in
+ * nanoseconds) and {@link #PATH_MEASUREMENT_NAME} measurements, the path giving the names of the transmissions
+ * that it was nested in.
+ */
+public class SamplingTelemetryReceiver implements TelemetryReceiver, Closeable {
+
+    public static final String RESERVOIR_TRANSMISSION_NAME = "sampling-reservoir";
+
+    public static final String RESERVOIR_NAME_MEASUREMENT_NAME = "name";
+
+    public static final String ID_MEASUREMENT_NAME = "id";
+
+    public static final String DURATION_MEASUREMENT_NAME = "duration";
+
+    /**
+     * The name of the measurement that gives the path of a transmission that is passed on from a reservoir.
+     */
+    public static final String PATH_MEASUREMENT_NAME = "sampling-path";
+
+    public static final long DEFAULT_RESERVOIR_INTERVAL_MILLIS = 60 * 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(SamplingTelemetryReceiver.class);
+
+    private final TelemetryReceiver delegate;
+
+    private final Map<String, Integer> rates = new ConcurrentHashMap<String, Integer>();
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final Map<String, Reservoir> reservoirs = new ConcurrentHashMap<String, Reservoir>();
+
+    private volatile long reservoirIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_RESERVOIR_INTERVAL_MILLIS);
+
+    /**
+     * The time at which the reservoirs were last passed on.
+     */
+    private final AtomicLong lastReservoirFlush = new AtomicLong(System.nanoTime());
+
+    private final ThreadLocal<SamplingState> samplingState = new ThreadLocal<SamplingState>() {
+        @Override
+        protected SamplingState initialValue() {
+            return new SamplingState();
+        }
+    };
+
+    public SamplingTelemetryReceiver(TelemetryReceiver delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Sets the rate at which transmissions with a particular name are sampled.
+     * @param name The name of the transmissions.
+     * @param oneIn Every oneIn-th transmission with the name is passed on.  A rate of 1 passes on every
+     * transmission and a rate of 0 or less passes on none.
+     */
+    public void setSamplingRate(String name, int oneIn) {
+        rates.put(name, oneIn);
+    }
+
+    /**
+     * Sets the number of the slowest unsampled transmissions with a particular name that are kept.  Outliers that
+     * were already kept for the name are discarded.
+     * @param name The name of the transmissions.
+     * @param size The size of the reservoir.  A size of 0 turns off the reservoir for the name.
+     */
+    public void setReservoirSize(String name, int size) {
+        if (size > 0) {
+            reservoirs.put(name, new Reservoir(name, size));
+        }
+        else {
+            reservoirs.remove(name);
+        }
+    }
+
+    /**
+     * Sets how often the reservoirs are passed on when skipped transmissions end outside any transmission that is
+     * passed on.  Defaults to {@link #DEFAULT_RESERVOIR_INTERVAL_MILLIS} milliseconds.
+     */
+    public void setReservoirInterval(long interval, TimeUnit unit) {
+        reservoirIntervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * Passes the outliers in the reservoirs on to the delegate, as top level transmissions, and empties the
+     * reservoirs.
+     */
+    public void flushReservoirs() {
+        lastReservoirFlush.set(System.nanoTime());
+        for (Reservoir reservoir : reservoirs.values()) {
+            reservoir.drainTo(delegate);
+        }
+    }
+
+    /**
+     * Flushes the reservoirs and closes the delegate if it is {@link Closeable}.
+     */
+    public void close() {
+        flushReservoirs();
+        if (delegate instanceof Closeable) {
+            try {
+                ((Closeable) delegate).close();
+            } catch (IOException e) {
+                logger.error("An error occurred whilst closing the delegate receiver: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    public boolean isEnabled(String name) {
+        return delegate.isEnabled(name);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public void beginTransmission(TelemetryInfo info) {
+        SamplingState state = samplingState.get();
+        if (state.skipDepth > 0) {
+            state.skipDepth++;
+            return;
+        }
+        String name = info.getName();
+        if (isSampled(name)) {
+            delegate.beginTransmission(info);
+            state.path.add(name);
+            return;
+        }
+        state.skipDepth = 1;
+        Reservoir reservoir = reservoirs.get(name);
+        if (reservoir != null) {
+            state.candidate = reservoir;
+            state.candidateId = info.getID();
+            state.candidateStartTime = System.nanoTime();
+        }
+    }
+
+    private boolean isSampled(String name) {
+        Integer rate = rates.get(name);
+        if (rate == null || rate == 1) {
+            return true;
+        }
+        if (rate <= 0) {
+            return false;
+        }
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            counters.putIfAbsent(name, new AtomicLong());
+            counter = counters.get(name);
+        }
+        return counter.getAndIncrement() % rate == 0;
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
+        if (samplingState.get().skipDepth == 0) {
+            delegate.recordMeasurement(info, propertyName, value);
+        }
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        if (samplingState.get().skipDepth == 0) {
+            delegate.recordLong(info, propertyName, value);
+        }
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        if (samplingState.get().skipDepth == 0) {
+            delegate.recordDouble(info, propertyName, value);
+        }
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        if (samplingState.get().skipDepth == 0) {
+            delegate.recordBoolean(info, propertyName, value);
+        }
+    }
+
+    public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
+        if (samplingState.get().skipDepth == 0) {
+            delegate.recordObject(info, namePrefix, nameSuffix, object);
+        }
+    }
+
+    public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
+        if (samplingState.get().skipDepth == 0) {
+            delegate.recordTiming(info, name, telemetryTimer);
+        }
+    }
+
+    public void recordException(TelemetryInfo info, Throwable exception) {
+        if (samplingState.get().skipDepth == 0) {
+            delegate.recordException(info, exception);
+        }
+    }
+
+    public void endTransmission(TelemetryInfo info) {
+        SamplingState state = samplingState.get();
+        if (state.skipDepth > 0) {
+            state.skipDepth--;
+            if (state.skipDepth == 0 && state.candidate != null) {
+                Reservoir candidate = state.candidate;
+                state.candidate = null;
+                candidate.offer(state.candidateId, System.nanoTime() - state.candidateStartTime, state.path);
+                if (state.path.isEmpty()) {
+                    long now = System.nanoTime();
+                    long last = lastReservoirFlush.get();
+                    if (now - last >= reservoirIntervalNanos && lastReservoirFlush.compareAndSet(last, now)) {
+                        for (Reservoir reservoir : reservoirs.values()) {
+                            reservoir.drainTo(delegate);
+                        }
+                    }
+                }
+            }
+            return;
+        }
+        if (!state.path.isEmpty()) {
+            state.path.remove(state.path.size() - 1);
+        }
+        if (state.path.isEmpty()) {
+            // The end of a top level transmission that is passed on
+            lastReservoirFlush.set(System.nanoTime());
+            for (Reservoir reservoir : reservoirs.values()) {
+                reservoir.drainTo(delegate);
+            }
+        }
+        delegate.endTransmission(info);
+    }
+
+    /**
+     * The sampling state of a single thread.
+     */
+    private static class SamplingState {
+
+        /**
+         * The depth of the skipped subtree that the thread is in, or 0 if the thread is not in a skipped subtree.
+         */
+        private int skipDepth = 0;
+
+        /**
+         * The reservoir that the skipped transmission at the top of the skipped subtree is a candidate for, or null
+         * if it is not a candidate.
+         */
+        private Reservoir candidate;
+
+        private long candidateId;
+
+        private long candidateStartTime;
+
+        /**
+         * The names of the open transmissions that have been passed on.
+         */
+        private final List<String> path = new ArrayList<String>();
+    }
+
+    /**
+     * The slowest unsampled transmissions with a particular name, as a fixed set of slots.
+     */
+    private static class Reservoir {
+
+        private final String name;
+
+        private final long[] ids;
+
+        private final long[] durations;
+
+        private final String[] paths;
+
+        /**
+         * The number of slots that are filled.  Guarded by this.
+         */
+        private int count = 0;
+
+        /**
+         * The shortest duration in the reservoir once it is full, and otherwise -1, so that transmissions that are
+         * too quick to enter it are turned away without taking the lock.
+         */
+        private volatile long threshold = -1;
+
+        private Reservoir(String name, int size) {
+            this.name = name;
+            ids = new long[size];
+            durations = new long[size];
+            paths = new String[size];
+        }
+
+        private void offer(long id, long duration, List<String> path) {
+            if (duration <= threshold) {
+                return;
+            }
+            synchronized (this) {
+                int slot;
+                if (count < ids.length) {
+                    slot = count++;
+                }
+                else {
+                    slot = getShortest();
+                    if (durations[slot] >= duration) {
+                        return;
+                    }
+                }
+                ids[slot] = id;
+                durations[slot] = duration;
+                paths[slot] = getPath(path) + name;
+                threshold = count < ids.length ? -1 : durations[getShortest()];
+            }
+        }
+
+        /**
+         * Gets the slot that holds the shortest duration.  Called whilst holding the lock, when there is at least
+         * one filled slot.
+         */
+        private int getShortest() {
+            int shortest = 0;
+            for (int i = 1; i < count; i++) {
+                if (durations[i] < durations[shortest]) {
+                    shortest = i;
+                }
+            }
+            return shortest;
+        }
+
+        private static String getPath(List<String> names) {
+            StringBuilder sb = new StringBuilder();
+            for (String name : names) {
+                sb.append(name);
+                sb.append("/");
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Passes the outliers on to a receiver, slowest first, and empties this reservoir.
+         */
+        private void drainTo(TelemetryReceiver receiver) {
+            long[] drainedIds;
+            long[] drainedDurations;
+            String[] drainedPaths;
+            synchronized (this) {
+                if (count == 0) {
+                    return;
+                }
+                // Sort the slots, slowest first
+                for (int i = 1; i < count; i++) {
+                    for (int j = i; j > 0 && durations[j] > durations[j - 1]; j--) {
+                        swap(j, j - 1);
+                    }
+                }
+                drainedIds = Arrays.copyOf(ids, count);
+                drainedDurations = Arrays.copyOf(durations, count);
+                drainedPaths = Arrays.copyOf(paths, count);
+                Arrays.fill(paths, null);
+                count = 0;
+                threshold = -1;
+            }
+            TelemetryInfo reservoirInfo = new DefaultTelemetryInfo(RESERVOIR_TRANSMISSION_NAME, false);
+            receiver.beginTransmission(reservoirInfo);
+            receiver.recordMeasurement(reservoirInfo, RESERVOIR_NAME_MEASUREMENT_NAME, name);
+            for (int i = 0; i < drainedIds.length; i++) {
+                TelemetryInfo outlier = new DefaultTelemetryInfo(name, false);
+                receiver.beginTransmission(outlier);
+                receiver.recordLong(outlier, ID_MEASUREMENT_NAME, drainedIds[i]);
+                receiver.recordLong(outlier, DURATION_MEASUREMENT_NAME, drainedDurations[i]);
+                receiver.recordMeasurement(outlier, PATH_MEASUREMENT_NAME, drainedPaths[i]);
+                receiver.endTransmission(outlier);
+            }
+            receiver.endTransmission(reservoirInfo);
+        }
+
+        private void swap(int i, int j) {
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            long duration = durations[i];
+            durations[i] = durations[j];
+            durations[j] = duration;
+            String path = paths[i];
+            paths[i] = paths[j];
+            paths[j] = path;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.Arrays;
+
+/**
+ * A stopped {@link TelemetryTimer} whose elapsed times were captured from another timer.  Receivers that replay
+ * timings on a thread other than the one that produced them hand these to their delegates, so that the delegates
+ * see the times that the producer measured and cannot start or stop the producer's timers.  Starting, stopping
+ * and resetting a snapshot has no effect.
+ */
+class SnapshotTelemetryTimer extends TelemetryTimer {
+
+    private final long[] ellapsedTimes;
+
+    /**
+     * @param clocks The clocks that were measured, primary clock first.  Only the first clockCount are used.
+     * @param ellapsedTimes The elapsed time on each clock.
+     * @param clockCount The number of clocks.
+     */
+    SnapshotTelemetryTimer(TelemetryClock[] clocks, long[] ellapsedTimes, int clockCount) {
+        super(Arrays.copyOf(clocks, clockCount));
+        this.ellapsedTimes = Arrays.copyOf(ellapsedTimes, clockCount);
+    }
+
+    @Override
+    long getEllapsedTime(int index) {
+        return ellapsedTimes[index];
+    }
+
+    @Override
+    public long getInitialStartTime() {
+        return 0;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public boolean isRunning() {
+        return false;
+    }
+}
@@ -0,0 +1,155 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Builds, writes and reads per node aggregates of the numeric property values in a tree of
+ * {@link TelemetryNode}s.  The aggregates for every node in a tree are computed in a single bottom up pass, and
+ * are attached to the nodes that extend {@link AbstractTelemetryNode} so that
+ * {@link TelemetryNode#getMaxPropertyValue(String)}, {@link TelemetryNode#getMinPropertyValue(String)} and
+ * {@link TelemetryNode#getMeanPropertyValue(String)} no longer walk the subtree on every call.
+ * <p>
+ * The aggregates can be saved to a sidecar file and attached to the same trees later on without reading any
+ * property values.  Nodes are matched up by their position in a depth first traversal of the trees.
+ */
+public class TelemetryAggregateIndex {
+
+    private static final int MAGIC = 0x54414749;
+
+    private static final int VERSION = 1;
+
+    private TelemetryAggregateIndex() {
+    }
+
+    /**
+     * Computes the aggregates for every node in a tree and attaches them to the nodes.
+     * @param root The root of the tree.
+     * @return The aggregates for the whole tree, by property name.
+     */
+    public static Map<String, PropertyAggregate> build(TelemetryNode root) {
+        Map<String, PropertyAggregate> result = new HashMap<String, PropertyAggregate>();
+        Properties properties = root.getProperties();
+        for (String name : properties.stringPropertyNames()) {
+            Double value = AbstractTelemetryNode.parseDouble(properties.getProperty(name));
+            if (value != null) {
+                getAggregate(result, name).add(value);
+            }
+        }
+        for (TelemetryNode child : root.getChildren()) {
+            for (Map.Entry<String, PropertyAggregate> entry : build(child).entrySet()) {
+                getAggregate(result, entry.getKey()).add(entry.getValue());
+            }
+        }
+        if (root instanceof AbstractTelemetryNode) {
+            ((AbstractTelemetryNode) root).setAggregates(result);
+        }
+        return result;
+    }
+
+    private static PropertyAggregate getAggregate(Map<String, PropertyAggregate> aggregates, String name) {
+        PropertyAggregate aggregate = aggregates.get(name);
+        if (aggregate == null) {
+            aggregate = new PropertyAggregate();
+            aggregates.put(name, aggregate);
+        }
+        return aggregate;
+    }
+
+    /**
+     * Writes the aggregates for some trees.  Trees that have not been indexed are indexed first.
+     * @param roots The roots of the trees.
+     * @param outputStream The stream to write to.  The stream is not closed.
+     */
+    public static void write(List<? extends TelemetryNode> roots, OutputStream outputStream) throws IOException {
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeInt(MAGIC);
+        dataOutputStream.writeInt(VERSION);
+        dataOutputStream.writeInt(roots.size());
+        for (TelemetryNode root : roots) {
+            writeNode(root, dataOutputStream);
+        }
+        dataOutputStream.flush();
+    }
+
+    private static void writeNode(TelemetryNode node, DataOutputStream outputStream) throws IOException {
+        Map<String, PropertyAggregate> aggregates = null;
+        if (node instanceof AbstractTelemetryNode) {
+            aggregates = ((AbstractTelemetryNode) node).getAggregates();
+        }
+        if (aggregates == null) {
+            // Either the tree has not been indexed or the node cannot hold its aggregates
+            aggregates = build(node);
+        }
+        List<TelemetryNode> children = node.getChildren();
+        outputStream.writeInt(children.size());
+        outputStream.writeInt(aggregates.size());
+        for (Map.Entry<String, PropertyAggregate> entry : aggregates.entrySet()) {
+            PropertyAggregate aggregate = entry.getValue();
+            outputStream.writeUTF(entry.getKey());
+            outputStream.writeLong(aggregate.getCount());
+            outputStream.writeDouble(aggregate.getSum());
+            outputStream.writeDouble(aggregate.getCount() == 0 ? 0 : aggregate.getMin());
+            outputStream.writeDouble(aggregate.getCount() == 0 ? 0 : aggregate.getMax());
+            outputStream.writeDouble(aggregate.getSumOfSquares());
+        }
+        for (TelemetryNode child : children) {
+            writeNode(child, outputStream);
+        }
+    }
+
+    /**
+     * Reads aggregates that were written by {@link #write(List, OutputStream)} and attaches them to the nodes of
+     * some trees.  The trees must have the same shape as the trees that the aggregates were written for.
+     * @param roots The roots of the trees.
+     * @param inputStream The stream to read from.  The stream is not closed.
+     * @throws IOException if the stream could not be read, or if it does not match the trees.
+     */
+    public static void read(List<? extends TelemetryNode> roots, InputStream inputStream) throws IOException {
+        DataInputStream dataInputStream = new DataInputStream(inputStream);
+        if (dataInputStream.readInt() != MAGIC) {
+            throw new IOException("Not a telemetry aggregate index");
+        }
+        int version = dataInputStream.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported telemetry aggregate index version: " + version);
+        }
+        if (dataInputStream.readInt() != roots.size()) {
+            throw new IOException("The aggregate index does not match the telemetry");
+        }
+        for (TelemetryNode root : roots) {
+            readNode(root, dataInputStream);
+        }
+    }
+
+    private static void readNode(TelemetryNode node, DataInputStream inputStream) throws IOException {
+        List<TelemetryNode> children = node.getChildren();
+        if (inputStream.readInt() != children.size()) {
+            throw new IOException("The aggregate index does not match the telemetry at " + node.getName());
+        }
+        int aggregateCount = inputStream.readInt();
+        Map<String, PropertyAggregate> aggregates = new HashMap<String, PropertyAggregate>();
+        for (int i = 0; i < aggregateCount; i++) {
+            String name = inputStream.readUTF();
+            long count = inputStream.readLong();
+            double sum = inputStream.readDouble();
+            double min = inputStream.readDouble();
+            double max = inputStream.readDouble();
+            double sumOfSquares = inputStream.readDouble();
+            aggregates.put(name, new PropertyAggregate(count, sum, min, max, sumOfSquares));
+        }
+        for (TelemetryNode child : children) {
+            readNode(child, inputStream);
+        }
+        if (node instanceof AbstractTelemetryNode) {
+            ((AbstractTelemetryNode) node).setAggregates(aggregates);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * The clocks that a {@link TelemetryTimer} can measure.  Apart from {@link #WALL}, the clocks measure the current
+ * thread, so a timer must be started, stopped and read on the same thread.
+ */
+public enum TelemetryClock {
+
+    /**
+     * Elapsed real time in nanoseconds, from {@link System#nanoTime()}.  Includes time spent waiting.
+     */
+    WALL("wall") {
+        @Override
+        public long read() {
+            return System.nanoTime();
+        }
+    },
+
+    /**
+     * The CPU time of the current thread in nanoseconds, including time spent in the kernel.
+     */
+    CPU("cpu") {
+        @Override
+        public long read() {
+            return Beans.threadBean.getCurrentThreadCpuTime();
+        }
+    },
+
+    /**
+     * The user time of the current thread in nanoseconds.  This is the clock that timers have always measured.
+     */
+    USER("user") {
+        @Override
+        public long read() {
+            return Beans.threadBean.getCurrentThreadUserTime();
+        }
+    },
+
+    /**
+     * The number of bytes that the current thread has allocated on the heap.  Only supported on virtual machines
+     * that provide <code>com.sun.management.ThreadMXBean</code>.
+     */
+    ALLOCATED_BYTES("allocated") {
+        @Override
+        public long read() {
+            return AllocationBean.allocationBean != null ? AllocationBean.getAllocatedBytes() : 0;
+        }
+
+        @Override
+        public boolean isSupported() {
+            return AllocationBean.allocationBean != null;
+        }
+    };
+
+    private final String suffix;
+
+    TelemetryClock(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * Gets the suffix that is appended to the name of a timing measurement for this clock.
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Reads the current value of the clock.
+     */
+    public abstract long read();
+
+    /**
+     * Determines whether the clock can be read on this virtual machine.
+     */
+    public boolean isSupported() {
+        return true;
+    }
+
+    private static class Beans {
+
+        private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    }
+
+    /**
+     * Loaded when {@link #ALLOCATED_BYTES} is first used, so that the other clocks do not depend on
+     * <code>com.sun.management</code>.
+     */
+    private static class AllocationBean {
+
+        private static final com.sun.management.ThreadMXBean allocationBean = createAllocationBean();
+
+        private static com.sun.management.ThreadMXBean createAllocationBean() {
+            ThreadMXBean threadBean = Beans.threadBean;
+            if (threadBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+                if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                    return bean;
+                }
+            }
+            return null;
+        }
+
+        private static long getAllocatedBytes() {
+            return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
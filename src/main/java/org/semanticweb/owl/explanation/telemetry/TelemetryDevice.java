@@ -1,4 +1,6 @@
 package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.Set;
 /*
  * Copyright (C) 2010, University of Manchester
  *
@@ -34,9 +36,79 @@ public interface TelemetryDevice {
 
     void recordMeasurement(TelemetryInfo info, String propertyName, String value);
 
+    /**
+     * Records a measurement whose value is a long.  Devices that can store or aggregate primitive values should
+     * override this; the default implementation formats the value and calls
+     * {@link #recordMeasurement(TelemetryInfo, String, String)}.
+     */
+    default void recordLong(TelemetryInfo info, String propertyName, long value) {
+        recordMeasurement(info, propertyName, Long.toString(value));
+    }
+
+    /**
+     * Records a measurement whose value is a long and whose name is given by its {@link TelemetrySymbols symbol}.
+     * Devices that keep measurements in arrays indexed by symbol should override this; the default implementation
+     * looks up the name and calls {@link #recordLong(TelemetryInfo, String, long)}.
+     */
+    default void recordLong(TelemetryInfo info, int propertySymbol, long value) {
+        recordLong(info, TelemetrySymbols.getName(propertySymbol), value);
+    }
+
+    /**
+     * Records a measurement whose value is a double.  The default implementation formats the value and calls
+     * {@link #recordMeasurement(TelemetryInfo, String, String)}.
+     */
+    default void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        recordMeasurement(info, propertyName, Double.toString(value));
+    }
+
+    /**
+     * Records a measurement whose value is a double and whose name is given by its symbol.  The default
+     * implementation looks up the name and calls {@link #recordDouble(TelemetryInfo, String, double)}.
+     */
+    default void recordDouble(TelemetryInfo info, int propertySymbol, double value) {
+        recordDouble(info, TelemetrySymbols.getName(propertySymbol), value);
+    }
+
+    /**
+     * Records a measurement whose value is a boolean.  The default implementation formats the value and calls
+     * {@link #recordMeasurement(TelemetryInfo, String, String)}.
+     */
+    default void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        recordMeasurement(info, propertyName, Boolean.toString(value));
+    }
+
+    /**
+     * Records a measurement whose value is a boolean and whose name is given by its symbol.  The default
+     * implementation looks up the name and calls {@link #recordBoolean(TelemetryInfo, String, boolean)}.
+     */
+    default void recordBoolean(TelemetryInfo info, int propertySymbol, boolean value) {
+        recordBoolean(info, TelemetrySymbols.getName(propertySymbol), value);
+    }
+
     void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object);
 
-    void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer);
+    /**
+     * Records the elapsed times of a timer as long measurements, one for each clock that the timer measures and
+     * that the transmission reports (see {@link TelemetryInfo#getClocks()}).  The measurements are named by
+     * {@link TelemetryTimer#getMeasurementName(String, TelemetryClock)}.
+     */
+    default void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
+        Set<TelemetryClock> reportedClocks = info.getClocks();
+        for (TelemetryClock clock : telemetryTimer.getClocks()) {
+            if (reportedClocks.contains(clock)) {
+                recordLong(info, telemetryTimer.getMeasurementName(name, clock), telemetryTimer.getEllapsedTime(clock));
+            }
+        }
+    }
+
+    /**
+     * Records the elapsed times of a timer for a timing whose name is given by its symbol.  The default
+     * implementation looks up the name and calls {@link #recordTiming(TelemetryInfo, String, TelemetryTimer)}.
+     */
+    default void recordTiming(TelemetryInfo info, int nameSymbol, TelemetryTimer telemetryTimer) {
+        recordTiming(info, TelemetrySymbols.getName(nameSymbol), telemetryTimer);
+    }
 
     void recordException(TelemetryInfo info, Throwable exception);
 
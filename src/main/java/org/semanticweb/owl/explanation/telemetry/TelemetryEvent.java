@@ -0,0 +1,163 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A mutable record of a single call on a {@link TelemetryDevice}.  Instances are preallocated and reused as the
+ * slots of a ring buffer, so everything that is needed to replay the call later is copied into primitive fields
+ * when the event is captured.  In particular, timers are captured as the elapsed time on each of their clocks
+ * rather than as references to the (still running) timer, and are replayed as {@link SnapshotTelemetryTimer}s, and
+ * the transmission is captured by identity rather than by reference to its info.
+ */
+class TelemetryEvent {
+
+    static final int BEGIN = 1;
+
+    static final int END = 2;
+
+    static final int MEASUREMENT = 3;
+
+    static final int TIMING = 4;
+
+    static final int OBJECT = 5;
+
+    static final int EXCEPTION = 6;
+
+    static final int LONG = 7;
+
+    static final int DOUBLE = 8;
+
+    static final int BOOLEAN = 9;
+
+    private static final int CLOCK_COUNT = TelemetryClock.values().length;
+
+    int type;
+
+    long infoId;
+
+    String infoName;
+
+    boolean autoFlush;
+
+    /**
+     * The clocks that the transmission reports.  Only captured for the beginning of a transmission.
+     */
+    Set<TelemetryClock> infoClocks;
+
+    String name;
+
+    String suffix;
+
+    String stringValue;
+
+    long longValue;
+
+    double doubleValue;
+
+    Object object;
+
+    /**
+     * The clocks of the captured timer, primary clock first, and the elapsed time on each.  The timer of a timing,
+     * or the first timer of the transmission for the end of a transmission.
+     */
+    final TelemetryClock[] timerClocks = new TelemetryClock[CLOCK_COUNT];
+
+    final long[] timerTimes = new long[CLOCK_COUNT];
+
+    /**
+     * The number of clocks of the captured timer, or 0 if no timer was captured.
+     */
+    int timerClockCount;
+
+    void setInfo(TelemetryInfo info) {
+        infoId = info.getID();
+        infoName = info.getName();
+        autoFlush = info.isAutoFlush();
+    }
+
+    /**
+     * Captures the elapsed time on each clock of a timer.
+     */
+    void setTimer(TelemetryTimer timer) {
+        int count = timer.getClockCount();
+        for (int i = 0; i < count; i++) {
+            timerClocks[i] = timer.getClock(i);
+            timerTimes[i] = timer.getEllapsedTime(i);
+        }
+        timerClockCount = count;
+    }
+
+    /**
+     * Gets a stopped copy of the captured timer.
+     */
+    TelemetryTimer getTimer() {
+        return new SnapshotTelemetryTimer(timerClocks, timerTimes, timerClockCount);
+    }
+
+    /**
+     * Creates the info that identifies the transmission of this event to a device that replays it, which carries
+     * the captured timer, if there is one, as its only timer.
+     */
+    DetachedTelemetryInfo createInfo() {
+        List<TelemetryTimer> timers = timerClockCount == 0 ? Collections.<TelemetryTimer>emptyList() : Collections.singletonList(getTimer());
+        return new DetachedTelemetryInfo(infoId, infoName, autoFlush,
+                infoClocks != null ? infoClocks : DefaultTelemetryInfo.ALL_CLOCKS, timers);
+    }
+
+    /**
+     * Replays this event on a device.
+     * @param info The info that identifies the transmission of this event to the device.
+     * @param device The device.
+     */
+    void replay(TelemetryInfo info, TelemetryDevice device) {
+        switch (type) {
+            case BEGIN:
+                device.beginTransmission(info);
+                break;
+            case END:
+                device.endTransmission(info);
+                break;
+            case MEASUREMENT:
+                device.recordMeasurement(info, name, stringValue);
+                break;
+            case TIMING:
+                device.recordTiming(info, name, getTimer());
+                break;
+            case LONG:
+                device.recordLong(info, name, longValue);
+                break;
+            case DOUBLE:
+                device.recordDouble(info, name, doubleValue);
+                break;
+            case BOOLEAN:
+                device.recordBoolean(info, name, longValue != 0);
+                break;
+            case OBJECT:
+                device.recordObject(info, name, suffix, object);
+                break;
+            case EXCEPTION:
+                device.recordException(info, (Throwable) object);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Releases the references held by this event so that a slot that is waiting to be reused does not keep
+     * recorded objects alive.
+     */
+    void clear() {
+        infoName = null;
+        name = null;
+        suffix = null;
+        stringValue = null;
+        object = null;
+        infoClocks = null;
+        timerClockCount = 0;
+        longValue = 0;
+        doubleValue = 0;
+    }
+}
@@ -1,6 +1,8 @@
 package org.semanticweb.owl.explanation.telemetry;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 /*
  * Copyright (C) 2010, University of Manchester
  *
@@ -38,5 +40,21 @@ public interface TelemetryInfo {
 
     public String getName();
 
+    /**
+     * Gets the {@link TelemetrySymbols symbol} for the name of this transmission.  The default implementation
+     * looks the name up in the symbol table each time it is called.
+     */
+    default int getNameSymbol() {
+        return TelemetrySymbols.getSymbol(getName());
+    }
+
     public List<TelemetryTimer> getTimers();
+
+    /**
+     * Gets the clocks that are reported when a timing is recorded for this transmission.  A timing is reported
+     * for each of these clocks that the timer measures.  By default all clocks are reported.
+     */
+    default Set<TelemetryClock> getClocks() {
+        return EnumSet.allOf(TelemetryClock.class);
+    }
 }
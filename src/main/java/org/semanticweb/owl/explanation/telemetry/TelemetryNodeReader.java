@@ -0,0 +1,21 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads recorded telemetry back as a sequence of top level {@link TelemetryNode} trees.  Readers only hold the
+ * tree that they are currently building, so files that are much larger than the heap can be processed one top
+ * level transmission at a time.  The trees that are returned are not indexed by {@link TelemetryAggregateIndex}
+ * until an aggregate query is made on them, so trees that are only streamed through cost nothing extra.
+ */
+public interface TelemetryNodeReader extends Closeable {
+
+    /**
+     * Reads the next top level transmission.
+     * @return The node for the transmission, with all of its descendants, or null if there are no more
+     * transmissions.
+     * @throws IOException if the underlying input could not be read or is malformed.
+     */
+    TelemetryNode readNext() throws IOException;
+}
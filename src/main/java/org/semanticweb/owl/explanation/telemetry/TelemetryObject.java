@@ -1,5 +1,6 @@
 package org.semanticweb.owl.explanation.telemetry;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 /*
@@ -39,6 +40,25 @@ public interface TelemetryObject {
 
     boolean isSerialisedAsXML();
 
-//    void serialise(TelemetryObjectXMLWriter writer) throws IOException;
+    /**
+     * Determines whether this object can stream itself as XML through
+     * {@link #serialise(TelemetryObjectXMLWriter)}.  Receivers that write XML then use that method instead of
+     * {@link #serialise(OutputStream)}, so that the serialised object is never held in memory.
+     */
+    default boolean isStreamedAsXML() {
+        return false;
+    }
+
+    /**
+     * Writes this object as elements, attributes and text through a writer.  Only called if
+     * {@link #isStreamedAsXML()} returns true.  Attributes and text that are written before any element is started
+     * belong to the element that encloses the object.  Elements that are left open are closed by the caller.  By
+     * default the output of {@link #serialise(OutputStream)} is written as a CDATA section.
+     */
+    default void serialise(TelemetryObjectXMLWriter writer) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        serialise(bos);
+        writer.writeCDataSection(bos.toString());
+    }
 }
 
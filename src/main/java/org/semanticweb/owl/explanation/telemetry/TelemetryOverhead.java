@@ -0,0 +1,117 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+/**
+ * Accumulates the time that a thread spends inside telemetry receivers, so that it can be left out of the times
+ * measured by {@link TelemetryTimer}s.  A receiver brackets its work with {@link #enter()} and {@link #exit()},
+ * which charges the time in between to the current thread once, however many transmissions are open and however
+ * many timers they have.  A timer subtracts the overhead that its thread accumulated whilst it was running.
+ * <p>
+ * Nested brackets, for example when one receiver method calls another, are only charged once.  The overhead is
+ * measured on each {@link TelemetryClock} that a timer on the thread has used, and no clocks are read on threads
+ * that have never started a timer.
+ */
+public final class TelemetryOverhead {
+
+    private static final TelemetryClock[] CLOCKS = TelemetryClock.values();
+
+    private static final ThreadLocal<TelemetryOverhead> threadOverhead = new ThreadLocal<TelemetryOverhead>() {
+        @Override
+        protected TelemetryOverhead initialValue() {
+            return new TelemetryOverhead();
+        }
+    };
+
+    private final long[] totals = new long[CLOCKS.length];
+
+    private final long[] entryTimes = new long[CLOCKS.length];
+
+    /**
+     * The clocks, as a bit set of ordinals, that the overhead is measured on.
+     */
+    private int clocks = 0;
+
+    /**
+     * The clocks that were read when the outermost bracket was entered.
+     */
+    private int enteredClocks = 0;
+
+    private int depth = 0;
+
+    private TelemetryOverhead() {
+    }
+
+    /**
+     * Gets the overhead of the current thread.
+     */
+    static TelemetryOverhead getOverhead() {
+        return threadOverhead.get();
+    }
+
+    /**
+     * Starts charging time to the overhead of the current thread.
+     * @return The overhead of the current thread, on which the matching call to {@link #exit()} must be made.
+     */
+    public static TelemetryOverhead enter() {
+        TelemetryOverhead overhead = threadOverhead.get();
+        if (overhead.depth == 0) {
+            int entered = overhead.clocks;
+            for (int i = 0; entered != 0; i++, entered >>>= 1) {
+                if ((entered & 1) != 0) {
+                    overhead.entryTimes[i] = CLOCKS[i].read();
+                }
+            }
+            overhead.enteredClocks = overhead.clocks;
+        }
+        overhead.depth++;
+        return overhead;
+    }
+
+    /**
+     * Stops charging time to the overhead of the current thread.  Must be called on the thread that called
+     * {@link #enter()}.
+     */
+    public void exit() {
+        if (depth == 0) {
+            return;
+        }
+        depth--;
+        if (depth == 0) {
+            int entered = enteredClocks;
+            for (int i = 0; entered != 0; i++, entered >>>= 1) {
+                if ((entered & 1) != 0) {
+                    totals[i] += CLOCKS[i].read() - entryTimes[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of brackets that have been entered but not exited.
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Starts measuring the overhead on some clocks.
+     * @param clockSet A bit set of clock ordinals.
+     */
+    void useClocks(int clockSet) {
+        clocks |= clockSet;
+    }
+
+    /**
+     * Gets the total overhead that has been charged on a clock.  Time inside a bracket that has not been exited
+     * yet is not included.
+     */
+    long getTotal(TelemetryClock clock) {
+        return totals[clock.ordinal()];
+    }
+
+    /**
+     * Gets the total user time overhead that has been charged to the current thread.
+     */
+    public static long getTotal() {
+        return threadOverhead.get().getTotal(TelemetryClock.USER);
+    }
+}
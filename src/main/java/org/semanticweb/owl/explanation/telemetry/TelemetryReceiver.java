@@ -30,4 +30,11 @@ package org.semanticweb.owl.explanation.telemetry;
  */
 public interface TelemetryReceiver extends TelemetryDevice {
 
+    /**
+     * Determines whether this receiver does anything with transmissions that have a particular name, so that
+     * instrumented code can avoid building them if it does not.  The default implementation returns true.
+     */
+    default boolean isEnabled(String name) {
+        return true;
+    }
 }
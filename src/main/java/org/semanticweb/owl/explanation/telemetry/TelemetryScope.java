@@ -0,0 +1,195 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A transmission that is opened with {@link TelemetryTransmitter#open(String)} and ended by closing it, usually in
+ * a try-with-resources statement:
+ * <pre>
+ * try (TelemetryScope scope = transmitter.open("justification")) {
+ *     ...
+ *     transmitter.recordLong(scope, "size", justification.size());
+ * }
+ * </pre>
+ * A scope is its own {@link TelemetryInfo} and has a {@link TelemetryTimer}, which is started when the scope is
+ * opened and recorded as the {@link #TIME_MEASUREMENT_NAME} timing when it is closed.  The clocks of the scope are
+ * the clocks that its timer measures.
+ * <p>
+ * Scopes, together with their timers, are pooled by thread and reused, so opening and closing a scope allocates
+ * nothing once the thread's pool has grown to the depth at which it nests scopes.  A scope therefore has a new ID
+ * each time that it is opened and must not be used once it has been closed, which also means that receivers must
+ * not keep references to the infos of transmissions that have ended; the receivers in this package that handle
+ * transmissions after they have ended copy what they need from their infos.  Scopes must be closed on the thread
+ * that opened them, in the reverse order to which they were opened.  When telemetry is disabled, opening and
+ * closing a scope sends nothing and does not start its timer.
+ */
+public final class TelemetryScope implements TelemetryInfo, AutoCloseable {
+
+    public static final String TIME_MEASUREMENT_NAME = "time";
+
+    private static final ThreadLocal<ScopePool> scopePool = new ThreadLocal<ScopePool>() {
+        @Override
+        protected ScopePool initialValue() {
+            return new ScopePool();
+        }
+    };
+
+    private final ScopePool pool;
+
+    private final int depth;
+
+    private final TelemetryTimer timer = new TelemetryTimer();
+
+    private final List<TelemetryTimer> timers = Collections.singletonList(timer);
+
+    /**
+     * The clocks that the timer measures, so that receivers that only record the clocks that an info advertises
+     * get every clock that the timer has measured and no others.
+     */
+    private final Set<TelemetryClock> clocks = Collections.unmodifiableSet(EnumSet.copyOf(timer.getClocks()));
+
+    private TelemetryTransmitter transmitter;
+
+    private long id;
+
+    private String name;
+
+    private int nameSymbol;
+
+    private boolean autoFlush;
+
+    private boolean enabled;
+
+    private TelemetryScope(ScopePool pool, int depth) {
+        this.pool = pool;
+        this.depth = depth;
+    }
+
+    static TelemetryScope open(TelemetryTransmitter transmitter, String name, boolean autoFlush) {
+        ScopePool pool = scopePool.get();
+        TelemetryScope scope = pool.push();
+        scope.transmitter = transmitter;
+        scope.id = DefaultTelemetryInfo.nextID();
+        scope.name = name;
+        scope.nameSymbol = -1;
+        scope.autoFlush = autoFlush;
+        scope.enabled = transmitter.isEnabled();
+        if (scope.enabled) {
+            transmitter.beginTransmission(scope);
+            scope.timer.reset();
+            scope.timer.start();
+        }
+        return scope;
+    }
+
+    public TelemetryTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Stops the timer, records it and ends the transmission, and returns this scope to the pool.
+     * @throws IllegalStateException If this scope is not the one that the thread opened last, either because it
+     * has already been closed or because a scope that was opened inside it has not been closed.
+     */
+    public void close() {
+        if (!pool.isTop(this)) {
+            throw new IllegalStateException("Scope " + name + " is not the innermost open scope of this thread");
+        }
+        try {
+            if (enabled) {
+                timer.stop();
+                transmitter.recordTiming(this, TIME_MEASUREMENT_NAME, timer);
+                transmitter.endTransmission(this);
+            }
+        } finally {
+            transmitter = null;
+            pool.pop();
+        }
+    }
+
+    public boolean isAutoFlush() {
+        return autoFlush;
+    }
+
+    public long getID() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNameSymbol() {
+        int symbol = nameSymbol;
+        if (symbol == -1) {
+            symbol = TelemetrySymbols.getSymbol(name);
+            nameSymbol = symbol;
+        }
+        return symbol;
+    }
+
+    public List<TelemetryTimer> getTimers() {
+        return timers;
+    }
+
+    public Set<TelemetryClock> getClocks() {
+        return clocks;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof TelemetryInfo)) {
+            return false;
+        }
+        TelemetryInfo other = (TelemetryInfo) obj;
+        return this.id == other.getID() && (name == null ? other.getName() == null : name.equals(other.getName()));
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) id + (name == null ? 0 : name.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return name + "." + id;
+    }
+
+    /**
+     * The scopes of a single thread, indexed by the depth at which they are opened.
+     */
+    private static class ScopePool {
+
+        private TelemetryScope[] scopes = new TelemetryScope[16];
+
+        private int depth = 0;
+
+        private TelemetryScope push() {
+            if (depth == scopes.length) {
+                scopes = Arrays.copyOf(scopes, depth * 2);
+            }
+            TelemetryScope scope = scopes[depth];
+            if (scope == null) {
+                scope = new TelemetryScope(this, depth);
+                scopes[depth] = scope;
+            }
+            depth++;
+            return scope;
+        }
+
+        private boolean isTop(TelemetryScope scope) {
+            return depth > 0 && scope.depth == depth - 1;
+        }
+
+        private void pop() {
+            depth--;
+        }
+    }
+}
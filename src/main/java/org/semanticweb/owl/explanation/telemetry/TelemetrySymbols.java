@@ -0,0 +1,79 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A global table of the names of transmissions, measurements and timings, which gives each name a symbol: a small
+ * int that is unique to the name and that never changes.  Symbols are dense, starting from 0, so receivers can keep
+ * what they know about names in arrays indexed by symbol instead of in hash maps.  Looking up a name that already
+ * has a symbol, and looking up the name of a symbol, take no locks.
+ * <p>
+ * Names are never removed from the table, so it should only be used for names that are drawn from a fixed
+ * vocabulary, which telemetry names usually are, and not for names that contain identifiers.
+ */
+public final class TelemetrySymbols {
+
+    private static final ConcurrentHashMap<String, Integer> symbols = new ConcurrentHashMap<String, Integer>();
+
+    private static final Object lock = new Object();
+
+    /**
+     * The names by symbol.  Only grown under lock, and republished after each name is added.
+     */
+    private static volatile String[] names = new String[64];
+
+    private static volatile int count = 0;
+
+    private TelemetrySymbols() {
+    }
+
+    /**
+     * Gets the symbol for a name, giving the name a symbol if it does not yet have one.
+     * @param name The name.  Not null.
+     */
+    public static int getSymbol(String name) {
+        Integer symbol = symbols.get(name);
+        if (symbol != null) {
+            return symbol;
+        }
+        return addName(name);
+    }
+
+    private static int addName(String name) {
+        synchronized (lock) {
+            Integer symbol = symbols.get(name);
+            if (symbol != null) {
+                return symbol;
+            }
+            int newSymbol = count;
+            String[] current = names;
+            if (newSymbol == current.length) {
+                current = Arrays.copyOf(current, newSymbol * 2);
+            }
+            current[newSymbol] = name;
+            names = current;
+            count = newSymbol + 1;
+            symbols.put(name, newSymbol);
+            return newSymbol;
+        }
+    }
+
+    /**
+     * Gets the name that has a symbol.
+     * @throws IllegalArgumentException If no name has the symbol.
+     */
+    public static String getName(int symbol) {
+        if (symbol < 0 || symbol >= count) {
+            throw new IllegalArgumentException("Unknown symbol: " + symbol);
+        }
+        return names[symbol];
+    }
+
+    /**
+     * Gets the number of names that have symbols.  The symbols are 0 up to, but not including, this number.
+     */
+    public static int getSymbolCount() {
+        return count;
+    }
+}
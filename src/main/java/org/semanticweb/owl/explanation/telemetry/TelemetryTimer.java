@@ -22,78 +22,219 @@ package org.semanticweb.owl.explanation.telemetry;
  * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
  */
 
-import java.lang.management.ManagementFactory;
-import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Author: Matthew Horridge<br>
  * The University of Manchester<br>
  * Information Management Group<br>
  * Date: 10-Mar-2010
+ * <p>
+ * Measures one or more {@link TelemetryClock}s of the current thread, less the time that the thread spent in
+ * telemetry receivers whilst the timer was running (see {@link TelemetryOverhead}).  The first clock is the
+ * primary clock, which is the one reported by {@link #getEllapsedTime()}.  By default a timer measures
+ * {@link TelemetryClock#USER} time.  Clocks that are not supported by the virtual machine are not measured.
  */
 public class TelemetryTimer {
 
+    private final TelemetryClock[] clocks;
 
-    private long startTime;
+    /**
+     * The clocks as a bit set of ordinals.
+     */
+    private final int clockSet;
 
-    public long lastStopTime = 0;
+    private final long[] startTimes;
 
-    private boolean stopped = true;
+    private final long[] lastStopTimes;
 
-    private long stopDuration = 0;
+    private final long[] stopDurations;
 
-    private static ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    /**
+     * The overhead of the thread on each clock when the timer was last started.
+     */
+    private final long[] overheadsAtStart;
 
+    /**
+     * The overhead on each clock that accumulated whilst the timer was running, up until it was last stopped.
+     */
+    private final long[] overheadDurations;
 
-    public void start() {
-        getCurrentTime();
+    /**
+     * The last stop time of the primary clock.
+     */
+    public long lastStopTime = 0;
+
+    private boolean started = false;
 
-        long currentTime = getCurrentTime();
-        if(lastStopTime != 0) {
-            stopDuration = stopDuration + (currentTime - lastStopTime);
+    private boolean stopped = true;
+
+    private boolean hasStopped = false;
+
+    /**
+     * Creates a timer that measures some clocks.
+     * @param clocks The clocks.  If no clocks are specified then the timer measures {@link TelemetryClock#USER}
+     * time.
+     */
+    public TelemetryTimer(TelemetryClock... clocks) {
+        List<TelemetryClock> supported = new ArrayList<TelemetryClock>();
+        int set = 0;
+        for (TelemetryClock clock : clocks) {
+            if (clock.isSupported() && !supported.contains(clock)) {
+                supported.add(clock);
+                set |= 1 << clock.ordinal();
+            }
         }
-        if (startTime == 0) {
-            startTime = getCurrentTime();
+        if (supported.isEmpty()) {
+            supported.add(TelemetryClock.USER);
+            set = 1 << TelemetryClock.USER.ordinal();
         }
-        stopped = false;
+        this.clocks = supported.toArray(new TelemetryClock[supported.size()]);
+        this.clockSet = set;
+        startTimes = new long[this.clocks.length];
+        lastStopTimes = new long[this.clocks.length];
+        stopDurations = new long[this.clocks.length];
+        overheadsAtStart = new long[this.clocks.length];
+        overheadDurations = new long[this.clocks.length];
+    }
+
+    /**
+     * Gets the clocks that this timer measures.  The first clock is the primary clock.
+     */
+    public List<TelemetryClock> getClocks() {
+        return Collections.unmodifiableList(Arrays.asList(clocks));
     }
 
-    private long getCurrentTime() {
-        return bean.getCurrentThreadUserTime();
+    public void start() {
+        if (!stopped) {
+            return;
+        }
+        TelemetryOverhead overhead = TelemetryOverhead.getOverhead();
+        overhead.useClocks(clockSet);
+        for (int i = 0; i < clocks.length; i++) {
+            long currentTime = clocks[i].read();
+            if (hasStopped) {
+                stopDurations[i] += currentTime - lastStopTimes[i];
+            }
+            if (!started) {
+                startTimes[i] = currentTime;
+            }
+            overheadsAtStart[i] = overhead.getTotal(clocks[i]);
+        }
+        started = true;
+        stopped = false;
     }
 
     public long getInitialStartTime() {
-        return startTime;
+        return startTimes[0];
     }
 
     public void stop() {
         if (!stopped) {
-            lastStopTime = getCurrentTime();//
+            TelemetryOverhead overhead = TelemetryOverhead.getOverhead();
+            for (int i = 0; i < clocks.length; i++) {
+                lastStopTimes[i] = clocks[i].read();
+                overheadDurations[i] += overhead.getTotal(clocks[i]) - overheadsAtStart[i];
+            }
+            lastStopTime = lastStopTimes[0];
+            hasStopped = true;
             stopped = true;
         }
     }
 
+    /**
+     * Gets the elapsed time on the primary clock.
+     */
+    public long getEllapsedTime() {
+        return getEllapsedTime(0);
+    }
 
+    /**
+     * Gets the elapsed time on a clock.
+     * @throws IllegalArgumentException if this timer does not measure the clock.
+     */
+    public long getEllapsedTime(TelemetryClock clock) {
+        for (int i = 0; i < clocks.length; i++) {
+            if (clocks[i] == clock) {
+                return getEllapsedTime(i);
+            }
+        }
+        throw new IllegalArgumentException("The timer does not measure " + clock);
+    }
 
-    public long getEllapsedTime() {
+    /**
+     * Gets the elapsed time on the clock at an index in {@link #getClocks()}.
+     */
+    long getEllapsedTime(int index) {
+        if (!started) {
+            return 0;
+        }
         long time;
-        if(!stopped) {
-            time = (getCurrentTime() - startTime) - stopDuration;
+        if (!stopped) {
+            long overhead = overheadDurations[index] + (TelemetryOverhead.getOverhead().getTotal(clocks[index]) - overheadsAtStart[index]);
+            time = (clocks[index].read() - startTimes[index]) - stopDurations[index] - overhead;
         }
         else {
-            time = (lastStopTime - startTime) - stopDuration;
+            time = (lastStopTimes[index] - startTimes[index]) - stopDurations[index] - overheadDurations[index];
         }
         return time;
     }
 
+    /**
+     * Gets the name of the measurement that the time on a clock is reported under.  The primary clock is
+     * reported under the name of the timing and the other clocks under the name followed by a dot and the suffix
+     * of the clock, for example <code>time.wall</code>.
+     */
+    public String getMeasurementName(String name, TelemetryClock clock) {
+        return clock == clocks[0] ? name : name + "." + clock.getSuffix();
+    }
+
+    /**
+     * Gets the number of clocks that this timer measures, without copying them.
+     */
+    int getClockCount() {
+        return clocks.length;
+    }
+
+    /**
+     * Gets the clock at an index in {@link #getClocks()}, without copying the clocks.
+     */
+    TelemetryClock getClock(int index) {
+        return clocks[index];
+    }
+
+    /**
+     * Determines whether this timer measures a clock.
+     */
+    boolean isMeasuring(TelemetryClock clock) {
+        return (clockSet & 1 << clock.ordinal()) != 0;
+    }
+
+    /**
+     * Determines whether a clock is the primary clock of this timer.
+     */
+    boolean isPrimaryClock(TelemetryClock clock) {
+        return clock == clocks[0];
+    }
+
     public void reset() {
-        startTime = 0;
+        started = false;
+        hasStopped = false;
         lastStopTime = 0;
+        Arrays.fill(lastStopTimes, 0);
+        Arrays.fill(stopDurations, 0);
+        Arrays.fill(overheadDurations, 0);
+        if (!stopped) {
+            // Restart from now
+            stopped = true;
+            start();
+        }
     }
 
     public boolean isRunning() {
         return !stopped;
     }
-
-  
 }
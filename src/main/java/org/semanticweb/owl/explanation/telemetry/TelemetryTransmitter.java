@@ -22,11 +22,32 @@ package org.semanticweb.owl.explanation.telemetry;
  * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
  */
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
 /**
  * Author: Matthew Horridge<br>
  * The University of Manchester<br>
  * Information Management Group<br>
  * Date: 14-Mar-2010
+ * <p>
+ * Passes telemetry on to the current receiver.  When no receiver has been set, or it has been set to a
+ * {@link NullTelemetryReceiver}, telemetry is disabled.  Instrumented code that builds transmissions or starts
+ * timers should check {@link #isEnabled()} first, so that nothing is allocated or measured when telemetry is off:
+ * <pre>
+ * TelemetryTransmitter transmitter = TelemetryTransmitter.getTransmitter();
+ * if (transmitter.isEnabled()) {
+ *     TelemetryInfo info = new DefaultTelemetryInfo("classification");
+ *     ...
+ * }
+ * </pre>
+ * Measurements that are expensive to compute can be given as suppliers, which are only called when telemetry is
+ * enabled.  Every method that passes telemetry on returns straight away when telemetry is disabled.
  */
 public class TelemetryTransmitter implements TelemetryDevice {
 
@@ -36,6 +57,15 @@ public class TelemetryTransmitter implements TelemetryDevice {
 
     private TelemetryReceiver telemetryReceiver;
 
+    /**
+     * Whether the receiver is a real one, as a call site whose target returns a constant.  The JIT compiler folds
+     * calls through a static final call site into the constant, and recompiles them if the target is changed, so
+     * the check is free whilst the receiver stays the same.  The receiver itself is deliberately not volatile, so
+     * it should be set before the threads that transmit telemetry are started.
+     */
+    private static final MutableCallSite ENABLED_SITE = new MutableCallSite(MethodHandles.constant(boolean.class, false));
+
+    private static final MethodHandle ENABLED = ENABLED_SITE.dynamicInvoker();
 
     public static TelemetryTransmitter getTransmitter() {
         return instance;
@@ -52,37 +82,214 @@ public class TelemetryTransmitter implements TelemetryDevice {
         else {
             this.telemetryReceiver = nullTelemetryReceiver;
         }
+        boolean enabled = !(this.telemetryReceiver instanceof NullTelemetryReceiver);
+        ENABLED_SITE.setTarget(MethodHandles.constant(boolean.class, enabled));
+        MutableCallSite.syncAll(new MutableCallSite[]{ENABLED_SITE});
+    }
+
+    /**
+     * Determines whether telemetry is being received, that is, whether a receiver other than a
+     * {@link NullTelemetryReceiver} has been set.
+     */
+    public boolean isEnabled() {
+        try {
+            return (boolean) ENABLED.invokeExact();
+        } catch (Throwable e) {
+            // The target is always a constant
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Determines whether transmissions with a particular name are being received.
+     * @see TelemetryReceiver#isEnabled(String)
+     */
+    public boolean isEnabled(String name) {
+        return isEnabled() && telemetryReceiver.isEnabled(name);
+    }
+
+    /**
+     * Begins a transmission with a pooled {@link TelemetryScope}, which ends the transmission when it is closed.
+     */
+    public TelemetryScope open(String name) {
+        return TelemetryScope.open(this, name, true);
+    }
+
+    /**
+     * Begins a transmission with a pooled {@link TelemetryScope}, which ends the transmission when it is closed.
+     * @param autoFlush Whether receivers should flush what they have written when the transmission ends.
+     */
+    public TelemetryScope open(String name, boolean autoFlush) {
+        return TelemetryScope.open(this, name, autoFlush);
     }
 
     public void beginTransmission(TelemetryInfo transmitter) {
-        telemetryReceiver.beginTransmission(transmitter);
+        if (isEnabled()) {
+            telemetryReceiver.beginTransmission(transmitter);
+        }
     }
 
     public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
-        telemetryReceiver.recordMeasurement(info, propertyName, value);
+        if (isEnabled()) {
+            telemetryReceiver.recordMeasurement(info, propertyName, value);
+        }
     }
 
     public void recordMeasurement(TelemetryInfo info, String propertyName, Number number) {
-        telemetryReceiver.recordMeasurement(info, propertyName, number.toString());
+        if (!isEnabled()) {
+            return;
+        }
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            telemetryReceiver.recordLong(info, propertyName, number.longValue());
+        }
+        else if (number instanceof Double) {
+            telemetryReceiver.recordDouble(info, propertyName, number.doubleValue());
+        }
+        else if (number instanceof Float) {
+            // Widening to double would record the float's binary value, for example 0.10000000149011612 for 0.1f
+            telemetryReceiver.recordMeasurement(info, propertyName, Float.toString(number.floatValue()));
+        }
+        else {
+            telemetryReceiver.recordMeasurement(info, propertyName, number.toString());
+        }
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, long value) {
+        if (isEnabled()) {
+            telemetryReceiver.recordLong(info, propertyName, value);
+        }
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, float value) {
+        if (isEnabled()) {
+            telemetryReceiver.recordMeasurement(info, propertyName, Float.toString(value));
+        }
+    }
+
+    public void recordMeasurement(TelemetryInfo info, String propertyName, double value) {
+        if (isEnabled()) {
+            telemetryReceiver.recordDouble(info, propertyName, value);
+        }
     }
 
     public void recordMeasurement(TelemetryInfo info, String propertyName, boolean b) {
-        telemetryReceiver.recordMeasurement(info, propertyName, Boolean.toString(b));
+        if (isEnabled()) {
+            telemetryReceiver.recordBoolean(info, propertyName, b);
+        }
+    }
+
+    /**
+     * Records a measurement whose value is supplied.  The supplier is only called if telemetry is enabled, and its
+     * value is recorded in the same way as by {@link #recordMeasurement(TelemetryInfo, String, Number)} if it is a
+     * number, as a boolean if it is a boolean and as a string otherwise.  Nothing is recorded if the supplier gives
+     * null.
+     */
+    public void recordMeasurement(TelemetryInfo info, String propertyName, Supplier<?> supplier) {
+        if (!isEnabled()) {
+            return;
+        }
+        Object value = supplier.get();
+        if (value instanceof Number) {
+            recordMeasurement(info, propertyName, (Number) value);
+        }
+        else if (value instanceof Boolean) {
+            telemetryReceiver.recordBoolean(info, propertyName, (Boolean) value);
+        }
+        else if (value != null) {
+            telemetryReceiver.recordMeasurement(info, propertyName, value.toString());
+        }
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        if (isEnabled()) {
+            telemetryReceiver.recordLong(info, propertyName, value);
+        }
+    }
+
+    public void recordLong(TelemetryInfo info, int propertySymbol, long value) {
+        if (isEnabled()) {
+            telemetryReceiver.recordLong(info, propertySymbol, value);
+        }
+    }
+
+    /**
+     * Records a long measurement whose value is supplied.  The supplier is only called if telemetry is enabled.
+     */
+    public void recordLong(TelemetryInfo info, String propertyName, LongSupplier supplier) {
+        if (isEnabled()) {
+            telemetryReceiver.recordLong(info, propertyName, supplier.getAsLong());
+        }
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        if (isEnabled()) {
+            telemetryReceiver.recordDouble(info, propertyName, value);
+        }
+    }
+
+    public void recordDouble(TelemetryInfo info, int propertySymbol, double value) {
+        if (isEnabled()) {
+            telemetryReceiver.recordDouble(info, propertySymbol, value);
+        }
+    }
+
+    /**
+     * Records a double measurement whose value is supplied.  The supplier is only called if telemetry is enabled.
+     */
+    public void recordDouble(TelemetryInfo info, String propertyName, DoubleSupplier supplier) {
+        if (isEnabled()) {
+            telemetryReceiver.recordDouble(info, propertyName, supplier.getAsDouble());
+        }
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        if (isEnabled()) {
+            telemetryReceiver.recordBoolean(info, propertyName, value);
+        }
+    }
+
+    public void recordBoolean(TelemetryInfo info, int propertySymbol, boolean value) {
+        if (isEnabled()) {
+            telemetryReceiver.recordBoolean(info, propertySymbol, value);
+        }
+    }
+
+    /**
+     * Records a boolean measurement whose value is supplied.  The supplier is only called if telemetry is enabled.
+     */
+    public void recordBoolean(TelemetryInfo info, String propertyName, BooleanSupplier supplier) {
+        if (isEnabled()) {
+            telemetryReceiver.recordBoolean(info, propertyName, supplier.getAsBoolean());
+        }
     }
 
     public void recordException(TelemetryInfo info, Throwable exception) {
-        telemetryReceiver.recordException(info, exception);
+        if (isEnabled()) {
+            telemetryReceiver.recordException(info, exception);
+        }
     }
 
     public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
-        telemetryReceiver.recordObject(info, namePrefix, nameSuffix, object);
+        if (isEnabled()) {
+            telemetryReceiver.recordObject(info, namePrefix, nameSuffix, object);
+        }
     }
 
     public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
-        telemetryReceiver.recordTiming(info, name, telemetryTimer);
+        if (isEnabled()) {
+            telemetryReceiver.recordTiming(info, name, telemetryTimer);
+        }
+    }
+
+    public void recordTiming(TelemetryInfo info, int nameSymbol, TelemetryTimer telemetryTimer) {
+        if (isEnabled()) {
+            telemetryReceiver.recordTiming(info, nameSymbol, telemetryTimer);
+        }
     }
 
     public void endTransmission(TelemetryInfo transmitter) {
-        telemetryReceiver.endTransmission(transmitter);
+        if (isEnabled()) {
+            telemetryReceiver.endTransmission(transmitter);
+        }
     }
 }
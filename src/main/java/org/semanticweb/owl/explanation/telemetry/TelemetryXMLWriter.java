@@ -2,15 +2,16 @@ package org.semanticweb.owl.explanation.telemetry;
 
 import org.semanticweb.owlapi.model.IRI;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 import java.util.StringTokenizer;
 
 import org.semanticweb.owlapi.io.XMLUtils;
@@ -30,10 +31,27 @@ import org.slf4j.LoggerFactory;
  * The University of Manchester<br>
  * Bio-Health Informatics Group<br>
  * Date: 31/01/2011
+ * <p>
+ * The writer is built so that writing an element allocates nothing once it has warmed up.  The qualified names of
+ * elements and attributes are resolved once and cached, the frames of open elements are kept in an array and
+ * reused, and attribute values and text are escaped straight into the underlying {@link Writer}.  Names are
+ * resolved against the namespace manager as it is when they are first written.  A writer is not thread safe.
  */
 public class TelemetryXMLWriter implements XMLWriter {
 
-    private Stack<XMLElement> elementStack;
+    /**
+     * The frames of the open elements, the innermost at <code>depth - 1</code>.  Frames above the depth are kept
+     * for reuse.
+     */
+    private XMLElement[] elementFrames = new XMLElement[16];
+
+    private int depth = 0;
+
+    private final Map<String, String> elementQNames = new HashMap<String, String>();
+
+    private final Map<IRI, String> iriQNames = new HashMap<IRI, String>();
+
+    private final Map<String, String> attributeQNames = new HashMap<String, String>();
 
     protected Writer writer;
 
@@ -55,6 +73,28 @@ public class TelemetryXMLWriter implements XMLWriter {
 
     private static final Logger logger = LoggerFactory.getLogger(TelemetryXMLWriter.class);
 
+    private int baseIndentation = 0;
+
+    private static final byte STRING_ATTRIBUTE = 0;
+
+    private static final byte LONG_ATTRIBUTE = 1;
+
+    private static final byte DOUBLE_ATTRIBUTE = 2;
+
+    /**
+     * Formats primitive attribute values.  Its characters are copied into numberChars, which is long enough for
+     * any long or double.
+     */
+    private final StringBuilder numberBuilder = new StringBuilder(32);
+
+    private final char[] numberChars = new char[32];
+
+    /**
+     * Writes the elements of streamed objects.  Reused for every object, as its open elements are always ended
+     * once the object has been written.
+     */
+    private final ObjectXMLWriter objectWriter = new ObjectXMLWriter();
+
     public TelemetryXMLWriter(Writer writer, XMLWriterNamespaceManager nsm, String xmlBase) {
         this.writer = writer;
         xmlWriterNamespaceManager = nsm;
@@ -63,11 +103,18 @@ public class TelemetryXMLWriter implements XMLWriter {
         // no need to set it to UTF-8: it's supposed to be the default encoding for XML.
         //Must be set correctly for the Writer anyway, or bugs will ensue.
         //this.encoding = "UTF-8";
-        elementStack = new Stack<XMLElement>();
         setupEntities();
     }
 
 
+    /**
+     * Sets the indentation of elements that are written at the top level of this writer.  This is used when a
+     * writer produces a fragment that will later be inserted into another document.
+     */
+    public void setBaseIndentation(int baseIndentation) {
+        this.baseIndentation = baseIndentation;
+    }
+
     private void setupEntities() {
         List<String> namespaces = Lists.newArrayList(xmlWriterNamespaceManager
                 .getNamespaces());
@@ -89,6 +136,96 @@ public class TelemetryXMLWriter implements XMLWriter {
     }
 
 
+    private String getElementQName(String name) {
+        String qName = elementQNames.get(name);
+        if (qName == null) {
+            qName = xmlWriterNamespaceManager.getQName(IRI.create(name));
+            elementQNames.put(name, qName);
+        }
+        return qName;
+    }
+
+    private String getElementQName(IRI name) {
+        String qName = iriQNames.get(name);
+        if (qName == null) {
+            qName = xmlWriterNamespaceManager.getQName(name);
+            iriQNames.put(name, qName);
+        }
+        return qName;
+    }
+
+    private String getAttributeQName(String name) {
+        String qName = attributeQNames.get(name);
+        if (qName == null) {
+            qName = xmlWriterNamespaceManager.getQName(name);
+            attributeQNames.put(name, qName);
+        }
+        return qName;
+    }
+
+    private XMLElement peekElement() {
+        return elementFrames[depth - 1];
+    }
+
+    /**
+     * Opens an element in a reused frame.
+     */
+    private void pushElement(String qName) {
+        if (depth == elementFrames.length) {
+            elementFrames = Arrays.copyOf(elementFrames, depth * 2);
+        }
+        XMLElement element = elementFrames[depth];
+        if (element == null) {
+            element = new XMLElement(null, 0);
+            elementFrames[depth] = element;
+        }
+        element.reset(qName, baseIndentation + depth);
+        depth++;
+    }
+
+    private void pushElement(XMLElement element) {
+        if (depth == elementFrames.length) {
+            elementFrames = Arrays.copyOf(elementFrames, depth * 2);
+        }
+        elementFrames[depth] = element;
+        depth++;
+    }
+
+    /**
+     * Writes a string with the characters that are special in XML escaped, in the same way as
+     * {@link XMLUtils#escapeXML(CharSequence)} but without building a new string.
+     */
+    private void writeEscaped(String value) throws IOException {
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            String entity;
+            switch (value.charAt(i)) {
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                case '"':
+                    entity = "&quot;";
+                    break;
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '\'':
+                    entity = "&apos;";
+                    break;
+                default:
+                    continue;
+            }
+            writer.write(value, start, i - start);
+            writer.write(entity);
+            start = i + 1;
+        }
+        writer.write(value, start, length - start);
+    }
+
     private String swapForEntity(String value) {
         for (String curEntity : entities.keySet()) {
             String entityVal = entities.get(curEntity);
@@ -129,47 +266,76 @@ public class TelemetryXMLWriter implements XMLWriter {
 
     @Override
     public void setWrapAttributes(boolean b) {
-        if (!elementStack.isEmpty()) {
-            XMLElement element = elementStack.peek();
-            element.setWrapAttributes(b);
+        if (depth > 0) {
+            peekElement().setWrapAttributes(b);
         }
     }
 
     @Override
     public void writeEndElement() {
         // Pop the element off the stack and write it out
-        if (!elementStack.isEmpty()) {
-            XMLElement element = elementStack.pop();
+        if (depth > 0) {
+            XMLElement element = elementFrames[--depth];
             try {
                 element.writeElementEnd();
             } catch (IOException e) {
                 logger.error("An error occurred whilst writing the closing element: {}", e.getMessage(), e);
+            } finally {
+                element.clear();
             }
         }
     }
 
     @Override
     public void writeAttribute(String attr, String val) {
-        XMLElement element = elementStack.peek();
-        element.setAttribute(xmlWriterNamespaceManager.getQName(attr), val);
+        peekElement().setAttribute(getAttributeQName(attr), val);
+    }
+
+    /**
+     * Writes an attribute whose value is a long.  The value is kept as a primitive and its digits are written
+     * straight into the output, without formatting it as a string.
+     */
+    public void writeLongAttribute(String attr, long val) {
+        peekElement().setPrimitiveAttribute(getAttributeQName(attr), LONG_ATTRIBUTE, val);
+    }
+
+    /**
+     * Writes an attribute whose value is a double, in the same format as {@link Double#toString(double)}, without
+     * formatting it as a string.
+     */
+    public void writeDoubleAttribute(String attr, double val) {
+        peekElement().setPrimitiveAttribute(getAttributeQName(attr), DOUBLE_ATTRIBUTE, Double.doubleToRawLongBits(val));
+    }
+
+    /**
+     * Writes the decimal digits of a number into the output through a reused buffer.
+     */
+    private void writeNumber(long bits, byte kind) throws IOException {
+        numberBuilder.setLength(0);
+        if (kind == LONG_ATTRIBUTE) {
+            numberBuilder.append(bits);
+        }
+        else {
+            numberBuilder.append(Double.longBitsToDouble(bits));
+        }
+        int length = numberBuilder.length();
+        numberBuilder.getChars(0, length, numberChars, 0);
+        writer.write(numberChars, 0, length);
     }
 
 
 
     @Override
     public void writeTextContent(String text) {
-        XMLElement element = elementStack.peek();
-        element.setText(text, false);
+        peekElement().setText(text, false);
     }
 
     public void writeXMLContent(String text) {
-        XMLElement element = elementStack.peek();
-        element.setXMLContent(text);
+        peekElement().setXMLContent(text);
     }
 
     public void writeCData(String data) {
-        XMLElement element = elementStack.peek();
-        element.setText(data, true);
+        peekElement().setText(data, true);
     }
 
 
@@ -185,8 +351,8 @@ public class TelemetryXMLWriter implements XMLWriter {
                 writeEntities(rootElement);
             }
             preambleWritten = true;
-            while (!elementStack.isEmpty()) {
-                elementStack.pop().writeElementStart(true);
+            while (depth > 0) {
+                elementFrames[--depth].writeElementStart(true);
             }
             writeStartElement(rootElement);
             setWrapAttributes(true);
@@ -209,18 +375,71 @@ public class TelemetryXMLWriter implements XMLWriter {
 
     @Override
     public void writeStartElement(IRI name) throws IllegalElementNameException {
-        XMLElement element = new XMLElement(name, elementStack.size());
-        if (!elementStack.isEmpty()) {
-            XMLElement topElement = elementStack.peek();
-            if (topElement != null) {
-                try {
-                    topElement.writeElementStart(false);
-                } catch (IOException e) {
-                    logger.error("An error occurred whilst writing the element: {}", e.getMessage(), e);
-                }
+        startElement(getElementQName(name));
+    }
+
+    /**
+     * Starts an element whose name is resolved against the namespace manager in the same way as
+     * <code>writeStartElement(IRI.create(name))</code>, but without creating an IRI.
+     */
+    public void writeStartElement(String name) {
+        startElement(getElementQName(name));
+    }
+
+    private void startElement(String qName) {
+        if (depth > 0) {
+            try {
+                peekElement().writeElementStart(false);
+            } catch (IOException e) {
+                logger.error("An error occurred whilst writing the element: {}", e.getMessage(), e);
+            }
+        }
+        pushElement(qName);
+    }
+
+    /**
+     * Writes a well formed fragment of XML, which has already been serialised, as the next child of the current
+     * element.
+     * @param fragment The fragment.  Not null.
+     */
+    public void writeFragment(String fragment) {
+        try {
+            if (depth > 0) {
+                peekElement().writeElementStart(false);
             }
+            writer.write(fragment);
+        } catch (IOException e) {
+            logger.error("An error occurred whilst writing a fragment: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes a fragment of XML that is read from a reader into the current element, in the same way as
+     * {@link #writeFragment(String)}, without holding the whole fragment in memory.
+     * @param fragment The reader that the fragment is read from.  It is read to its end but is not closed.
+     */
+    public void writeFragment(Reader fragment) throws IOException {
+        if (depth > 0) {
+            peekElement().writeElementStart(false);
+        }
+        char[] chunk = new char[8192];
+        int read;
+        while ((read = fragment.read(chunk)) != -1) {
+            writer.write(chunk, 0, read);
+        }
+    }
+
+    /**
+     * Streams an object into the current element through a {@link TelemetryObjectXMLWriter}.  Elements that the
+     * object leaves open are closed afterwards.
+     * @param object The object.  Its {@link TelemetryObject#isStreamedAsXML()} method must return true.
+     */
+    public void writeObject(TelemetryObject object) throws IOException {
+        try {
+            object.serialise(objectWriter);
+        } finally {
+            objectWriter.endOpenElements();
         }
-        elementStack.push(element);
     }
 
     @Override
@@ -230,16 +449,13 @@ public class TelemetryXMLWriter implements XMLWriter {
 
     @Override
     public void writeComment(String commentText) {
-        XMLElement element = new XMLElement(null, elementStack.size());
+        XMLElement element = new XMLElement(null, depth);
         element.setText("<!-- " + commentText.replaceAll("--","&#45;&#45;") + " -->", false);
-        if (!elementStack.isEmpty()) {
-            XMLElement topElement = elementStack.peek();
-            if (topElement != null) {
-                try {
-                    topElement.writeElementStart(false);
-                } catch (IOException e) {
-                    logger.error("An error occurred whilst writing an element: {}", e.getMessage(), e);
-                }
+        if (depth > 0) {
+            try {
+                peekElement().writeElementStart(false);
+            } catch (IOException e) {
+                logger.error("An error occurred whilst writing an element: {}", e.getMessage(), e);
             }
         }
         if (preambleWritten) {
@@ -250,7 +466,7 @@ public class TelemetryXMLWriter implements XMLWriter {
             }
         }
         else {
-            elementStack.push(element);
+            pushElement(element);
         }
     }
 
@@ -274,7 +490,7 @@ public class TelemetryXMLWriter implements XMLWriter {
     @Override
     public void endDocument() {
         // Pop of each element
-        while (!elementStack.isEmpty()) {
+        while (depth > 0) {
             writeEndElement();
         }
         try {
@@ -285,6 +501,47 @@ public class TelemetryXMLWriter implements XMLWriter {
     }
 
 
+    /**
+     * Passes the elements that an object writes straight to this writer, keeping track of how many are open so
+     * that the elements of the enclosing document are not ended by mistake.  Attributes and text that are written
+     * whilst none of the object's own elements are open go to the enclosing element.
+     */
+    private class ObjectXMLWriter implements TelemetryObjectXMLWriter {
+
+        private int depth = 0;
+
+        public void startElement(String name) {
+            writeStartElement(name);
+            depth++;
+        }
+
+        public void writeAttribute(String attributeName, String value) {
+            TelemetryXMLWriter.this.writeAttribute(attributeName, value);
+        }
+
+        public void writeTextContent(String textContent) {
+            TelemetryXMLWriter.this.writeTextContent(textContent);
+        }
+
+        public void writeCDataSection(String cdataContent) {
+            writeCData(cdataContent);
+        }
+
+        public void endElement() {
+            if (depth > 0) {
+                writeEndElement();
+                depth--;
+            }
+        }
+
+        private void endOpenElements() {
+            while (depth > 0) {
+                endElement();
+            }
+        }
+    }
+
+
     private static final class StringLengthOnlyComparator implements
 			Comparator<String> {
 		@Override
@@ -297,9 +554,23 @@ public class TelemetryXMLWriter implements XMLWriter {
 
 	public class XMLElement {
 
-        private IRI name;
+        /**
+         * The qualified name, or null if this element is a comment.
+         */
+        private String qName;
 
-        private Map<String, String> attributes;
+        private String[] attributeNames = new String[4];
+
+        private String[] attributeValues = new String[4];
+
+        /**
+         * The kind of each attribute value.  Primitive values are kept in attributeBits rather than attributeValues.
+         */
+        private byte[] attributeKinds = new byte[4];
+
+        private long[] attributeBits = new long[4];
+
+        private int attributeCount;
 
         String textContent;
 
@@ -321,11 +592,30 @@ public class TelemetryXMLWriter implements XMLWriter {
 
 
         public XMLElement(IRI name, int indentation) {
-            this.name = name;
-            attributes = new LinkedHashMap<String, String>();
+            reset(name != null ? getElementQName(name) : null, indentation);
+        }
+
+        /**
+         * Makes this element a new, empty element so that its frame can be reused.
+         */
+        private void reset(String qName, int indentation) {
+            this.qName = qName;
             this.indentation = indentation;
+            attributeCount = 0;
             textContent = null;
+            cdata = false;
+            escape = true;
             startWritten = false;
+            wrapAttributes = false;
+        }
+
+        /**
+         * Drops the references that this element holds once it has been written.
+         */
+        private void clear() {
+            Arrays.fill(attributeValues, 0, attributeCount, null);
+            attributeCount = 0;
+            textContent = null;
         }
 
 
@@ -337,7 +627,35 @@ public class TelemetryXMLWriter implements XMLWriter {
 
 
         public void setAttribute(String attribute, String value) {
-            attributes.put(attribute, value);
+            int i = getAttributeSlot(attribute);
+            attributeValues[i] = value;
+            attributeKinds[i] = STRING_ATTRIBUTE;
+        }
+
+        private void setPrimitiveAttribute(String attribute, byte kind, long bits) {
+            int i = getAttributeSlot(attribute);
+            attributeValues[i] = null;
+            attributeKinds[i] = kind;
+            attributeBits[i] = bits;
+        }
+
+        /**
+         * Gets the slot of an attribute, adding a slot for it if this element does not have it yet.
+         */
+        private int getAttributeSlot(String attribute) {
+            for (int i = 0; i < attributeCount; i++) {
+                if (attributeNames[i].equals(attribute)) {
+                    return i;
+                }
+            }
+            if (attributeCount == attributeNames.length) {
+                attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+                attributeValues = Arrays.copyOf(attributeValues, attributeCount * 2);
+                attributeKinds = Arrays.copyOf(attributeKinds, attributeCount * 2);
+                attributeBits = Arrays.copyOf(attributeBits, attributeCount * 2);
+            }
+            attributeNames[attributeCount] = attribute;
+            return attributeCount++;
         }
 
 
@@ -356,9 +674,9 @@ public class TelemetryXMLWriter implements XMLWriter {
             if (!startWritten) {
                 startWritten = true;
                 insertIndentation();
-                if (name != null) {
+                if (qName != null) {
                     writer.write('<');
-                    writer.write(xmlWriterNamespaceManager.getQName(name));
+                    writer.write(qName);
                     writeAttributes();
                     if (textContent != null) {
                         boolean wrap = textContent.length() > TEXT_CONTENT_WRAP_LIMIT;
@@ -409,7 +727,7 @@ public class TelemetryXMLWriter implements XMLWriter {
 
 
         public void writeElementEnd() throws IOException {
-            if (name != null) {
+            if (qName != null) {
                 if (!startWritten) {
                     writeElementStart(true);
                 }
@@ -418,7 +736,7 @@ public class TelemetryXMLWriter implements XMLWriter {
                         insertIndentation();
                     }
                     writer.write("</");
-                    writer.write(xmlWriterNamespaceManager.getQName(name));
+                    writer.write(qName);
                     writer.write(">");
                     writeNewLine();
                 }
@@ -434,19 +752,25 @@ public class TelemetryXMLWriter implements XMLWriter {
                 writer.write(swapForEntity(XMLUtils.escapeXML(val)));
             }
             else {
-                writer.write(XMLUtils.escapeXML(val));
+                writeEscaped(val);
             }
             writer.write('"');
         }
 
 
         private void writeAttributes() throws IOException {
-            for (Iterator<String> it = attributes.keySet().iterator(); it.hasNext();) {
-                String attr = it.next();
-                String val = attributes.get(attr);
+            for (int i = 0; i < attributeCount; i++) {
                 writer.write(' ');
-                writeAttribute(attr, val);
-                if (it.hasNext() && wrapAttributes) {
+                if (attributeKinds[i] == STRING_ATTRIBUTE) {
+                    writeAttribute(attributeNames[i], attributeValues[i]);
+                }
+                else {
+                    writer.write(attributeNames[i]);
+                    writer.write("=\"");
+                    writeNumber(attributeBits[i], attributeKinds[i]);
+                    writer.write('"');
+                }
+                if (i + 1 < attributeCount && wrapAttributes) {
                     writer.write("\n");
                     indentation++;
                     insertIndentation();
@@ -460,7 +784,7 @@ public class TelemetryXMLWriter implements XMLWriter {
             if (textContent != null) {
                 if (!cdata) {
                     if (escape) {
-                        writer.write(XMLUtils.escapeXML(textContent));
+                        writeEscaped(textContent);
                     }
                     else {
                         writer.write(textContent);
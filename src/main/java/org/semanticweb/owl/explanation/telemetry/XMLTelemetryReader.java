@@ -0,0 +1,252 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Stack;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Reads the XML written by {@link XMLTelemetryReceiver} with a StAX parser, one top level transmission at a time.
+ * Only the subtree of the transmission that is being returned is held in memory, so files that are far larger
+ * than the heap can be analysed by iterating over the children of the document element.
+ * <p>
+ * The content of <code>object</code> elements is skipped by the parser unless objects have been requested, in
+ * which case it is available through {@link TelemetryNode#getInputStream(String)}: as text if the object was
+ * written as text, or as serialised XML if it was written as XML.  A recorded exception is exposed as an object
+ * named <code>exception</code> that contains its stack trace.  If the file ends part way through a transmission,
+ * for example because the process that was writing it was killed, the partial transmission is returned last.
+ */
+public class XMLTelemetryReader implements TelemetryNodeReader {
+
+    private static final String MEASUREMENT = "measurement";
+
+    private static final String OBJECT = "object";
+
+    private static final String EXCEPTION = "exception";
+
+    private static final String STACKTRACE = "stacktrace";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final InputStream inputStream;
+
+    private final XMLStreamReader reader;
+
+    private final boolean readObjects;
+
+    private boolean started = false;
+
+    private boolean finished = false;
+
+    public XMLTelemetryReader(File file) throws IOException {
+        this(file, false);
+    }
+
+    public XMLTelemetryReader(File file, boolean readObjects) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file), 1024 * 1024), readObjects);
+    }
+
+    /**
+     * @param inputStream The XML to read.
+     * @param readObjects true if the content of objects should be read, or false if it should be skipped.
+     */
+    public XMLTelemetryReader(InputStream inputStream, boolean readObjects) throws IOException {
+        this.inputStream = inputStream;
+        this.readObjects = readObjects;
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        try {
+            reader = factory.createXMLStreamReader(inputStream);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public TelemetryNode readNext() throws IOException {
+        if (finished) {
+            return null;
+        }
+        DefaultTelemetryNode root = null;
+        Stack<DefaultTelemetryNode> stack = new Stack<DefaultTelemetryNode>();
+        try {
+            if (!started) {
+                started = true;
+                if (reader.nextTag() != XMLStreamConstants.START_ELEMENT) {
+                    finished = true;
+                    return null;
+                }
+            }
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (MEASUREMENT.equals(name)) {
+                        if (!stack.isEmpty()) {
+                            String propertyName = reader.getAttributeValue(null, "name");
+                            String value = reader.getAttributeValue(null, "value");
+                            if (propertyName != null && value != null) {
+                                stack.peek().setProperty(propertyName, value);
+                            }
+                        }
+                        skipElement();
+                    }
+                    else if (OBJECT.equals(name)) {
+                        if (readObjects && !stack.isEmpty()) {
+                            String objectName = reader.getAttributeValue(null, "name");
+                            stack.peek().addObject(objectName, readContent());
+                        }
+                        else {
+                            skipElement();
+                        }
+                    }
+                    else if (EXCEPTION.equals(name)) {
+                        if (stack.isEmpty()) {
+                            skipElement();
+                        }
+                        else {
+                            readException(stack.peek());
+                        }
+                    }
+                    else {
+                        DefaultTelemetryNode node = new DefaultTelemetryNode(name);
+                        if (stack.isEmpty()) {
+                            root = node;
+                        }
+                        else {
+                            stack.peek().addChild(node);
+                        }
+                        stack.push(node);
+                    }
+                }
+                else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (stack.isEmpty()) {
+                        // The end of the document element
+                        finished = true;
+                        return null;
+                    }
+                    DefaultTelemetryNode node = stack.pop();
+                    if (stack.isEmpty()) {
+                        return node;
+                    }
+                }
+            }
+            finished = true;
+            return root;
+        } catch (XMLStreamException e) {
+            finished = true;
+            if (root != null) {
+                // A truncated file.  Return what there is.
+                return root;
+            }
+            throw new IOException(e);
+        }
+    }
+
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Skips the rest of the current element, including its end tag.
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Reads the content of the current element, including its end tag.  Text content is returned as it is.  If
+     * the element contains child elements then the content is returned as serialised XML.
+     */
+    private byte[] readContent() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        StringWriter xml = null;
+        XMLStreamWriter writer = null;
+        int depth = 1;
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (writer == null) {
+                    xml = new StringWriter();
+                    writer = XMLOutputFactory.newInstance().createXMLStreamWriter(xml);
+                    writer.writeCharacters(text.toString());
+                }
+                writer.writeStartElement(reader.getLocalName());
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                }
+                depth++;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                if (depth == 0) {
+                    break;
+                }
+                writer.writeEndElement();
+            }
+            else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                if (writer == null) {
+                    text.append(reader.getText());
+                }
+                else {
+                    writer.writeCharacters(reader.getText());
+                }
+            }
+        }
+        if (writer == null) {
+            return text.toString().getBytes(UTF_8);
+        }
+        writer.flush();
+        writer.close();
+        return xml.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Reads an exception element and adds its stack trace to a node.
+     */
+    private void readException(DefaultTelemetryNode node) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (depth == 1 && STACKTRACE.equals(reader.getLocalName())) {
+                    node.addObject(BinaryTelemetryFormat.EXCEPTION_OBJECT_NAME, reader.getElementText().getBytes(UTF_8));
+                }
+                else {
+                    depth++;
+                }
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
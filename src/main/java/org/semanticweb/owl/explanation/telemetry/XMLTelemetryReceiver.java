@@ -2,18 +2,26 @@ package org.semanticweb.owl.explanation.telemetry;
 
 import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLAxiom;
@@ -26,21 +34,61 @@ import org.semanticweb.owlapi.rdf.rdfxml.renderer.XMLWriterNamespaceManager;
  * The University of Manchester<br>
  * Bio-Health Informatics Group<br>
  * Date: 31/01/2011
+ * <p>
+ * Each thread has its own stack of open transmissions, and writes the subtree of its current top level
+ * transmission into a buffer of its own, without taking a lock.  When the top level transmission ends, the thread
+ * appends the subtree to the document, under a lock that is only held for the copy, so a thread never waits for the
+ * transmission of another thread to end.  Top level subtrees therefore appear in the document in the order in which
+ * they ended, each with its own transmissions properly nested in it.  The subtrees of different threads are never
+ * nested in each other.  Once a thread's buffer holds more than {@link #DEFAULT_MAX_BUFFERED_SUBTREE_CHARS}
+ * characters, by default, it is spilled to a temporary file, so a thread whose top level transmission lasts a whole
+ * run does not make the run's output pile up on the heap.  Subtrees that are still open when the document is
+ * closed are discarded.
+ * <p>
+ * Output is buffered until a top level transmission ends in which the transmission itself, or one of the
+ * transmissions nested in it, is {@link TelemetryInfo#isAutoFlush() auto flushed}.  The subtree is then flushed
+ * and, when writing to a file with {@link #setDurableCommit(boolean) durable commits}, forced to the storage device.
+ * Commits that are requested by several threads at about the same time are made together, with a single force of
+ * the file.
  */
-public class XMLTelemetryReceiver implements TelemetryReceiver {
+public class XMLTelemetryReceiver implements TelemetryReceiver, Closeable, Flushable {
+
+    public static final long DEFAULT_MAX_BUFFERED_SUBTREE_CHARS = 16 * 1024 * 1024;
 
     private TelemetryXMLWriter xmlWriter;
 
-    private Stack<TelemetryInfo> telemetryNodeStack = new Stack<TelemetryInfo>();
+    private XMLWriterNamespaceManager nsm;
+
+    private ThreadLocal<TransmissionState> transmissionState = new ThreadLocal<TransmissionState>() {
+        @Override
+        protected TransmissionState initialValue() {
+            return new TransmissionState();
+        }
+    };
 
-    private Stack<Boolean> ignoreNodeStack = new Stack<Boolean>();
+    private Set<String> ignoredNodeNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
-    private Set<String> ignoredNodeNames = new HashSet<String>();
+    /**
+     * Guards xmlWriter, baseWriter and documentEnded.  Only held whilst a completed subtree is appended to the
+     * document, the document is flushed or the document is ended.
+     */
+    private final Object documentLock = new Object();
 
-    private int depth = 0;
+    private volatile long maxBufferedSubtreeChars = DEFAULT_MAX_BUFFERED_SUBTREE_CHARS;
+
+    private boolean documentEnded = false;
 
     private Writer baseWriter;
 
+    private final Thread shutdownHook;
+
+    /**
+     * Commits the output file, or null if this receiver does not write to a file.
+     */
+    private final GroupCommit groupCommit;
+
+    private volatile boolean durableCommit = false;
+
     public XMLTelemetryReceiver() {
         this(getNextFile("telemetry-", ".xml"));
     }
@@ -57,228 +105,566 @@ public class XMLTelemetryReceiver implements TelemetryReceiver {
     }
 
     public XMLTelemetryReceiver(File outputFile) {
-        this(getWriterForFile(outputFile));
+        this(getStreamForFile(outputFile));
     }
 
-    private static BufferedWriter getWriterForFile(File outputFile) {
+    private static FileOutputStream getStreamForFile(File outputFile) {
         try {
-            return new BufferedWriter(new FileWriter(outputFile), 10 * 1024 * 1024);
+            return new FileOutputStream(outputFile);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private XMLTelemetryReceiver(FileOutputStream outputStream) {
+        this(new BufferedWriter(new OutputStreamWriter(outputStream), 10 * 1024 * 1024), new GroupCommit(outputStream.getChannel()));
+    }
+
+    /**
+     * Creates a receiver that writes to a writer.  Auto flushed transmissions flush the writer, but cannot be
+     * committed to a storage device.
+     */
     public XMLTelemetryReceiver(Writer writer) {
-        XMLWriterNamespaceManager nsm = new XMLWriterNamespaceManager("");
+        this(writer, null);
+    }
+
+    private XMLTelemetryReceiver(Writer writer, GroupCommit groupCommit) {
+        this.groupCommit = groupCommit;
+        nsm = new XMLWriterNamespaceManager("");
         baseWriter = writer;
         xmlWriter = new TelemetryXMLWriter(baseWriter, nsm, "");
         xmlWriter.startDocument(IRI.create("experiments"));
-        depth++;
-        Runtime.getRuntime().addShutdownHook(new Thread() {
+        shutdownHook = new Thread() {
             @Override
             public void run() {
-                try {
-                    xmlWriter.endDocument();
-                    baseWriter.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                closeDocument();
             }
-        });
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Ends the document and closes the underlying writer.
+     */
+    public void close() {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down, in which case the hook closes the document
+        }
+        closeDocument();
+    }
+
+    /**
+     * Flushes what has been written to the document so far to the underlying writer.  Subtrees that are still
+     * being written by other threads are not included.
+     */
+    public void flush() throws IOException {
+        synchronized (documentLock) {
+            baseWriter.flush();
+        }
+    }
+
+    private void closeDocument() {
+        synchronized (documentLock) {
+            try {
+                endDocument();
+                baseWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Ends the document, after which completed subtrees are discarded.
+     */
+    private void endDocument() {
+        synchronized (documentLock) {
+            if (!documentEnded) {
+                xmlWriter.endDocument();
+                documentEnded = true;
+            }
+        }
+    }
+
+    /**
+     * Sets whether the file is forced to the storage device, rather than just flushed, when an auto flushed
+     * subtree has been written.  Defaults to false, since forcing the file for every top level transmission is
+     * costly when there are many short ones.  Has no effect unless this receiver writes to a file.
+     */
+    public void setDurableCommit(boolean durableCommit) {
+        this.durableCommit = durableCommit;
+    }
+
+    /**
+     * Sets how long a durable commit waits for commits on other threads to join it.  Defaults to zero, in which case
+     * commits are only grouped when they are requested whilst another commit is in progress.
+     */
+    public void setGroupCommitWindow(long window, TimeUnit unit) {
+        if (groupCommit != null) {
+            groupCommit.setWindow(window, unit);
+        }
+    }
+
+    /**
+     * Sets how many characters of its current top level subtree each thread holds in memory.  Beyond this the
+     * subtree is spilled to a temporary file until it is appended to the document.
+     */
+    public void setMaxBufferedSubtreeChars(long maxBufferedSubtreeChars) {
+        this.maxBufferedSubtreeChars = maxBufferedSubtreeChars;
     }
 
     public void addIgnoreName(String name) {
         ignoredNodeNames.add(name);
     }
 
+    /**
+     * Ends the transmissions that the current thread has begun but not ended.
+     */
     public void closeOpenTransmissions() {
-        while (!telemetryNodeStack.isEmpty()) {
-            TelemetryInfo info = telemetryNodeStack.peek();
+        TransmissionState state = transmissionState.get();
+        while (!state.telemetryNodeStack.isEmpty()) {
+            TelemetryInfo info = state.telemetryNodeStack.peek();
             endTransmission(info);
         }
     }
 
     @Override
     public void beginTransmission(TelemetryInfo info) {
-        List<TelemetryTimer> timers = pauseRunningTimers();
+        TransmissionState state = transmissionState.get();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
         try {
-            telemetryNodeStack.push(info);
+            if (state.telemetryNodeStack.isEmpty()) {
+                beginRootOutput(state);
+            }
+            state.telemetryNodeStack.push(info);
             boolean ignore = false;
-            if (!ignoreNodeStack.isEmpty()) {
-                ignore = ignoreNodeStack.peek();
+            if (!state.ignoreNodeStack.isEmpty()) {
+                ignore = state.ignoreNodeStack.peek();
             }
             if (!ignore) {
                 ignore = ignoredNodeNames.contains(info.getName());
             }
-            ignoreNodeStack.push(ignore);
+            state.ignoreNodeStack.push(ignore);
             if (!ignore) {
-                xmlWriter.writeStartElement(IRI.create(info.getName()));
+                state.writer.writeStartElement(info.getName());
             }
-            depth++;
+            state.spillIfFull();
         } finally {
-            unpauseTimers(timers);
+            overhead.exit();
         }
     }
 
     @Override
     public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
-        if (propertyName != null && value != null && !isIgnoredTransmission()) {
-            List<TelemetryTimer> timers = pauseRunningTimers();
+        TransmissionState state = transmissionState.get();
+        if (propertyName != null && value != null && !state.isIgnoredTransmission()) {
+            TelemetryOverhead overhead = TelemetryOverhead.enter();
+            boolean root = state.telemetryNodeStack.isEmpty();
+            try {
+                writeMeasurementStart(state, root, propertyName);
+                state.writer.writeAttribute("value", value);
+                state.writer.writeEndElement();
+            } finally {
+                endMeasurement(state, root);
+                overhead.exit();
+            }
+        }
+    }
+
+    @Override
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        TransmissionState state = transmissionState.get();
+        if (propertyName != null && !state.isIgnoredTransmission()) {
+            TelemetryOverhead overhead = TelemetryOverhead.enter();
+            boolean root = state.telemetryNodeStack.isEmpty();
             try {
-                xmlWriter.writeStartElement(IRI.create("measurement"));
-                xmlWriter.writeAttribute("name", propertyName);
-                xmlWriter.writeAttribute("value", value);
-                xmlWriter.writeEndElement();
+                writeMeasurementStart(state, root, propertyName);
+                state.writer.writeLongAttribute("value", value);
+                state.writer.writeEndElement();
             } finally {
-                unpauseTimers(timers);
+                endMeasurement(state, root);
+                overhead.exit();
             }
         }
     }
 
-    private boolean isIgnoredTransmission() {
-        return !ignoreNodeStack.isEmpty() && ignoreNodeStack.peek();
+    @Override
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        TransmissionState state = transmissionState.get();
+        if (propertyName != null && !state.isIgnoredTransmission()) {
+            TelemetryOverhead overhead = TelemetryOverhead.enter();
+            boolean root = state.telemetryNodeStack.isEmpty();
+            try {
+                writeMeasurementStart(state, root, propertyName);
+                state.writer.writeDoubleAttribute("value", value);
+                state.writer.writeEndElement();
+            } finally {
+                endMeasurement(state, root);
+                overhead.exit();
+            }
+        }
+    }
+
+    @Override
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        // Boolean.toString returns one of two constants, so this neither boxes nor formats
+        recordMeasurement(info, propertyName, Boolean.toString(value));
+    }
+
+    /**
+     * Opens a measurement element and writes its name, beginning the output of a root if the measurement is not
+     * nested in a transmission.
+     */
+    private void writeMeasurementStart(TransmissionState state, boolean root, String propertyName) {
+        if (root) {
+            beginRootOutput(state);
+        }
+        state.writer.writeStartElement("measurement");
+        state.writer.writeAttribute("name", propertyName);
+    }
+
+    private void endMeasurement(TransmissionState state, boolean root) {
+        if (root) {
+            endRootOutput(state);
+        }
+        else {
+            state.spillIfFull();
+        }
     }
 
     @Override
     public void recordException(TelemetryInfo info, Throwable exception) {
-        List<TelemetryTimer> pausedTimers = pauseRunningTimers();
+        TransmissionState state = transmissionState.get();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        boolean root = state.telemetryNodeStack.isEmpty();
         try {
-            xmlWriter.writeStartElement(IRI.create("exception"));
+            if (root) {
+                beginRootOutput(state);
+            }
+            TelemetryXMLWriter writer = state.writer;
+            writer.writeStartElement("exception");
 
-            xmlWriter.writeStartElement(IRI.create("class"));
-            xmlWriter.writeTextContent(exception.getClass().getName());
-            xmlWriter.writeEndElement();
+            writer.writeStartElement("class");
+            writer.writeTextContent(exception.getClass().getName());
+            writer.writeEndElement();
 
-            xmlWriter.writeStartElement(IRI.create("message"));
-            xmlWriter.writeTextContent(exception.getMessage());
-            xmlWriter.writeEndElement();
+            writer.writeStartElement("message");
+            writer.writeTextContent(exception.getMessage());
+            writer.writeEndElement();
 
-            xmlWriter.writeStartElement(IRI.create("stacktrace"));
+            writer.writeStartElement("stacktrace");
             StringWriter sw = new StringWriter();
             PrintWriter pw = new PrintWriter(sw);
             exception.printStackTrace(pw);
             pw.flush();
-            xmlWriter.writeTextContent(sw.getBuffer().toString());
-            xmlWriter.writeEndElement();
+            writer.writeTextContent(sw.getBuffer().toString());
+            writer.writeEndElement();
 
-            xmlWriter.writeEndElement();
+            writer.writeEndElement();
         } finally {
-            unpauseTimers(pausedTimers);
+            if (root) {
+                endRootOutput(state);
+            }
+            else {
+                state.spillIfFull();
+            }
+            overhead.exit();
         }
     }
 
     @Override
     public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
-        if (!isIgnoredTransmission()) {
-            List<TelemetryTimer> timers = pauseRunningTimers();
-            serialiseObject(info, namePrefix, object);
-            unpauseTimers(timers);
-        }
-    }
-
-    private void serialiseObject(TelemetryInfo info, String namePrefix, Object object) {
-        if (!isIgnoredTransmission()) {
+        TransmissionState state = transmissionState.get();
+        if (!state.isIgnoredTransmission()) {
+            TelemetryOverhead overhead = TelemetryOverhead.enter();
+            boolean root = state.telemetryNodeStack.isEmpty();
             try {
-                boolean writeAsXML = false;
-                xmlWriter.writeStartElement(IRI.create("object"));
-                xmlWriter.writeAttribute("name", namePrefix);
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                boolean wrapInCDataSection = true;
-                if (object instanceof TelemetryObject) {
-                    TelemetryObject telemetryObject = (TelemetryObject) object;
-                    telemetryObject.serialise(bos);
-                    if (!telemetryObject.isSerialisedAsXML()) {
-                        wrapInCDataSection = false;
-                    }
-                    else {
-                        wrapInCDataSection = false;
-                        writeAsXML = true;
-                    }
+                if (root) {
+                    beginRootOutput(state);
                 }
-                else if (object instanceof OWLAxiom) {
-                    OWLAxiom ax = (OWLAxiom) object;
-                    OutputStreamWriter osw = new OutputStreamWriter(bos);
-                    PrintWriter printWriter = new PrintWriter(osw);
-                    OWLXMLWriter writer = new OWLXMLWriter(printWriter, null);
-                    OWLXMLObjectRenderer renderer = new OWLXMLObjectRenderer(writer);
-                    ax.accept(renderer);
-                    osw.flush();
-                    wrapInCDataSection = false;
-                    writeAsXML = true;
-
+                serialiseObject(state.writer, namePrefix, object);
+            } finally {
+                if (root) {
+                    endRootOutput(state);
                 }
                 else {
-                    OutputStreamWriter writer = new OutputStreamWriter(bos);
-                    String string = object.toString();
-                    writer.write(string);
-                    writer.flush();
+                    state.spillIfFull();
                 }
-                if (wrapInCDataSection) {
-                    xmlWriter.writeCData(bos.toString());
+                overhead.exit();
+            }
+        }
+    }
+
+    private void serialiseObject(TelemetryXMLWriter xmlWriter, String namePrefix, Object object) {
+        try {
+            if (object instanceof TelemetryObject && ((TelemetryObject) object).isStreamedAsXML()) {
+                xmlWriter.writeStartElement("object");
+                xmlWriter.writeAttribute("name", namePrefix);
+                try {
+                    xmlWriter.writeObject((TelemetryObject) object);
+                } finally {
+                    xmlWriter.writeEndElement();
                 }
-                else if (writeAsXML) {
-                    xmlWriter.writeXMLContent(bos.toString());
+                return;
+            }
+            boolean writeAsXML = false;
+            xmlWriter.writeStartElement("object");
+            xmlWriter.writeAttribute("name", namePrefix);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            boolean wrapInCDataSection = true;
+            if (object instanceof TelemetryObject) {
+                TelemetryObject telemetryObject = (TelemetryObject) object;
+                telemetryObject.serialise(bos);
+                if (!telemetryObject.isSerialisedAsXML()) {
+                    wrapInCDataSection = false;
                 }
                 else {
-                    xmlWriter.writeTextContent(bos.toString());
+                    wrapInCDataSection = false;
+                    writeAsXML = true;
                 }
-                xmlWriter.writeEndElement();
-            } catch (IOException e) {
-                e.printStackTrace();
             }
+            else if (object instanceof OWLAxiom) {
+                OWLAxiom ax = (OWLAxiom) object;
+                OutputStreamWriter osw = new OutputStreamWriter(bos);
+                PrintWriter printWriter = new PrintWriter(osw);
+                OWLXMLWriter writer = new OWLXMLWriter(printWriter, null);
+                OWLXMLObjectRenderer renderer = new OWLXMLObjectRenderer(writer);
+                ax.accept(renderer);
+                osw.flush();
+                wrapInCDataSection = false;
+                writeAsXML = true;
+
+            }
+            else {
+                OutputStreamWriter writer = new OutputStreamWriter(bos);
+                String string = object.toString();
+                writer.write(string);
+                writer.flush();
+            }
+            if (wrapInCDataSection) {
+                xmlWriter.writeCData(bos.toString());
+            }
+            else if (writeAsXML) {
+                xmlWriter.writeXMLContent(bos.toString());
+            }
+            else {
+                xmlWriter.writeTextContent(bos.toString());
+            }
+            xmlWriter.writeEndElement();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
 
     @Override
     public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
-        if (!isIgnoredTransmission()) {
-            recordMeasurement(info, name, Long.toString(telemetryTimer.getEllapsedTime()));
+        if (!transmissionState.get().isIgnoredTransmission()) {
+            TelemetryReceiver.super.recordTiming(info, name, telemetryTimer);
         }
     }
 
     @Override
     public void endTransmission(TelemetryInfo info) {
-        List<TelemetryTimer> timers = pauseRunningTimers();
+        TransmissionState state = transmissionState.get();
+        if (state.telemetryNodeStack.isEmpty()) {
+            // Unbalanced end at the top level - by convention this ends the document
+            endDocument();
+            return;
+        }
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
         try {
-            if (!isIgnoredTransmission()) {
-                xmlWriter.writeEndElement();
+            if (!state.isIgnoredTransmission()) {
+                state.writer.writeEndElement();
             }
-            if (!telemetryNodeStack.isEmpty()) {
-                telemetryNodeStack.pop();
+            state.telemetryNodeStack.pop();
+            state.ignoreNodeStack.pop();
+            if (info.isAutoFlush()) {
+                state.commitRequested = true;
             }
-            if (!ignoreNodeStack.isEmpty()) {
-                ignoreNodeStack.pop();
+            if (state.telemetryNodeStack.isEmpty()) {
+                endRootOutput(state);
             }
-            depth--;
-            if (depth == 0) {
-                xmlWriter.endDocument();
+            else {
+                state.spillIfFull();
             }
         } finally {
-            unpauseTimers(timers);
+            overhead.exit();
         }
     }
 
-    private void unpauseTimers(List<TelemetryTimer> paused) {
-        for (TelemetryTimer timer : paused) {
-            timer.start();
-        }
+    /**
+     * Points the current thread at its buffer for the top level subtree that it is about to start.
+     */
+    private void beginRootOutput(TransmissionState state) {
+        state.writer = state.getBufferWriter();
     }
 
-    private List<TelemetryTimer> pauseRunningTimers() {
-        List<TelemetryTimer> paused = new ArrayList<TelemetryTimer>();
-        for (TelemetryInfo i : telemetryNodeStack) {
-            for (TelemetryTimer timer : i.getTimers()) {
-                if (timer != null) {
-                    if (timer.isRunning()) {
-                        timer.stop();
-                        paused.add(timer);
+    /**
+     * Called when the current thread has completed a top level subtree.  Appends the subtree to the document and
+     * empties the thread's buffer for its next subtree.
+     */
+    private void endRootOutput(TransmissionState state) {
+        boolean commit = false;
+        try {
+            synchronized (documentLock) {
+                if (!documentEnded) {
+                    state.appendTo(xmlWriter);
+                    if (state.commitRequested) {
+                        commit = flushDocument();
                     }
                 }
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            state.clear();
+            state.commitRequested = false;
+            state.writer = null;
+        }
+        if (commit) {
+            commitDocument();
+        }
+    }
+
+    /**
+     * Flushes the document to the underlying writer.  Must be called whilst holding documentLock.
+     * @return true if the document has been flushed and should be committed.
+     */
+    private boolean flushDocument() {
+        try {
+            baseWriter.flush();
+            return groupCommit != null && durableCommit;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void commitDocument() {
+        try {
+            groupCommit.commit();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        return paused;
     }
 
+    /**
+     * A buffer whose contents can be read back without copying them.
+     */
+    private static class SubtreeBuffer extends CharArrayWriter {
 
+        private Reader getReader() {
+            return new CharArrayReader(buf, 0, count);
+        }
+    }
+
+
+    /**
+     * The transmissions that a single thread has open.
+     */
+    private class TransmissionState {
+
+        private Stack<TelemetryInfo> telemetryNodeStack = new Stack<TelemetryInfo>();
+
+        private Stack<Boolean> ignoreNodeStack = new Stack<Boolean>();
+
+        /**
+         * The buffer writer whilst the thread is writing a top level subtree, and otherwise null.
+         */
+        private TelemetryXMLWriter writer;
+
+        /**
+         * Whether an auto flushed transmission has ended in the current top level subtree.
+         */
+        private boolean commitRequested;
+
+        private SubtreeBuffer buffer;
+
+        private TelemetryXMLWriter bufferWriter;
+
+        /**
+         * The file that the start of the current subtree has been spilled to, or null if it has not been spilled.
+         */
+        private File spillFile;
+
+        private Writer spillWriter;
+
+        private boolean isIgnoredTransmission() {
+            return !ignoreNodeStack.isEmpty() && ignoreNodeStack.peek();
+        }
+
+        private TelemetryXMLWriter getBufferWriter() {
+            if (bufferWriter == null) {
+                buffer = new SubtreeBuffer();
+                bufferWriter = new TelemetryXMLWriter(buffer, nsm, "");
+                // Subtrees are children of the document element
+                bufferWriter.setBaseIndentation(1);
+            }
+            return bufferWriter;
+        }
+
+        /**
+         * Moves what has been written to the buffer so far to the spill file, if the buffer has grown too large.
+         */
+        private void spillIfFull() {
+            if (buffer == null || buffer.size() <= maxBufferedSubtreeChars) {
+                return;
+            }
+            try {
+                if (spillFile == null) {
+                    spillFile = File.createTempFile("telemetry-subtree-", ".xml");
+                    spillFile.deleteOnExit();
+                    spillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), StandardCharsets.UTF_8));
+                }
+                buffer.writeTo(spillWriter);
+                buffer.reset();
+            } catch (IOException e) {
+                // Keep the subtree in memory rather than lose it
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Appends the completed subtree, from the spill file and then the buffer, to a writer.
+         */
+        private void appendTo(TelemetryXMLWriter writer) throws IOException {
+            if (spillFile != null) {
+                spillWriter.close();
+                spillWriter = null;
+                Reader reader = new InputStreamReader(new FileInputStream(spillFile), StandardCharsets.UTF_8);
+                try {
+                    writer.writeFragment(reader);
+                } finally {
+                    reader.close();
+                }
+            }
+            writer.writeFragment(buffer.getReader());
+        }
+
+        /**
+         * Empties the buffer and deletes the spill file, keeping the buffer for the next subtree.
+         */
+        private void clear() {
+            if (buffer != null) {
+                buffer.reset();
+            }
+            if (spillFile != null) {
+                if (spillWriter != null) {
+                    try {
+                        spillWriter.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    spillWriter = null;
+                }
+                if (!spillFile.delete()) {
+                    spillFile.deleteOnExit();
+                }
+                spillFile = null;
+            }
+        }
+    }
 }
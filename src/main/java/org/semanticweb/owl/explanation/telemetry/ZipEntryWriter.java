@@ -0,0 +1,406 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a standard zip file from entries whose data has already been compressed, which
+ * {@link java.util.zip.ZipOutputStream} cannot do.  Entries are either {@link ZipEntry#STORED} or raw
+ * {@link ZipEntry#DEFLATED} data produced by a {@link java.util.zip.Deflater} with <code>nowrap</code> set, and the
+ * size and CRC of each entry are known before it is written, so no data descriptors are needed.  Deflated entries
+ * can also be streamed with {@link #openEntry(String, Deflater)}, in which case their sizes and CRC follow their
+ * data in a data descriptor; streamed entries must be smaller than 4GB.  Names are encoded as UTF-8.  The ZIP64 end records are written when there are too many entries, or the file is too large, for the
+ * original format, and the offsets of entries beyond 4GB are given in ZIP64 extra fields.
+ * <p>
+ * A writer is not thread safe.
+ */
+class ZipEntryWriter implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+    private static final int VERSION = 20;
+
+    private static final int ZIP64_VERSION = 45;
+
+    private static final int UTF8_FLAG = 0x0800;
+
+    private static final int DATA_DESCRIPTOR_FLAG = 0x0008;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_COUNT_MAGIC = 0xFFFF;
+
+    private final OutputStream outputStream;
+
+    private final List<CentralEntry> entries = new ArrayList<CentralEntry>();
+
+    private final byte[] header = new byte[64];
+
+    private long written = 0;
+
+    private long dosTimeMillis = -1;
+
+    private int dosTime;
+
+    private boolean closed = false;
+
+    private EntryOutputStream openEntry;
+
+    ZipEntryWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * Writes an empty directory entry.
+     * @param name The name of the directory, ending with a slash.
+     */
+    void writeDirectory(String name) throws IOException {
+        writeEntry(name, ZipEntry.STORED, new byte[0], 0, 0, 0);
+    }
+
+    /**
+     * Writes an entry.
+     * @param name The name of the entry.
+     * @param method {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+     * @param data A buffer holding the data of the entry, compressed with the specified method.
+     * @param length The length of the data in the buffer.
+     * @param size The size of the uncompressed data.
+     * @param crc The CRC-32 of the uncompressed data.
+     */
+    void writeEntry(String name, int method, byte[] data, int length, long size, long crc) throws IOException {
+        checkWritable();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        CentralEntry entry = new CentralEntry(nameBytes, method, UTF8_FLAG, getDosTime(), crc, length, size, written);
+        int pos = 0;
+        pos = putInt(header, pos, LOCAL_HEADER_SIGNATURE);
+        pos = putShort(header, pos, VERSION);
+        pos = putShort(header, pos, entry.flags);
+        pos = putShort(header, pos, method);
+        pos = putInt(header, pos, entry.dosTime);
+        pos = putInt(header, pos, (int) crc);
+        pos = putInt(header, pos, length);
+        pos = putInt(header, pos, (int) size);
+        pos = putShort(header, pos, nameBytes.length);
+        pos = putShort(header, pos, 0);
+        write(header, pos);
+        write(nameBytes, nameBytes.length);
+        write(data, length);
+        entries.add(entry);
+    }
+
+    /**
+     * Starts a deflated entry whose data is written to the returned stream.  The entry is finished by closing the
+     * stream, which does not close this writer, and no other entry can be written until then.
+     * @param name The name of the entry.
+     * @param deflater The deflater that compresses the data.  It must have <code>nowrap</code> set, and it is reset
+     * when the entry is finished so that it can be used for the next one.
+     */
+    OutputStream openEntry(String name, Deflater deflater) throws IOException {
+        checkWritable();
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long offset = written;
+        int dosTime = getDosTime();
+        int pos = 0;
+        pos = putInt(header, pos, LOCAL_HEADER_SIGNATURE);
+        pos = putShort(header, pos, VERSION);
+        pos = putShort(header, pos, UTF8_FLAG | DATA_DESCRIPTOR_FLAG);
+        pos = putShort(header, pos, ZipEntry.DEFLATED);
+        pos = putInt(header, pos, dosTime);
+        // The CRC and sizes are given in the data descriptor
+        pos = putInt(header, pos, 0);
+        pos = putInt(header, pos, 0);
+        pos = putInt(header, pos, 0);
+        pos = putShort(header, pos, nameBytes.length);
+        pos = putShort(header, pos, 0);
+        write(header, pos);
+        write(nameBytes, nameBytes.length);
+        openEntry = new EntryOutputStream(nameBytes, dosTime, offset, deflater);
+        return openEntry;
+    }
+
+    private void checkWritable() throws IOException {
+        if (closed) {
+            throw new IOException("Zip file has been closed");
+        }
+        if (openEntry != null) {
+            throw new IOException("An entry is still being written");
+        }
+    }
+
+    void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.  Does nothing if the writer has already
+     * been closed.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long centralDirectoryOffset = written;
+            for (CentralEntry entry : entries) {
+                writeCentralEntry(entry);
+            }
+            long centralDirectorySize = written - centralDirectoryOffset;
+            writeEnd(centralDirectoryOffset, centralDirectorySize);
+            outputStream.flush();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private void writeCentralEntry(CentralEntry entry) throws IOException {
+        boolean zip64 = entry.offset >= ZIP64_MAGIC;
+        int version = zip64 ? ZIP64_VERSION : VERSION;
+        int pos = 0;
+        pos = putInt(header, pos, CENTRAL_HEADER_SIGNATURE);
+        pos = putShort(header, pos, version);
+        pos = putShort(header, pos, version);
+        pos = putShort(header, pos, entry.flags);
+        pos = putShort(header, pos, entry.method);
+        pos = putInt(header, pos, entry.dosTime);
+        pos = putInt(header, pos, (int) entry.crc);
+        pos = putInt(header, pos, (int) entry.compressedSize);
+        pos = putInt(header, pos, (int) entry.size);
+        pos = putShort(header, pos, entry.name.length);
+        pos = putShort(header, pos, zip64 ? 12 : 0);
+        // Comment length, disk number and internal attributes
+        pos = putShort(header, pos, 0);
+        pos = putShort(header, pos, 0);
+        pos = putShort(header, pos, 0);
+        // External attributes
+        pos = putInt(header, pos, 0);
+        pos = putInt(header, pos, zip64 ? (int) ZIP64_MAGIC : (int) entry.offset);
+        write(header, pos);
+        write(entry.name, entry.name.length);
+        if (zip64) {
+            pos = 0;
+            pos = putShort(header, pos, 0x0001);
+            pos = putShort(header, pos, 8);
+            pos = putLong(header, pos, entry.offset);
+            write(header, pos);
+        }
+    }
+
+    private void writeEnd(long centralDirectoryOffset, long centralDirectorySize) throws IOException {
+        int count = entries.size();
+        boolean zip64 = count >= ZIP64_COUNT_MAGIC || centralDirectoryOffset >= ZIP64_MAGIC
+                || centralDirectorySize >= ZIP64_MAGIC;
+        int pos;
+        if (zip64) {
+            long zip64EndOffset = written;
+            pos = 0;
+            pos = putInt(header, pos, ZIP64_END_SIGNATURE);
+            // The size of the rest of the record
+            pos = putLong(header, pos, 44);
+            pos = putShort(header, pos, ZIP64_VERSION);
+            pos = putShort(header, pos, ZIP64_VERSION);
+            pos = putInt(header, pos, 0);
+            pos = putInt(header, pos, 0);
+            pos = putLong(header, pos, count);
+            pos = putLong(header, pos, count);
+            pos = putLong(header, pos, centralDirectorySize);
+            pos = putLong(header, pos, centralDirectoryOffset);
+            write(header, pos);
+            pos = 0;
+            pos = putInt(header, pos, ZIP64_LOCATOR_SIGNATURE);
+            pos = putInt(header, pos, 0);
+            pos = putLong(header, pos, zip64EndOffset);
+            pos = putInt(header, pos, 1);
+            write(header, pos);
+        }
+        pos = 0;
+        pos = putInt(header, pos, END_SIGNATURE);
+        pos = putShort(header, pos, 0);
+        pos = putShort(header, pos, 0);
+        pos = putShort(header, pos, Math.min(count, ZIP64_COUNT_MAGIC));
+        pos = putShort(header, pos, Math.min(count, ZIP64_COUNT_MAGIC));
+        pos = putInt(header, pos, (int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+        pos = putInt(header, pos, (int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        pos = putShort(header, pos, 0);
+        write(header, pos);
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        outputStream.write(bytes, 0, length);
+        written += length;
+    }
+
+    /**
+     * Gets the current time in MS-DOS format.  The conversion is only redone when the time has moved on by the
+     * two second resolution of the format.
+     */
+    private int getDosTime() {
+        long now = System.currentTimeMillis();
+        if (now / 2000 != dosTimeMillis / 2000) {
+            dosTimeMillis = now;
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(now);
+            int year = Math.max(calendar.get(Calendar.YEAR), 1980);
+            dosTime = (year - 1980) << 25
+                    | (calendar.get(Calendar.MONTH) + 1) << 21
+                    | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                    | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                    | calendar.get(Calendar.MINUTE) << 5
+                    | calendar.get(Calendar.SECOND) >> 1;
+        }
+        return dosTime;
+    }
+
+    private static int putShort(byte[] bytes, int pos, int value) {
+        bytes[pos] = (byte) value;
+        bytes[pos + 1] = (byte) (value >>> 8);
+        return pos + 2;
+    }
+
+    private static int putInt(byte[] bytes, int pos, int value) {
+        pos = putShort(bytes, pos, value);
+        return putShort(bytes, pos, value >>> 16);
+    }
+
+    private static int putLong(byte[] bytes, int pos, long value) {
+        pos = putInt(bytes, pos, (int) value);
+        return putInt(bytes, pos, (int) (value >>> 32));
+    }
+
+    /**
+     * The stream that the data of a streamed entry is written to.
+     */
+    private class EntryOutputStream extends OutputStream {
+
+        private final byte[] name;
+
+        private final int dosTime;
+
+        private final long offset;
+
+        private final Deflater deflater;
+
+        private final CRC32 crc = new CRC32();
+
+        private final byte[] chunk = new byte[8192];
+
+        private final byte[] single = new byte[1];
+
+        private long size = 0;
+
+        private EntryOutputStream(byte[] name, int dosTime, long offset, Deflater deflater) {
+            this.name = name;
+            this.dosTime = dosTime;
+            this.offset = offset;
+            this.deflater = deflater;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+            if (openEntry != this) {
+                throw new IOException("Entry has been closed");
+            }
+            crc.update(bytes, off, len);
+            size += len;
+            deflater.setInput(bytes, off, len);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+
+        private void deflate() throws IOException {
+            int length = deflater.deflate(chunk);
+            if (length > 0) {
+                ZipEntryWriter.this.write(chunk, length);
+            }
+        }
+
+        /**
+         * Finishes the entry and writes its data descriptor.
+         */
+        @Override
+        public void close() throws IOException {
+            if (openEntry != this) {
+                return;
+            }
+            openEntry = null;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate();
+                }
+                long compressedSize = deflater.getBytesWritten();
+                if (size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC) {
+                    throw new IOException("Streamed entry is too large: " + new String(name, StandardCharsets.UTF_8));
+                }
+                int pos = 0;
+                pos = putInt(header, pos, DATA_DESCRIPTOR_SIGNATURE);
+                pos = putInt(header, pos, (int) crc.getValue());
+                pos = putInt(header, pos, (int) compressedSize);
+                pos = putInt(header, pos, (int) size);
+                ZipEntryWriter.this.write(header, pos);
+                entries.add(new CentralEntry(name, ZipEntry.DEFLATED, UTF8_FLAG | DATA_DESCRIPTOR_FLAG, dosTime,
+                        crc.getValue(), compressedSize, size, offset));
+            } finally {
+                deflater.reset();
+            }
+        }
+    }
+
+    /**
+     * What the central directory needs to know about an entry that has been written.
+     */
+    private static class CentralEntry {
+
+        private final byte[] name;
+
+        private final int method;
+
+        private final int flags;
+
+        private final int dosTime;
+
+        private final long crc;
+
+        private final long compressedSize;
+
+        private final long size;
+
+        private final long offset;
+
+        private CentralEntry(byte[] name, int method, int flags, int dosTime, long crc, long compressedSize, long size, long offset) {
+            this.name = name;
+            this.method = method;
+            this.flags = flags;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Opens an archive written by {@link ZipTelemetryReceiver} for random access.  The tree of transmissions is built
+ * from the entry names in the central directory alone, so opening an archive does not read or inflate any
+ * entries; properties and objects are only read when they are asked for (see {@link ZipTelemetryNode}).
+ * <p>
+ * Each transmission is a directory named <code>name.n/</code> inside the directory of its parent, and the top
+ * level transmissions are inside <code>telemetry/</code>.
+ */
+public class ZipTelemetryArchive implements Closeable {
+
+    private static final String ROOT_NAME = "telemetry/";
+
+    private static final String AGGREGATES_SUFFIX = ".aggregates";
+
+    private final File file;
+
+    private final ZipFile zipFile;
+
+    private final Map<String, ZipTelemetryNode> nodesByEntryName = new HashMap<String, ZipTelemetryNode>();
+
+    private final List<TelemetryNode> roots = new ArrayList<TelemetryNode>();
+
+    public ZipTelemetryArchive(File file) throws IOException {
+        this.file = file;
+        zipFile = new ZipFile(file);
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            String entryName = entries.nextElement().getName();
+            if (!entryName.startsWith(ROOT_NAME) || entryName.equals(ROOT_NAME)) {
+                continue;
+            }
+            if (entryName.endsWith("/")) {
+                getNode(entryName, true);
+            }
+            else {
+                int separatorIndex = entryName.lastIndexOf('/');
+                ZipTelemetryNode node = getNode(entryName.substring(0, separatorIndex + 1), true);
+                if (node != null) {
+                    node.addFile(entryName.substring(separatorIndex + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the node for a directory entry, creating it and its ancestors if necessary.
+     * @return The node, or null if the entry is the root directory.
+     */
+    private ZipTelemetryNode getNode(String entryName, boolean create) {
+        if (entryName.equals(ROOT_NAME)) {
+            return null;
+        }
+        ZipTelemetryNode node = nodesByEntryName.get(entryName);
+        if (node != null || !create) {
+            return node;
+        }
+        int separatorIndex = entryName.lastIndexOf('/', entryName.length() - 2);
+        String parentEntryName = entryName.substring(0, separatorIndex + 1);
+        ZipTelemetryNode parent = getNode(parentEntryName, true);
+        node = new ZipTelemetryNode(zipFile, entryName, getTransmissionName(entryName.substring(separatorIndex + 1, entryName.length() - 1)), parent);
+        if (parent != null) {
+            parent.addChild(node);
+        }
+        else {
+            roots.add(node);
+        }
+        nodesByEntryName.put(entryName, node);
+        return node;
+    }
+
+    /**
+     * Strips the number that {@link ZipTelemetryReceiver} appends to the name of a transmission directory.
+     */
+    private static String getTransmissionName(String directoryName) {
+        int dotIndex = directoryName.lastIndexOf('.');
+        return dotIndex == -1 ? directoryName : directoryName.substring(0, dotIndex);
+    }
+
+    /**
+     * Gets the top level transmissions in the order in which they were begun.
+     */
+    public List<TelemetryNode> getRoots() {
+        return Collections.unmodifiableList(roots);
+    }
+
+    /**
+     * Gets the transmission that is stored in a particular directory.
+     * @param entryName The name of the directory entry, for example <code>telemetry/experiment.0/</code>.
+     * @return The node, or null if the archive does not contain the directory.
+     */
+    public ZipTelemetryNode getNode(String entryName) {
+        return getNode(entryName.endsWith("/") ? entryName : entryName + "/", false);
+    }
+
+    /**
+     * Indexes the aggregates of the properties of every transmission in the archive (see
+     * {@link TelemetryAggregateIndex}).  The index is read from a sidecar file next to the archive, named after the
+     * archive with <code>.aggregates</code> appended, if one exists that is at least as new as the archive.
+     * Otherwise the index is built, which reads the properties of every transmission, and is saved to the sidecar
+     * file so that it can be loaded next time.
+     */
+    public void indexAggregates() throws IOException {
+        File aggregatesFile = new File(file.getPath() + AGGREGATES_SUFFIX);
+        if (aggregatesFile.exists() && aggregatesFile.lastModified() >= file.lastModified()) {
+            InputStream inputStream = new BufferedInputStream(new FileInputStream(aggregatesFile));
+            try {
+                TelemetryAggregateIndex.read(roots, inputStream);
+                return;
+            } catch (IOException e) {
+                // A stale or damaged sidecar file.  Build the index again.
+            } finally {
+                inputStream.close();
+            }
+        }
+        for (TelemetryNode root : roots) {
+            TelemetryAggregateIndex.build(root);
+        }
+        OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(aggregatesFile));
+        try {
+            TelemetryAggregateIndex.write(roots, outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    public void close() throws IOException {
+        zipFile.close();
+    }
+}
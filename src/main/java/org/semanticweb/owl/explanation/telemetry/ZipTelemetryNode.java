@@ -0,0 +1,116 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A {@link TelemetryNode} for a transmission directory in an archive written by {@link ZipTelemetryReceiver}.  The
+ * node knows the names of its entries, which come from the central directory of the archive, but does not read
+ * any of them until asked: the <code>.properties</code> entry is loaded on the first access to the properties and
+ * objects are streamed from the archive by {@link #getInputStream(String)}.
+ */
+public class ZipTelemetryNode extends AbstractTelemetryNode {
+
+    private final ZipFile zipFile;
+
+    private final String entryName;
+
+    private final String name;
+
+    private final ZipTelemetryNode parent;
+
+    private final List<TelemetryNode> children = new ArrayList<TelemetryNode>();
+
+    private final List<String> objectNames = new ArrayList<String>();
+
+    private String propertiesEntryName;
+
+    private Properties properties;
+
+    ZipTelemetryNode(ZipFile zipFile, String entryName, String name, ZipTelemetryNode parent) {
+        this.zipFile = zipFile;
+        this.entryName = entryName;
+        this.name = name;
+        this.parent = parent;
+    }
+
+    /**
+     * Gets the name of the directory entry for this node, for example <code>telemetry/experiment.0/</code>.
+     */
+    public String getEntryName() {
+        return entryName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TelemetryNode getParent() {
+        return parent;
+    }
+
+    public List<TelemetryNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    public List<String> getObjectNames() {
+        return new ArrayList<String>(objectNames);
+    }
+
+    public synchronized Properties getProperties() {
+        if (properties == null) {
+            properties = loadProperties();
+        }
+        return properties;
+    }
+
+    private Properties loadProperties() {
+        Properties result = new Properties();
+        if (propertiesEntryName == null) {
+            return result;
+        }
+        try {
+            InputStream inputStream = zipFile.getInputStream(zipFile.getEntry(propertiesEntryName));
+            try {
+                result.load(inputStream);
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    public InputStream getInputStream(String objectName) throws IOException {
+        ZipEntry entry = objectNames.contains(objectName) ? zipFile.getEntry(entryName + objectName) : null;
+        if (entry == null) {
+            throw new FileNotFoundException("No object named " + objectName + " in " + entryName);
+        }
+        return zipFile.getInputStream(entry);
+    }
+
+    void addChild(ZipTelemetryNode child) {
+        children.add(child);
+    }
+
+    /**
+     * Adds a file entry that is directly inside the directory of this node.
+     * @param fileName The name of the entry relative to the directory of this node.
+     */
+    void addFile(String fileName) {
+        if (fileName.equals(name + ".properties")) {
+            propertiesEntryName = entryName + fileName;
+        }
+        else {
+            objectNames.add(fileName);
+        }
+    }
+}
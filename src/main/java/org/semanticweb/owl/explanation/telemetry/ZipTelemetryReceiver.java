@@ -2,64 +2,247 @@ package org.semanticweb.owl.explanation.telemetry;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 /**
  * Author: Matthew Horridge<br>
  * The University of Manchester<br>
  * Bio-Health Informatics Group<br>
  * Date: 07/01/2011
+ * <p>
+ * Objects and the properties of transmissions are written as separate entries.  Each entry is serialised into a
+ * buffer on the calling thread, without holding the lock on the archive.  By default it is then compressed on the
+ * calling thread too, and only the compressed bytes are appended to the archive under the lock, so threads that
+ * record objects concurrently also serialise and compress them concurrently.  With compression threads, entries are
+ * compressed on a pool of worker threads instead, and the compressed entries are written to the archive in the
+ * order in which they were recorded.  Each thread that compresses entries reuses its own {@link Deflater}, and
+ * these are ended when the archive is closed.  {@link ZipType#UNZIPPED} archives store their entries without
+ * compressing them.
+ * <p>
+ * Each transmission is written to a directory named after it and numbered, for example
+ * <code>telemetry/experiment.0/justification.3/</code>.  Top level transmissions are numbered in the order in which
+ * they were begun, across all names, and nested transmissions in the order in which they were begun amongst the
+ * siblings with the same name.
+ * <p>
+ * Entries are buffered until a top level transmission ends in which the transmission itself, or one of the
+ * transmissions nested in it, is {@link TelemetryInfo#isAutoFlush() auto flushed}.  The entries of the subtree are
+ * then written, waiting for any that are still being compressed, and flushed to the archive file.  With
+ * {@link #setDurableCommit(boolean) durable commits} the archive is also forced to the storage device; commits that
+ * are requested by several threads at about the same time are made together, with a single force of the archive.
  */
-public class ZipTelemetryReceiver implements TelemetryReceiver {
+public class ZipTelemetryReceiver implements TelemetryReceiver, Closeable, Flushable {
 
     private static final String ROOT_NAME = "telemetry/";
 
-    private Map<TelemetryInfo, Properties> info2PropertiesMap = new WeakHashMap<TelemetryInfo, Properties>();
+    /**
+     * The number of entries, per compression thread, that may be waiting to be written before recording blocks.
+     */
+    private static final int PENDING_ENTRIES_PER_THREAD = 16;
+
+    /**
+     * The transmissions that each thread has open.  Each thread keeps its own stack so that transmissions that
+     * are begun concurrently on different threads nest correctly.
+     */
+    private ThreadLocal<Stack<OpenTransmission>> telemetryInfoStack = new ThreadLocal<Stack<OpenTransmission>>() {
+        @Override
+        protected Stack<OpenTransmission> initialValue() {
+            return new Stack<OpenTransmission>();
+        }
+    };
+
+    /**
+     * Guards zipWriter, pendingEntries and rootCount.  Entries are only written when a transmission begins or
+     * ends, or when an object is recorded; measurements are stored in the per-thread stack without taking this
+     * lock.
+     */
+    private final Object zipLock = new Object();
+
+    /**
+     * The number of top level transmissions that have been begun, whatever their names.  Counting them by name
+     * would keep an entry for every name that has ever been used, which grows without limit when root names are
+     * generated.  The children of other transmissions are counted by name by their open parents, which drop their
+     * counts when they end.
+     */
+    private int rootCount = 0;
 
-    private Map<TelemetryInfo, String> info2EntryMap = new WeakHashMap<TelemetryInfo, String>();
+    private File zip;
 
-    private Stack<TelemetryInfo> telemetryInfoStack = new Stack<TelemetryInfo>();
+    private ZipEntryWriter zipWriter;
 
-    private Set<String> zipEntryNames = new HashSet<String>();
+    private GroupCommit groupCommit;
 
-    private File zip;
+    private volatile boolean durableCommit = false;
+
+    private final int compressionMethod;
+
+    private final int compressionLevel;
+
+    /**
+     * Compresses entries, or null if entries are compressed on the calling thread.
+     */
+    private final ExecutorService compressionPool;
+
+    /**
+     * The entries that have been handed to the compression pool but not yet written, in the order in which they
+     * must be written.
+     */
+    private final ArrayDeque<Future<CompressedEntry>> pendingEntries = new ArrayDeque<Future<CompressedEntry>>();
+
+    private final int maxPendingEntries;
+
+    /**
+     * The deflater of each thread that compresses entries.
+     */
+    private final ThreadLocal<Compressor> compressors = new ThreadLocal<Compressor>() {
+        @Override
+        protected Compressor initialValue() {
+            Compressor compressor = new Compressor(compressionLevel);
+            allCompressors.add(compressor);
+            return compressor;
+        }
+    };
+
+    /**
+     * Every compressor that has been created, so that their deflaters, which hold native memory, can be ended
+     * when the archive is closed.
+     */
+    private final List<Compressor> allCompressors = Collections.synchronizedList(new ArrayList<Compressor>());
 
-    private ZipOutputStream zipOutputStream;
+    private final Thread shutdownHook;
 
     public ZipTelemetryReceiver(File zipFile) {
+        this(zipFile, ZipType.ZIPPED);
+    }
+
+    public ZipTelemetryReceiver(File zipFile, ZipType zipType) {
+        this(zipFile, zipType, Deflater.BEST_COMPRESSION, 0);
+    }
+
+    /**
+     * @param zipFile The archive to write.
+     * @param zipType Whether entries are compressed ({@link ZipType#ZIPPED}) or stored
+     * ({@link ZipType#UNZIPPED}).
+     * @param compressionLevel The {@link Deflater} level, from 0 to 9, that entries are compressed at.
+     * @param compressionThreads The number of threads that compress entries, or 0 to compress entries on the
+     * threads that record them.
+     */
+    public ZipTelemetryReceiver(File zipFile, ZipType zipType, int compressionLevel, int compressionThreads) {
+        if (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9: " + compressionLevel);
+        }
+        if (compressionThreads < 0) {
+            throw new IllegalArgumentException("Compression threads must not be negative: " + compressionThreads);
+        }
+        this.compressionMethod = zipType == ZipType.UNZIPPED ? ZipEntry.STORED : ZipEntry.DEFLATED;
+        this.compressionLevel = compressionLevel;
+        if (compressionThreads > 0 && compressionMethod == ZipEntry.DEFLATED) {
+            compressionPool = Executors.newFixedThreadPool(compressionThreads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "zip-telemetry-compressor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            maxPendingEntries = compressionThreads * PENDING_ENTRIES_PER_THREAD;
+        }
+        else {
+            compressionPool = null;
+            maxPendingEntries = 0;
+        }
         try {
             this.zip = zipFile;
-            this.zipOutputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)));
-            zipOutputStream.putNextEntry(new ZipEntry(ROOT_NAME));
-            zipOutputStream.closeEntry();
-            zipOutputStream.setLevel(9);
+            FileOutputStream outputStream = new FileOutputStream(zipFile);
+            this.groupCommit = new GroupCommit(outputStream.getChannel());
+            this.zipWriter = new ZipEntryWriter(new BufferedOutputStream(outputStream));
+            zipWriter.writeDirectory(ROOT_NAME);
         }
         catch (IOException e) {
             throw new RuntimeException(e);
         }
-        Runtime.getRuntime().addShutdownHook(new Thread() {
+        shutdownHook = new Thread() {
             @Override
             public void run() {
-                try {
-                    zipOutputStream.close();
-                }
-                catch (IOException e) {
-                    e.printStackTrace();
-                }
+                closeArchive();
             }
-        });
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Sets whether the archive is forced to the storage device, rather than just flushed, when an auto flushed
+     * subtree has been written.  Defaults to false, since forcing the archive for every top level transmission is
+     * costly when there are many short ones.
+     */
+    public void setDurableCommit(boolean durableCommit) {
+        this.durableCommit = durableCommit;
     }
 
+    /**
+     * Sets how long a durable commit waits for commits on other threads to join it.  Defaults to zero, in which case
+     * commits are only grouped when they are requested whilst another commit is in progress.
+     */
+    public void setGroupCommitWindow(long window, TimeUnit unit) {
+        groupCommit.setWindow(window, unit);
+    }
+
+    /**
+     * Writes the entries that have been compressed to the archive file, without committing them.
+     */
+    public void flush() throws IOException {
+        synchronized (zipLock) {
+            writePendingEntries(false);
+            zipWriter.flush();
+        }
+    }
+
+    /**
+     * Writes the entries that are still being compressed and closes the archive.
+     */
     public void close() {
         try {
-            zipOutputStream.flush();
-            zipOutputStream.close();
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+        catch (IllegalStateException e) {
+            // Already shutting down, in which case the hook closes the archive
+        }
+        closeArchive();
+    }
+
+    private void closeArchive() {
+        try {
+            synchronized (zipLock) {
+                writePendingEntries(true);
+                zipWriter.close();
+            }
         }
         catch (IOException e) {
             e.printStackTrace();
         }
+        finally {
+            if (compressionPool != null) {
+                compressionPool.shutdown();
+            }
+            endCompressors();
+        }
+    }
+
+    private void endCompressors() {
+        synchronized (allCompressors) {
+            for (Compressor compressor : allCompressors) {
+                compressor.end();
+            }
+            allCompressors.clear();
+        }
     }
 
 
@@ -71,7 +254,19 @@ public class ZipTelemetryReceiver implements TelemetryReceiver {
     }
 
     public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
-        writeProperty(info, propertyName, value);
+        writeProperty(info, propertyName, PropertyTable.STRING, value, 0);
+    }
+
+    public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        writeProperty(info, propertyName, PropertyTable.LONG, null, value);
+    }
+
+    public void recordDouble(TelemetryInfo info, String propertyName, double value) {
+        writeProperty(info, propertyName, PropertyTable.DOUBLE, null, Double.doubleToRawLongBits(value));
+    }
+
+    public void recordBoolean(TelemetryInfo info, String propertyName, boolean value) {
+        writeProperty(info, propertyName, PropertyTable.STRING, Boolean.toString(value), 0);
     }
 
     public void recordException(TelemetryInfo info, Throwable exception) {
@@ -81,22 +276,39 @@ public class ZipTelemetryReceiver implements TelemetryReceiver {
         writeObject(info, namePrefix + nameSuffix, object);
     }
 
-    public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
-        long ellapsedTime = telemetryTimer.getEllapsedTime();
-        recordMeasurement(info, name, Long.toString(ellapsedTime));
-    }
-
     public void endTransmission(TelemetryInfo info) {
-        TelemetryInfo popped = telemetryInfoStack.pop();
-        writeTelemetryInfoProperties(info);
+        Stack<OpenTransmission> stack = telemetryInfoStack.get();
+        if(stack.isEmpty()) {
+            System.err.println("ERROR: TelemetryInfo mismatch: " + info + " ended but no transmission is open");
+            return;
+        }
+        OpenTransmission popped = stack.pop();
+        writeTelemetryInfoProperties(popped);
+        OpenTransmission root = stack.isEmpty() ? popped : stack.get(0);
+        if (info.isAutoFlush()) {
+            root.commitRequested = true;
+        }
         try {
-            zipOutputStream.flush();
+            if (popped == root && root.commitRequested) {
+                synchronized (zipLock) {
+                    writePendingEntries(true);
+                    zipWriter.flush();
+                }
+                if (durableCommit) {
+                    groupCommit.commit();
+                }
+            }
+            else {
+                synchronized (zipLock) {
+                    writePendingEntries(false);
+                }
+            }
         }
         catch (IOException e) {
             e.printStackTrace();
         }
-        if(!popped.equals(info)) {
-            System.err.println("ERROR: TelemetryInfo mismatch: " + info + " " + popped);
+        if(!popped.info.equals(info)) {
+            System.err.println("ERROR: TelemetryInfo mismatch: " + info + " " + popped.info);
         }
 
     }
@@ -105,49 +317,67 @@ public class ZipTelemetryReceiver implements TelemetryReceiver {
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     private void createTelemetryInfoEntry(TelemetryInfo info) {
-        String infoEntry = createNumberedZipEntry(info);
-        ZipEntry ze = new ZipEntry(infoEntry);
-        try {
-            zipOutputStream.putNextEntry(ze);
-            zipOutputStream.closeEntry();
+        Stack<OpenTransmission> stack = telemetryInfoStack.get();
+        OpenTransmission parent = !stack.isEmpty() ? stack.peek() : null;
+        String infoEntry;
+        if (parent != null) {
+            infoEntry = createNumberedZipEntry(parent.entryName, parent.childCounts, info);
         }
-        catch (IOException e) {
-            e.printStackTrace();
+        else {
+            synchronized (zipLock) {
+                infoEntry = ROOT_NAME + info.getName() + "." + rootCount++ + "/";
+            }
+        }
+        synchronized (zipLock) {
+            try {
+                addEntry(new EntryCompression(infoEntry, ZipEntry.STORED, new EntryBuffer(0)));
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
         }
-        telemetryInfoStack.push(info);
-        info2EntryMap.put(info, infoEntry);
-        info2PropertiesMap.put(info, new Properties());
+        stack.push(new OpenTransmission(info, infoEntry));
     }
 
 
-    private String createNumberedZipEntry(TelemetryInfo info) {
-        String parentEntry;
-        if (!telemetryInfoStack.isEmpty()) {
-            TelemetryInfo parentInfo = telemetryInfoStack.peek();
-            parentEntry = getTelemetryInfoZipEntryName(parentInfo);
-        }
-        else {
-            parentEntry = ROOT_NAME;
+    /**
+     * Names the directory of a new transmission after the number of siblings with the same name that were begun
+     * before it.
+     * @param childCounts The number of children of the parent that have been begun with each name.
+     */
+    private static String createNumberedZipEntry(String parentEntry, Map<String, int[]> childCounts, TelemetryInfo info) {
+        int[] count = childCounts.get(info.getName());
+        if (count == null) {
+            count = new int[1];
+            childCounts.put(info.getName(), count);
         }
-        int count = 0;
-        while(true) {
-            StringBuilder sb = new StringBuilder();
-            sb.append(parentEntry);
-            sb.append(info.getName());
-            sb.append(".");
-            sb.append(count);
-            sb.append("/");
-            String candidate = sb.toString();
-            if(!zipEntryNames.contains(candidate)) {
-                zipEntryNames.add(candidate);
-                return candidate;
+        StringBuilder sb = new StringBuilder();
+        sb.append(parentEntry);
+        sb.append(info.getName());
+        sb.append(".");
+        sb.append(count[0]++);
+        sb.append("/");
+        return sb.toString();
+    }
+
+    /**
+     * Finds the transmission described by info amongst those that the current thread has open.
+     * @return The open transmission, or null if the current thread does not have the transmission open.
+     */
+    private OpenTransmission getOpenTransmission(TelemetryInfo info) {
+        Stack<OpenTransmission> stack = telemetryInfoStack.get();
+        for(int i = stack.size() - 1; i > -1; i--) {
+            OpenTransmission openTransmission = stack.get(i);
+            if(openTransmission.info.equals(info)) {
+                return openTransmission;
             }
-            count++;
         }
+        return null;
     }
 
     private String getTelemetryInfoZipEntryName(TelemetryInfo info) {
-        return info2EntryMap.get(info);
+        OpenTransmission openTransmission = getOpenTransmission(info);
+        return openTransmission != null ? openTransmission.entryName : null;
     }
 
     private String getTelemetryInfoArtefactZipEntryName(TelemetryInfo info, String artefactName) {
@@ -163,87 +393,355 @@ public class ZipTelemetryReceiver implements TelemetryReceiver {
     }
 
 
-    private void writeProperty(TelemetryInfo info, String propertyName, String value) {
-        List<TelemetryTimer> paused = pauseRunningTimers();
-        Properties properties = info2PropertiesMap.get(info);
-        if(properties != null) {
-            properties.setProperty(propertyName, value);
+    /**
+     * Stores a property of an open transmission until the transmission ends.  Primitive values are stored as
+     * their bits and only formatted when the properties entry is written.
+     */
+    private void writeProperty(TelemetryInfo info, String propertyName, byte kind, String value, long bits) {
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        try {
+            OpenTransmission openTransmission = getOpenTransmission(info);
+            if(openTransmission != null) {
+                openTransmission.properties.set(propertyName, kind, value, bits);
+            }
+        }
+        finally {
+            overhead.exit();
         }
-        unpauseTimers(paused);
     }
 
-    private void writeTelemetryInfoProperties(TelemetryInfo info) {
-        Properties properties = info2PropertiesMap.get(info);
+    private void writeTelemetryInfoProperties(final OpenTransmission openTransmission) {
         try {
-            ZipEntry propertiesZipEntry = getPropertiesZipEntryName(info);
-            zipOutputStream.putNextEntry(propertiesZipEntry);
-            BufferedOutputStream bos = new BufferedOutputStream(zipOutputStream);
-            properties.store(bos, null);
-            bos.flush();
-            zipOutputStream.closeEntry();
-            zipOutputStream.flush();
+            String propertiesZipEntryName = openTransmission.entryName + openTransmission.info.getName() + ".properties";
+            writeContentEntry(propertiesZipEntryName, new EntryContent() {
+                public void write(OutputStream outputStream) throws IOException {
+                    openTransmission.properties.toProperties().store(outputStream, null);
+                }
+            });
         }
         catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private void unpauseTimers(List<TelemetryTimer> paused) {
-        for(TelemetryTimer timer : paused) {
-            timer.start();
-        }
-    }
 
-    private List<TelemetryTimer> pauseRunningTimers() {
-        List<TelemetryTimer> paused = new ArrayList<TelemetryTimer>();
-        for(TelemetryInfo i : telemetryInfoStack) {
-            for (TelemetryTimer timer : i.getTimers()) {
-                if(timer != null) {
-                    if(timer.isRunning()) {
-                       timer.stop();
-                        paused.add(timer);
+    private void writeObject(TelemetryInfo info, String name, final Object object) {
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        try {
+            String zipEntryName = getTelemetryInfoArtefactZipEntryName(info, name);
+            writeContentEntry(zipEntryName, new EntryContent() {
+                public void write(OutputStream outputStream) throws IOException {
+                    if(object instanceof TelemetryObject) {
+                        TelemetryObject telemetryObject = (TelemetryObject) object;
+                        telemetryObject.serialise(outputStream);
+                    }
+                    else {
+                        PrintWriter pw = new PrintWriter(outputStream);
+                        pw.print(object);
+                        pw.flush();
                     }
                 }
+            });
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        finally {
+            overhead.exit();
+        }
+    }
+
+    /**
+     * Writes an entry whose content is serialised by the calling thread.  The content is serialised, and without
+     * compression threads also compressed, before taking zipLock, which is only held to append the entry.
+     */
+    private void writeContentEntry(String name, EntryContent content) throws IOException {
+        EntryBuffer buffer = new EntryBuffer();
+        content.write(buffer);
+        EntryCompression compression = new EntryCompression(name, compressionMethod, buffer);
+        if (compressionPool == null) {
+            CompressedEntry entry = compression.call();
+            synchronized (zipLock) {
+                // Without compression threads nothing is ever pending, so the entry can be written straight away
+                writeEntry(entry);
             }
+            return;
+        }
+        synchronized (zipLock) {
+            addEntry(compression);
+        }
+    }
+
+    /**
+     * Compresses and writes an entry, or hands it to the compression pool to be written once it and the entries
+     * before it have been compressed.  Must be called whilst holding zipLock, so that entries are queued in the
+     * order in which they are added.
+     */
+    private void addEntry(EntryCompression compression) throws IOException {
+        if (compressionPool == null || compressionPool.isShutdown()) {
+            writeEntry(compression.call());
+            return;
+        }
+        Future<CompressedEntry> future;
+        if (compression.method == ZipEntry.STORED) {
+            // Nothing to compress, but it still has to wait for the entries before it
+            FutureTask<CompressedEntry> task = new FutureTask<CompressedEntry>(compression);
+            task.run();
+            future = task;
+        }
+        else {
+            future = compressionPool.submit(compression);
+        }
+        pendingEntries.add(future);
+        writePendingEntries(false);
+        while (pendingEntries.size() > maxPendingEntries) {
+            writeEntry(getCompressedEntry(pendingEntries.poll()));
+        }
+    }
+
+    /**
+     * Writes the entries at the head of the queue that have been compressed.  Must be called whilst holding
+     * zipLock.
+     * @param all true to wait for every queued entry to be compressed and write all of them.
+     */
+    private void writePendingEntries(boolean all) throws IOException {
+        while (!pendingEntries.isEmpty() && (all || pendingEntries.peek().isDone())) {
+            writeEntry(getCompressedEntry(pendingEntries.poll()));
+        }
+    }
+
+    private static CompressedEntry getCompressedEntry(Future<CompressedEntry> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted whilst waiting for an entry to be compressed");
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Could not compress entry", e.getCause());
+        }
+    }
+
+    private void writeEntry(CompressedEntry entry) throws IOException {
+        zipWriter.writeEntry(entry.name, entry.method, entry.data.getBuffer(), entry.data.size(), entry.size, entry.crc);
+    }
+
+
+    /**
+     * A byte array output stream whose buffer can be read without copying it.
+     */
+    private static class EntryBuffer extends ByteArrayOutputStream {
+
+        private EntryBuffer() {
+            super(256);
+        }
+
+        private EntryBuffer(int size) {
+            super(size);
+        }
+
+        private byte[] getBuffer() {
+            return buf;
         }
-        return paused;
     }
 
+    /**
+     * Serialises the content of an entry.
+     */
+    private interface EntryContent {
+
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * A deflater, and a chunk to deflate into, that a thread reuses for every entry that it compresses.
+     */
+    private static class Compressor {
+
+        private final Deflater deflater;
 
+        private final byte[] chunk = new byte[8192];
 
-    private void writeObject(TelemetryInfo info, String name, Object object) {
-        List<TelemetryTimer> paused = pauseRunningTimers();
-        String zipEntryName = getTelemetryInfoArtefactZipEntryName(info, name);
+        /**
+         * Whether the deflater has been ended.  Guarded by this.
+         */
+        private boolean ended;
 
+        private Compressor(int level) {
+            deflater = new Deflater(level, true);
+        }
+
+        /**
+         * Compresses data into a new buffer.  Synchronised, uncontended as only the owning thread compresses, so
+         * that the deflater cannot be ended part way through.
+         */
+        private synchronized EntryBuffer compress(EntryBuffer data) throws IOException {
+            if (ended) {
+                throw new IOException("The archive has been closed");
+            }
             try {
-                zipOutputStream.putNextEntry(new ZipEntry(zipEntryName));
-//                BufferedOutputStream bos = new BufferedOutputStream(zipOutputStream);
-                if(object instanceof TelemetryObject) {
-                    TelemetryObject telemetryObject = (TelemetryObject) object;
-                    telemetryObject.serialise(zipOutputStream);
+                deflater.setInput(data.getBuffer(), 0, data.size());
+                deflater.finish();
+                EntryBuffer compressed = new EntryBuffer(Math.max(64, data.size() / 2));
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(chunk);
+                    compressed.write(chunk, 0, length);
                 }
-                else {
-                    PrintWriter pw = new PrintWriter(zipOutputStream);
-                    pw.print(object);
-                    pw.flush();
-                }
-//                bos.flush();
-                zipOutputStream.closeEntry();
-                zipOutputStream.flush();
+                return compressed;
             }
-            catch (FileNotFoundException e) {
-                e.printStackTrace();
+            finally {
+                deflater.reset();
             }
-            catch (IOException e) {
-                e.printStackTrace();
+        }
+
+        private synchronized void end() {
+            if (!ended) {
+                ended = true;
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Compresses the serialised data of an entry.
+     */
+    private class EntryCompression implements Callable<CompressedEntry> {
+
+        private final String name;
+
+        private final int method;
+
+        private final EntryBuffer data;
+
+        private EntryCompression(String name, int method, EntryBuffer data) {
+            this.name = name;
+            this.method = method;
+            this.data = data;
+        }
+
+        public CompressedEntry call() throws IOException {
+            CRC32 crc = new CRC32();
+            crc.update(data.getBuffer(), 0, data.size());
+            if (method == ZipEntry.STORED) {
+                return new CompressedEntry(name, method, data, data.size(), crc.getValue());
             }
+            EntryBuffer compressed = compressors.get().compress(data);
+            return new CompressedEntry(name, method, compressed, data.size(), crc.getValue());
+        }
+    }
+
+    /**
+     * An entry that is ready to be written.
+     */
+    private static class CompressedEntry {
+
+        private final String name;
+
+        private final int method;
+
+        private final EntryBuffer data;
+
+        private final long size;
+
+        private final long crc;
+
+        private CompressedEntry(String name, int method, EntryBuffer data, long size, long crc) {
+            this.name = name;
+            this.method = method;
+            this.data = data;
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+
+
+    /**
+     * A transmission that has been begun, but not ended, along with the zip directory that it is written to and
+     * the measurements that have been recorded for it so far.
+     */
+    private static class OpenTransmission {
 
-        unpauseTimers(paused);
+        private final TelemetryInfo info;
+
+        private final String entryName;
+
+        private final PropertyTable properties = new PropertyTable();
+
+        /**
+         * The number of children of this transmission that have been begun with each name.  Only used by the
+         * thread that has this transmission open, and dropped when it ends.
+         */
+        private final Map<String, int[]> childCounts = new HashMap<String, int[]>();
+
+        /**
+         * For a top level transmission, whether it or a transmission nested in it has been auto flushed.
+         */
+        private boolean commitRequested;
+
+        private OpenTransmission(TelemetryInfo info, String entryName) {
+            this.info = info;
+            this.entryName = entryName;
+        }
     }
 
+    /**
+     * The properties of an open transmission, with primitive values kept as their bits.  Setting a property that
+     * is already set replaces its value, as with {@link Properties}.
+     */
+    private static class PropertyTable {
+
+        private static final byte STRING = 0;
+
+        private static final byte LONG = 1;
+
+        private static final byte DOUBLE = 2;
+
+        private String[] names = new String[8];
+
+        private byte[] kinds = new byte[8];
 
+        private String[] values = new String[8];
 
+        private long[] bits = new long[8];
 
+        private int count = 0;
 
+        private void set(String name, byte kind, String value, long valueBits) {
+            int i = 0;
+            while (i < count && !names[i].equals(name)) {
+                i++;
+            }
+            if (i == count) {
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, count * 2);
+                    kinds = Arrays.copyOf(kinds, count * 2);
+                    values = Arrays.copyOf(values, count * 2);
+                    bits = Arrays.copyOf(bits, count * 2);
+                }
+                names[count++] = name;
+            }
+            kinds[i] = kind;
+            values[i] = value;
+            bits[i] = valueBits;
+        }
 
+        private Properties toProperties() {
+            Properties properties = new Properties();
+            for (int i = 0; i < count; i++) {
+                String value;
+                if (kinds[i] == LONG) {
+                    value = Long.toString(bits[i]);
+                }
+                else if (kinds[i] == DOUBLE) {
+                    value = Double.toString(Double.longBitsToDouble(bits[i]));
+                }
+                else {
+                    value = values[i];
+                }
+                properties.setProperty(names[i], value);
+            }
+            return properties;
+        }
+    }
 }
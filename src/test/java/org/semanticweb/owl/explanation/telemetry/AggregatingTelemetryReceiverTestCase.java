@@ -0,0 +1,167 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class AggregatingTelemetryReceiverTestCase {
+
+    private StringWriter baseWriter;
+
+    private AggregatingTelemetryReceiver receiver;
+
+    @Before
+    public void setUp() {
+        baseWriter = new StringWriter();
+        receiver = new AggregatingTelemetryReceiver(new XMLTelemetryReceiver(baseWriter));
+    }
+
+    @Test
+    public void shouldFoldConsecutiveSiblingsWithTheSameName() throws IOException {
+        TelemetryInfo tree = new DefaultTelemetryInfo("hitting-set-tree");
+        receiver.beginTransmission(tree);
+        receiver.recordLong(tree, "index", 7);
+        recordJustifications(1000);
+        TelemetryInfo other = new DefaultTelemetryInfo("other");
+        receiver.beginTransmission(other);
+        receiver.endTransmission(other);
+        recordJustifications(2);
+        receiver.endTransmission(tree);
+        TelemetryNode node = read();
+        assertThat(node.getName(), is("hitting-set-tree"));
+        assertThat(node.getPropertyValueAsInt("index"), is(7));
+        assertThat(node.getChildren().size(), is(3));
+        TelemetryNode justifications = node.getChildren().get(0);
+        assertThat(justifications.getName(), is("justification"));
+        assertThat(justifications.getPropertyValueAsInt(AggregatingTelemetryReceiver.AGGREGATED_COUNT_MEASUREMENT_NAME), is(1000));
+        assertThat(justifications.getPropertyValueAsDouble("size.min"), is(0.0));
+        assertThat(justifications.getPropertyValueAsDouble("size.max"), is(9.0));
+        assertThat(justifications.getPropertyValueAsDouble("size.mean"), is(4.5));
+        assertThat(justifications.getPropertyValueAsDouble("size.sum"), is(4500.0));
+        assertThat(justifications.getProperties().getProperty("label"), is("first"));
+        TelemetryNode module = justifications.getChildren().get(0);
+        assertThat(module.getName(), is("module"));
+        assertThat(module.getPropertyValueAsInt(AggregatingTelemetryReceiver.AGGREGATED_COUNT_MEASUREMENT_NAME), is(1000));
+        assertThat(module.getPropertyValueAsInt("axioms.count"), is(1000));
+        assertThat(node.getChildren().get(1).getName(), is("other"));
+        assertThat(node.getChildren().get(2).getPropertyValueAsInt(AggregatingTelemetryReceiver.AGGREGATED_COUNT_MEASUREMENT_NAME), is(2));
+    }
+
+    @Test
+    public void shouldPassExemptTransmissionsOnAsTheyAre() throws IOException {
+        receiver.addExemptName("justification");
+        TelemetryInfo tree = new DefaultTelemetryInfo("hitting-set-tree");
+        receiver.beginTransmission(tree);
+        recordJustifications(3);
+        receiver.endTransmission(tree);
+        TelemetryNode node = read();
+        assertThat(node.getChildren().size(), is(3));
+        assertThat(node.getChildren().get(2).getPropertyValueAsInt("size"), is(2));
+        assertThat(node.getChildren().get(2).getChildren().get(0).getName(), is("module"));
+    }
+
+    @Test
+    public void shouldPassTransmissionsWithoutSameNamedNeighboursOnAsTheyAre() throws IOException {
+        TelemetryInfo tree = new DefaultTelemetryInfo("hitting-set-tree");
+        receiver.beginTransmission(tree);
+        recordJustifications(1);
+        TelemetryInfo other = new DefaultTelemetryInfo("other");
+        receiver.beginTransmission(other);
+        receiver.recordLong(other, "size", 3);
+        receiver.endTransmission(other);
+        receiver.endTransmission(tree);
+        TelemetryNode node = read();
+        assertThat(node.getChildren().size(), is(2));
+        TelemetryNode justification = node.getChildren().get(0);
+        assertThat(justification.getProperties().getProperty(AggregatingTelemetryReceiver.AGGREGATED_COUNT_MEASUREMENT_NAME), is(nullValue()));
+        assertThat(justification.getPropertyValueAsInt("size"), is(0));
+        assertThat(justification.getProperties().getProperty("label"), is("first"));
+        assertThat(justification.getChildren().get(0).getPropertyValueAsInt("axioms"), is(3));
+        TelemetryNode otherNode = node.getChildren().get(1);
+        assertThat(otherNode.getName(), is("other"));
+        assertThat(otherNode.getProperties().getProperty(AggregatingTelemetryReceiver.AGGREGATED_COUNT_MEASUREMENT_NAME), is(nullValue()));
+        assertThat(otherNode.getPropertyValueAsInt("size"), is(3));
+    }
+
+    @Test
+    public void shouldOnlyFoldAdjacentChildren() throws IOException {
+        TelemetryInfo tree = new DefaultTelemetryInfo("hitting-set-tree");
+        receiver.beginTransmission(tree);
+        for (int i = 0; i < 2; i++) {
+            TelemetryInfo node = new DefaultTelemetryInfo("node");
+            receiver.beginTransmission(node);
+            for (String name : new String[]{"a", "b", "a"}) {
+                TelemetryInfo child = new DefaultTelemetryInfo(name);
+                receiver.beginTransmission(child);
+                receiver.endTransmission(child);
+            }
+            receiver.endTransmission(node);
+        }
+        receiver.endTransmission(tree);
+        TelemetryNode node = read().getChildren().get(0);
+        assertThat(node.getPropertyValueAsInt(AggregatingTelemetryReceiver.AGGREGATED_COUNT_MEASUREMENT_NAME), is(2));
+        assertThat(node.getChildren().size(), is(3));
+        assertThat(node.getChildren().get(0).getName(), is("a"));
+        assertThat(node.getChildren().get(1).getName(), is("b"));
+        assertThat(node.getChildren().get(2).getName(), is("a"));
+        assertThat(node.getChildren().get(2).getPropertyValueAsInt(AggregatingTelemetryReceiver.AGGREGATED_COUNT_MEASUREMENT_NAME), is(2));
+    }
+
+    @Test
+    public void shouldPassObjectsOfSingleTransmissionsOnAndCountObjectsOfFoldedOnes() {
+        TelemetryReceiver delegate = mock(TelemetryReceiver.class);
+        AggregatingTelemetryReceiver aggregating = new AggregatingTelemetryReceiver(delegate);
+        TelemetryInfo tree = new DefaultTelemetryInfo("hitting-set-tree");
+        aggregating.beginTransmission(tree);
+        TelemetryInfo single = new DefaultTelemetryInfo("single");
+        aggregating.beginTransmission(single);
+        aggregating.recordObject(single, "prefix", "suffix", "object");
+        aggregating.endTransmission(single);
+        for (int i = 0; i < 2; i++) {
+            TelemetryInfo folded = new DefaultTelemetryInfo("folded");
+            aggregating.beginTransmission(folded);
+            aggregating.recordObject(folded, "prefix", "suffix", "object");
+            aggregating.endTransmission(folded);
+        }
+        aggregating.endTransmission(tree);
+        verify(delegate).recordObject(eq(single), eq("prefix"), eq("suffix"), eq("object"));
+        verify(delegate).recordLong(any(TelemetryInfo.class), eq(AggregatingTelemetryReceiver.OBJECT_COUNT_MEASUREMENT_NAME), eq(2L));
+    }
+
+    private void recordJustifications(int count) {
+        for (int i = 0; i < count; i++) {
+            TelemetryInfo justification = new DefaultTelemetryInfo("justification");
+            receiver.beginTransmission(justification);
+            receiver.recordLong(justification, "size", i % 10);
+            receiver.recordMeasurement(justification, "label", i == 0 ? "first" : "other");
+            TelemetryInfo module = new DefaultTelemetryInfo("module");
+            receiver.beginTransmission(module);
+            receiver.recordMeasurement(module, "axioms", "3");
+            receiver.endTransmission(module);
+            receiver.endTransmission(justification);
+        }
+    }
+
+    private TelemetryNode read() throws IOException {
+        receiver.endTransmission(new DefaultTelemetryInfo("end"));
+        XMLTelemetryReader reader = new XMLTelemetryReader(new ByteArrayInputStream(baseWriter.toString().getBytes("UTF-8")), false);
+        return reader.readNext();
+    }
+
+    @Test
+    public void shouldNotBeEnabledIfDelegateIsNotEnabled() {
+        AggregatingTelemetryReceiver aggregating = new AggregatingTelemetryReceiver(new NullTelemetryReceiver());
+        assertThat(aggregating.isEnabled("a"), is(false));
+    }
+}
@@ -0,0 +1,293 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncTelemetryReceiverTestCase {
+
+    @Mock
+    private TelemetryReceiver delegate;
+
+    private TelemetryInfo info;
+
+    private AsyncTelemetryReceiver receiver;
+
+    @Before
+    public void setUp() {
+        info = new DefaultTelemetryInfo("test");
+        receiver = new AsyncTelemetryReceiver(delegate);
+    }
+
+    @After
+    public void tearDown() {
+        receiver.close();
+    }
+
+    @Test
+    public void shouldReplayEventsInOrder() {
+        receiver.beginTransmission(info);
+        receiver.recordMeasurement(info, "name", "value");
+        receiver.recordObject(info, "prefix", "suffix", "object");
+        receiver.endTransmission(info);
+        receiver.flush();
+        InOrder order = inOrder(delegate);
+        order.verify(delegate).beginTransmission(info);
+        order.verify(delegate).recordMeasurement(info, "name", "value");
+        order.verify(delegate).recordObject(info, "prefix", "suffix", "object");
+        order.verify(delegate).endTransmission(info);
+    }
+
+    @Test
+    public void shouldReplayTimingWithSnapshotOfTimer() {
+        TelemetryTimer timer = new TelemetryTimer(TelemetryClock.WALL, TelemetryClock.USER);
+        timer.start();
+        timer.stop();
+        receiver.recordTiming(info, "time", timer);
+        receiver.flush();
+        ArgumentCaptor<TelemetryTimer> snapshot = ArgumentCaptor.forClass(TelemetryTimer.class);
+        verify(delegate).recordTiming(eq(info), eq("time"), snapshot.capture());
+        assertThat(snapshot.getValue() == timer, is(false));
+        assertThat(snapshot.getValue().getClocks(), is(timer.getClocks()));
+        assertThat(snapshot.getValue().getEllapsedTime(TelemetryClock.WALL), is(timer.getEllapsedTime(TelemetryClock.WALL)));
+        assertThat(snapshot.getValue().getEllapsedTime(TelemetryClock.USER), is(timer.getEllapsedTime(TelemetryClock.USER)));
+    }
+
+    @Test
+    public void shouldEndTransmissionWithSnapshotOfFirstTimer() {
+        TelemetryTimer timer = new TelemetryTimer(TelemetryClock.WALL);
+        TelemetryInfo timed = new DefaultTelemetryInfo("timed", timer);
+        timer.start();
+        receiver.beginTransmission(timed);
+        timer.stop();
+        receiver.endTransmission(timed);
+        receiver.flush();
+        ArgumentCaptor<TelemetryInfo> ended = ArgumentCaptor.forClass(TelemetryInfo.class);
+        verify(delegate).endTransmission(ended.capture());
+        assertThat(ended.getValue().getTimers().size(), is(1));
+        assertThat(ended.getValue().getTimers().get(0).getEllapsedTime(TelemetryClock.WALL), is(timer.getEllapsedTime(TelemetryClock.WALL)));
+    }
+
+    @Test
+    public void shouldCountDroppedEvents() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        TelemetryReceiver blockingDelegate = new NullTelemetryReceiver() {
+            @Override
+            public void beginTransmission(TelemetryInfo transmitter) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        AsyncTelemetryReceiver dropping = new AsyncTelemetryReceiver(blockingDelegate, 4, OverflowPolicy.DROP_AND_COUNT);
+        try {
+            dropping.beginTransmission(info);
+            started.await();
+            dropping.recordMeasurement(info, "a", "1");
+            dropping.recordMeasurement(info, "b", "2");
+            dropping.recordMeasurement(info, "c", "3");
+            dropping.recordMeasurement(info, "d", "4");
+            // One slot is kept for the end of the transmission
+            assertThat(dropping.getDroppedEventCount(), is(2L));
+        } finally {
+            release.countDown();
+            dropping.close();
+        }
+    }
+
+    @Test
+    public void shouldReportDroppedEventsWhenTransmissionEnds() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        TelemetryReceiver blockingDelegate = mock(TelemetryReceiver.class);
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                started.countDown();
+                release.await();
+                return null;
+            }
+        }).when(blockingDelegate).beginTransmission(any(TelemetryInfo.class));
+        AsyncTelemetryReceiver dropping = new AsyncTelemetryReceiver(blockingDelegate, 4, OverflowPolicy.DROP_AND_COUNT);
+        dropping.beginTransmission(info);
+        started.await();
+        dropping.recordMeasurement(info, "a", "1");
+        dropping.recordMeasurement(info, "b", "2");
+        dropping.recordMeasurement(info, "c", "3");
+        dropping.recordMeasurement(info, "d", "4");
+        release.countDown();
+        dropping.endTransmission(info);
+        dropping.close();
+        verify(blockingDelegate).recordLong(eq(info), eq(AsyncTelemetryReceiver.DROPPED_EVENTS_MEASUREMENT_NAME), eq(2L));
+    }
+
+    @Test
+    public void shouldReplayEachProducerOnItsOwnThread() throws InterruptedException {
+        final Map<String, Thread> beginThreads = new ConcurrentHashMap<String, Thread>();
+        final Map<String, Thread> endThreads = new ConcurrentHashMap<String, Thread>();
+        TelemetryReceiver recordingDelegate = new NullTelemetryReceiver() {
+            @Override
+            public void beginTransmission(TelemetryInfo info) {
+                beginThreads.put(info.getName(), Thread.currentThread());
+            }
+
+            @Override
+            public void endTransmission(TelemetryInfo info) {
+                endThreads.put(info.getName(), Thread.currentThread());
+            }
+        };
+        final AsyncTelemetryReceiver shared = new AsyncTelemetryReceiver(recordingDelegate);
+        final CountDownLatch rootsBegun = new CountDownLatch(2);
+        Thread[] producers = new Thread[2];
+        for (int i = 0; i < producers.length; i++) {
+            final String suffix = i == 0 ? "a" : "b";
+            producers[i] = new Thread() {
+                @Override
+                public void run() {
+                    TelemetryInfo root = new DefaultTelemetryInfo("root-" + suffix);
+                    TelemetryInfo child = new DefaultTelemetryInfo("child-" + suffix);
+                    shared.beginTransmission(root);
+                    rootsBegun.countDown();
+                    try {
+                        rootsBegun.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    shared.beginTransmission(child);
+                    shared.endTransmission(child);
+                    shared.endTransmission(root);
+                    shared.flush();
+                }
+            };
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        shared.close();
+        for (String suffix : Arrays.asList("a", "b")) {
+            Thread thread = beginThreads.get("root-" + suffix);
+            assertThat(beginThreads.get("child-" + suffix), is(thread));
+            assertThat(endThreads.get("child-" + suffix), is(thread));
+            assertThat(endThreads.get("root-" + suffix), is(thread));
+        }
+        assertThat(beginThreads.get("root-a") == beginThreads.get("root-b"), is(false));
+    }
+
+    @Test
+    public void shouldDropTransmissionThatBeginsWhenQueueIsFull() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        TelemetryReceiver blockingDelegate = mock(TelemetryReceiver.class);
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                started.countDown();
+                release.await();
+                return null;
+            }
+        }).when(blockingDelegate).beginTransmission(info);
+        AsyncTelemetryReceiver dropping = new AsyncTelemetryReceiver(blockingDelegate, 2, OverflowPolicy.DROP_AND_COUNT);
+        TelemetryInfo child = new DefaultTelemetryInfo("child");
+        dropping.beginTransmission(info);
+        started.await();
+        dropping.beginTransmission(child);
+        dropping.recordMeasurement(child, "a", "1");
+        dropping.endTransmission(child);
+        dropping.endTransmission(info);
+        assertThat(dropping.getDroppedEventCount(), is(3L));
+        release.countDown();
+        dropping.close();
+        verify(blockingDelegate, never()).beginTransmission(child);
+        verify(blockingDelegate, never()).endTransmission(child);
+        verify(blockingDelegate).recordLong(eq(info), eq(AsyncTelemetryReceiver.DROPPED_EVENTS_MEASUREMENT_NAME), eq(3L));
+        verify(blockingDelegate).endTransmission(info);
+    }
+
+    @Test
+    public void shouldAskDelegateWhetherEnabled() {
+        when(delegate.isEnabled("a")).thenReturn(true);
+        assertThat(receiver.isEnabled("a"), is(true));
+        assertThat(receiver.isEnabled("b"), is(false));
+    }
+
+    @Test
+    public void shouldPassEventsStraightToDelegateWhenEveryLaneIsTaken() throws Exception {
+        final Map<String, Thread> beginThreads = new ConcurrentHashMap<String, Thread>();
+        TelemetryReceiver recordingDelegate = new NullTelemetryReceiver() {
+            @Override
+            public void beginTransmission(TelemetryInfo info) {
+                beginThreads.put(info.getName(), Thread.currentThread());
+            }
+        };
+        final AsyncTelemetryReceiver single = new AsyncTelemetryReceiver(recordingDelegate, 16, OverflowPolicy.BLOCK, 1);
+        TelemetryInfo queued = new DefaultTelemetryInfo("queued");
+        single.beginTransmission(queued);
+        final Thread[] otherThread = new Thread[1];
+        otherThread[0] = new Thread() {
+            @Override
+            public void run() {
+                TelemetryInfo direct = new DefaultTelemetryInfo("direct");
+                single.beginTransmission(direct);
+                single.endTransmission(direct);
+            }
+        };
+        otherThread[0].start();
+        otherThread[0].join();
+        single.endTransmission(queued);
+        single.close();
+        assertThat(beginThreads.get("direct"), is(otherThread[0]));
+        assertThat(beginThreads.get("queued") == Thread.currentThread(), is(false));
+        assertThat(beginThreads.get("queued") == otherThread[0], is(false));
+    }
+
+    @Test
+    public void shouldRetireIdleLaneAndStartAnother() throws Exception {
+        final Map<String, Thread> beginThreads = new ConcurrentHashMap<String, Thread>();
+        TelemetryReceiver recordingDelegate = new NullTelemetryReceiver() {
+            @Override
+            public void beginTransmission(TelemetryInfo info) {
+                beginThreads.put(info.getName(), Thread.currentThread());
+            }
+        };
+        AsyncTelemetryReceiver single = new AsyncTelemetryReceiver(recordingDelegate, 16, OverflowPolicy.BLOCK, 1);
+        TelemetryInfo first = new DefaultTelemetryInfo("first");
+        single.beginTransmission(first);
+        single.endTransmission(first);
+        single.flush();
+        Thread.sleep(AsyncTelemetryReceiver.LANE_IDLE_TIMEOUT_MILLIS * 2);
+        assertThat(beginThreads.get("first").isAlive(), is(false));
+        TelemetryInfo second = new DefaultTelemetryInfo("second");
+        single.beginTransmission(second);
+        single.endTransmission(second);
+        single.close();
+        assertThat(beginThreads.get("second") == beginThreads.get("first"), is(false));
+        assertThat(beginThreads.get("second") == Thread.currentThread(), is(false));
+    }
+}
@@ -0,0 +1,115 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BinaryTelemetryReceiverTestCase {
+
+    private ByteArrayOutputStream outputStream;
+
+    private BinaryTelemetryReceiver receiver;
+
+    @Before
+    public void setUp() {
+        outputStream = new ByteArrayOutputStream();
+        receiver = new BinaryTelemetryReceiver(outputStream);
+    }
+
+    @Test
+    public void shouldReadBackTree() throws IOException {
+        TelemetryInfo outer = new DefaultTelemetryInfo("hitting-set-tree");
+        receiver.beginTransmission(outer);
+        receiver.recordMeasurement(outer, "name", "value");
+        for (int i = 0; i < 3; i++) {
+            TelemetryInfo inner = new DefaultTelemetryInfo("justification");
+            receiver.beginTransmission(inner);
+            receiver.recordLong(inner, "size", -i);
+            receiver.recordDouble(inner, "ratio", 0.5);
+            receiver.recordBoolean(inner, "entailed", true);
+            receiver.endTransmission(inner);
+        }
+        receiver.recordObject(outer, "axioms", ".txt", "A SubClassOf B");
+        receiver.endTransmission(outer);
+        receiver.close();
+
+        BinaryTelemetryReader reader = read();
+        TelemetryNode node = reader.readNext();
+        assertThat(node.getName(), is("hitting-set-tree"));
+        assertThat(node.getProperties().getProperty("name"), is("value"));
+        assertThat(node.getChildren().size(), is(3));
+        TelemetryNode child = node.getChildren().get(2);
+        assertThat(child.getParent(), is(node));
+        assertThat(child.getPropertyValueAsInt("size"), is(-2));
+        assertThat(child.getPropertyValueAsDouble("ratio"), is(0.5));
+        assertThat(child.getProperties().getProperty("entailed"), is("true"));
+        assertThat(node.getMinPropertyValue("size"), is(-2.0));
+        assertThat(node.getObjectNames(), is(Arrays.asList("axioms.txt")));
+        assertThat(readFully(node.getInputStream("axioms.txt")), is("A SubClassOf B"));
+        assertThat(reader.readNext(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldSeparateTransmissionsFromDifferentThreads() throws Exception {
+        final TelemetryInfo first = new DefaultTelemetryInfo("first");
+        receiver.beginTransmission(first);
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                TelemetryInfo second = new DefaultTelemetryInfo("second");
+                receiver.beginTransmission(second);
+                receiver.recordLong(second, "value", 2);
+                receiver.endTransmission(second);
+            }
+        };
+        other.start();
+        other.join();
+        receiver.recordLong(first, "value", 1);
+        receiver.endTransmission(first);
+        receiver.close();
+
+        BinaryTelemetryReader reader = read();
+        TelemetryNode second = reader.readNext();
+        assertThat(second.getName(), is("second"));
+        assertThat(second.getPropertyValueAsInt("value"), is(2));
+        TelemetryNode firstNode = reader.readNext();
+        assertThat(firstNode.getName(), is("first"));
+        assertThat(firstNode.getPropertyValueAsInt("value"), is(1));
+        assertThat(firstNode.getChildren().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldReturnTransmissionsThatWereNotEnded() throws IOException {
+        TelemetryInfo outer = new DefaultTelemetryInfo("outer");
+        receiver.beginTransmission(outer);
+        receiver.recordLong(outer, "value", 7);
+        receiver.close();
+        BinaryTelemetryReader reader = read();
+        TelemetryNode node = reader.readNext();
+        assertThat(node.getName(), is("outer"));
+        assertThat(node.getPropertyValueAsInt("value"), is(7));
+        assertThat(reader.readNext(), is(nullValue()));
+    }
+
+    private BinaryTelemetryReader read() throws IOException {
+        return new BinaryTelemetryReader(new ByteArrayInputStream(outputStream.toByteArray()));
+    }
+
+    private static String readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int b;
+        while ((b = inputStream.read()) != -1) {
+            bos.write(b);
+        }
+        return bos.toString();
+    }
+}
@@ -0,0 +1,203 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CompositeTelemetryReceiverTestCase {
+
+    @Mock
+    private TelemetryReceiver first;
+
+    @Mock
+    private TelemetryReceiver second;
+
+    private TelemetryInfo info;
+
+    private CompositeTelemetryReceiver receiver;
+
+    @Before
+    public void setUp() {
+        info = new DefaultTelemetryInfo("test");
+        receiver = new CompositeTelemetryReceiver();
+    }
+
+    @After
+    public void tearDown() {
+        receiver.close();
+    }
+
+    @Test
+    public void shouldPassEventsToEverySink() {
+        receiver.addSink(first);
+        receiver.addSink(second);
+        receiver.beginTransmission(info);
+        receiver.recordLong(info, "name", 3);
+        receiver.endTransmission(info);
+        receiver.flush();
+        for (TelemetryReceiver sink : Arrays.asList(first, second)) {
+            verify(sink).beginTransmission(info);
+            verify(sink).recordLong(info, "name", 3);
+            verify(sink).endTransmission(info);
+        }
+    }
+
+    @Test
+    public void shouldReturnSinks() {
+        receiver.addSink(first);
+        receiver.addSink(second);
+        assertThat(receiver.getSinks(), is(Arrays.asList(first, second)));
+    }
+
+    @Test
+    public void shouldNotStallOtherSinksWhenOneSinkIsSlow() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return null;
+            }
+        }).when(first).recordLong(any(TelemetryInfo.class), anyString(), anyLong());
+        receiver.addSink(first, 4, OverflowPolicy.DROP_AND_COUNT);
+        receiver.addSink(second);
+        for (int i = 0; i < 100; i++) {
+            receiver.recordLong(info, "name", i);
+        }
+        try {
+            // The fast sink sees every event whilst the slow sink is still stuck on its first one
+            verify(second, timeout(5000).times(100)).recordLong(any(TelemetryInfo.class), anyString(), anyLong());
+            assertThat(receiver.getDroppedEventCount(second), is(0L));
+            assertThat(receiver.getDroppedEventCount(first) > 0, is(true));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shouldNotWaitForFullSinkWhenTransmissionsBeginAndEnd() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return null;
+            }
+        }).when(first).beginTransmission(any(TelemetryInfo.class));
+        receiver.addSink(first, 4, OverflowPolicy.DROP_AND_COUNT);
+        receiver.addSink(second);
+        try {
+            for (int i = 0; i < 100; i++) {
+                TelemetryInfo transmission = new DefaultTelemetryInfo("test");
+                receiver.beginTransmission(transmission);
+                receiver.recordLong(transmission, "name", i);
+                receiver.endTransmission(transmission);
+            }
+            verify(second, timeout(5000).times(100)).endTransmission(any(TelemetryInfo.class));
+            assertThat(receiver.getDroppedEventCount(first) > 0, is(true));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void shouldKeepNestingOfEachProducer() throws InterruptedException {
+        StringWriter writer = new StringWriter();
+        receiver.addSink(new XMLTelemetryReceiver(writer));
+        final CountDownLatch rootsBegun = new CountDownLatch(2);
+        Thread[] producers = new Thread[2];
+        for (int i = 0; i < producers.length; i++) {
+            final String suffix = i == 0 ? "a" : "b";
+            producers[i] = new Thread() {
+                @Override
+                public void run() {
+                    TelemetryInfo root = new DefaultTelemetryInfo("root-" + suffix);
+                    TelemetryInfo child = new DefaultTelemetryInfo("child-" + suffix);
+                    receiver.beginTransmission(root);
+                    rootsBegun.countDown();
+                    try {
+                        rootsBegun.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    receiver.beginTransmission(child);
+                    receiver.endTransmission(child);
+                    receiver.endTransmission(root);
+                    receiver.flush();
+                }
+            };
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        receiver.close();
+        String xml = writer.toString().replaceAll("\\s+", "");
+        assertThat(xml.contains("<root-a><child-a/></root-a>"), is(true));
+        assertThat(xml.contains("<root-b><child-b/></root-b>"), is(true));
+    }
+
+    @Test
+    public void shouldIsolateSinksFromExceptionsInOtherSinks() {
+        doThrow(new RuntimeException("Failed")).when(first).recordMeasurement(info, "name", "value");
+        receiver.addSink(first);
+        receiver.addSink(second);
+        receiver.recordMeasurement(info, "name", "value");
+        receiver.recordMeasurement(info, "other", "value");
+        receiver.flush();
+        verify(first).recordMeasurement(info, "other", "value");
+        verify(second).recordMeasurement(info, "name", "value");
+        verify(second).recordMeasurement(info, "other", "value");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentExceptionForUnknownSink() {
+        receiver.addSink(first);
+        receiver.getDroppedEventCount(second);
+    }
+
+    @Test
+    public void shouldBeEnabledIfAnySinkIsEnabled() {
+        when(second.isEnabled("a")).thenReturn(true);
+        receiver.addSink(first);
+        receiver.addSink(second);
+        assertThat(receiver.isEnabled("a"), is(true));
+        assertThat(receiver.isEnabled("b"), is(false));
+    }
+
+    @Test
+    public void shouldBuildHistogramsInHistogramSink() {
+        HistogramTelemetryReceiver histograms = new HistogramTelemetryReceiver(first);
+        receiver.addSink(histograms);
+        TelemetryTimer timer = new TelemetryTimer(TelemetryClock.WALL);
+        timer.start();
+        timer.stop();
+        receiver.beginTransmission(info);
+        receiver.recordTiming(info, "time", timer);
+        receiver.endTransmission(info);
+        receiver.flush();
+        LogLinearHistogram histogram = histograms.getHistogram("test", "time");
+        assertThat(histogram.getCount(), is(1L));
+        assertThat(histogram.getMax() >= timer.getEllapsedTime(), is(true));
+    }
+}
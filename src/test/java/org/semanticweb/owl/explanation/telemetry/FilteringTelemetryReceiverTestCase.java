@@ -0,0 +1,114 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FilteringTelemetryReceiverTestCase {
+
+    @Mock
+    private TelemetryReceiver delegate;
+
+    private FilteringTelemetryReceiver receiver;
+
+    @Before
+    public void setUp() {
+        receiver = new FilteringTelemetryReceiver(delegate);
+        when(delegate.isEnabled(anyString())).thenReturn(true);
+    }
+
+    @Test
+    public void shouldPassOnEverythingWithoutRules() {
+        record();
+        verify(delegate, times(4)).beginTransmission(any(TelemetryInfo.class));
+        verify(delegate, times(4)).endTransmission(any(TelemetryInfo.class));
+        verify(delegate, times(2)).recordLong(any(TelemetryInfo.class), eq("size"), anyLong());
+    }
+
+    @Test
+    public void shouldSkipSubtreesMatchingGlob() {
+        receiver.addExcludeRule("hitting-set-tree/*/justification");
+        record();
+        verify(delegate, times(2)).beginTransmission(any(TelemetryInfo.class));
+        verify(delegate, times(2)).endTransmission(any(TelemetryInfo.class));
+        verify(delegate).recordLong(any(TelemetryInfo.class), eq("size"), eq(2L));
+        verify(delegate, never()).recordLong(any(TelemetryInfo.class), eq("size"), eq(1L));
+        verify(delegate, never()).recordMeasurement(any(TelemetryInfo.class), eq("axiom"), anyString());
+    }
+
+    @Test
+    public void shouldMatchAnyDepthWithDoubleStar() {
+        receiver.addExcludeRule("**/axiom-check");
+        record();
+        verify(delegate, times(3)).beginTransmission(any(TelemetryInfo.class));
+        verify(delegate, never()).recordMeasurement(any(TelemetryInfo.class), eq("axiom"), anyString());
+        verify(delegate, times(2)).recordLong(any(TelemetryInfo.class), eq("size"), anyLong());
+    }
+
+    @Test
+    public void shouldLetLaterIncludeRuleOverrideExcludeRule() {
+        receiver.addExcludeRule("regex:.*/node");
+        receiver.addIncludeRule("hitting-set-tree/node");
+        record();
+        verify(delegate, times(4)).beginTransmission(any(TelemetryInfo.class));
+    }
+
+    @Test
+    public void shouldExcludeMeasurementsByName() {
+        receiver.addMeasurementExcludeRule("si*");
+        record();
+        verify(delegate, times(4)).beginTransmission(any(TelemetryInfo.class));
+        verify(delegate, never()).recordLong(any(TelemetryInfo.class), eq("size"), anyLong());
+        verify(delegate).recordMeasurement(any(TelemetryInfo.class), eq("axiom"), eq("A"));
+    }
+
+    @Test
+    public void shouldReportWhetherNameIsEnabledInCurrentTransmission() {
+        receiver.addExcludeRule("hitting-set-tree/*/justification");
+        assertThat(receiver.isEnabled("hitting-set-tree"), is(true));
+        TelemetryInfo tree = new DefaultTelemetryInfo("hitting-set-tree");
+        TelemetryInfo node = new DefaultTelemetryInfo("node");
+        receiver.beginTransmission(tree);
+        receiver.beginTransmission(node);
+        assertThat(receiver.isEnabled("justification"), is(false));
+        assertThat(receiver.isEnabled("other"), is(true));
+        receiver.endTransmission(node);
+        receiver.endTransmission(tree);
+    }
+
+    /**
+     * Records hitting-set-tree/node/justification/axiom-check, with a measurement in the justification and in
+     * the check.
+     */
+    private void record() {
+        TelemetryInfo tree = new DefaultTelemetryInfo("hitting-set-tree");
+        TelemetryInfo node = new DefaultTelemetryInfo("node");
+        TelemetryInfo justification = new DefaultTelemetryInfo("justification");
+        TelemetryInfo check = new DefaultTelemetryInfo("axiom-check");
+        receiver.beginTransmission(tree);
+        receiver.recordLong(tree, "size", 2);
+        receiver.beginTransmission(node);
+        receiver.beginTransmission(justification);
+        receiver.recordLong(justification, "size", 1);
+        receiver.beginTransmission(check);
+        receiver.recordMeasurement(check, "axiom", "A");
+        receiver.endTransmission(check);
+        receiver.endTransmission(justification);
+        receiver.endTransmission(node);
+        receiver.endTransmission(tree);
+    }
+}
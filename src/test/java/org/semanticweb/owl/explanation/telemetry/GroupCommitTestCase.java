@@ -0,0 +1,72 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class GroupCommitTestCase {
+
+    @Test
+    public void shouldForceOnceForSingleCommit() throws IOException {
+        CountingGroupCommit groupCommit = new CountingGroupCommit();
+        groupCommit.commit();
+        assertThat(groupCommit.forces.get(), is(1));
+        groupCommit.commit();
+        assertThat(groupCommit.forces.get(), is(2));
+    }
+
+    @Test
+    public void shouldGroupConcurrentCommits() throws Exception {
+        final CountingGroupCommit groupCommit = new CountingGroupCommit();
+        groupCommit.setWindow(50, TimeUnit.MILLISECONDS);
+        final int threadCount = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger committed = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        groupCommit.commit();
+                        committed.incrementAndGet();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(committed.get(), is(threadCount));
+        assertThat(groupCommit.forces.get() < threadCount, is(true));
+    }
+
+    private static class CountingGroupCommit extends GroupCommit {
+
+        private final AtomicInteger forces = new AtomicInteger();
+
+        private CountingGroupCommit() {
+            super(null);
+        }
+
+        @Override
+        void force() {
+            forces.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HistogramTelemetryReceiverTestCase {
+
+    @Mock
+    private TelemetryReceiver delegate;
+
+    private HistogramTelemetryReceiver receiver;
+
+    @Before
+    public void setUp() {
+        receiver = new HistogramTelemetryReceiver(delegate);
+    }
+
+    @Test
+    public void shouldComputePercentilesWithinBucketPrecision() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (long i = 1; i <= 1000000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertThat(histogram.getCount(), is(1000000L));
+        assertThat(histogram.getMax(), is(1000000000L));
+        assertWithin(histogram.getValueAtPercentile(50), 500000000L);
+        assertWithin(histogram.getValueAtPercentile(99), 990000000L);
+        assertWithin(histogram.getValueAtPercentile(99.9), 999000000L);
+        assertThat(histogram.getValueAtPercentile(100), is(1000000000L));
+        assertThat(histogram.getMean(), is(500000500.0));
+    }
+
+    @Test
+    public void shouldRecordSmallValuesExactly() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (long i = 0; i < 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(Long.MAX_VALUE);
+        assertThat(histogram.getValueAtPercentile(50), is(50L));
+        assertThat(histogram.getValueAtPercentile(100), is(Long.MAX_VALUE));
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        assertThat(Math.abs(actual - expected) <= expected / 64, is(true));
+    }
+
+    @Test
+    public void shouldAccumulateTimingsAndWriteSnapshotAtRootEndWhenTurnedOn() {
+        receiver.setSnapshotAtRootEnd(true);
+        TelemetryInfo root = new DefaultTelemetryInfo("root");
+        receiver.beginTransmission(root);
+        for (long i = 1; i <= 10; i++) {
+            TelemetryInfo info = new DefaultTelemetryInfo("justification");
+            receiver.beginTransmission(info);
+            receiver.recordTiming(info, "time", createTimer(i));
+            receiver.endTransmission(info);
+        }
+        verify(delegate, never()).recordLong(any(TelemetryInfo.class), eq("time"), anyLong());
+        assertThat(receiver.getHistogram("justification", "time").getCount(), is(10L));
+        receiver.endTransmission(root);
+        InOrder order = inOrder(delegate);
+        order.verify(delegate).beginTransmission(root);
+        order.verify(delegate).recordMeasurement(any(TelemetryInfo.class), eq("transmission"), eq("justification"));
+        order.verify(delegate).recordMeasurement(any(TelemetryInfo.class), eq("timing"), eq("time"));
+        order.verify(delegate).recordLong(any(TelemetryInfo.class), eq("count"), eq(10L));
+        order.verify(delegate).recordLong(any(TelemetryInfo.class), eq("p50"), eq(5L));
+        order.verify(delegate).recordLong(any(TelemetryInfo.class), eq("max"), eq(10L));
+        order.verify(delegate).endTransmission(root);
+    }
+
+    @Test
+    public void shouldWriteSnapshotOnDemand() {
+        TelemetryInfo info = new DefaultTelemetryInfo("justification");
+        receiver.beginTransmission(info);
+        receiver.recordTiming(info, "time", createTimer(7));
+        receiver.endTransmission(info);
+        verify(delegate, never()).recordMeasurement(any(TelemetryInfo.class), eq("timing"), anyString());
+        receiver.writeSnapshot();
+        verify(delegate).recordLong(any(TelemetryInfo.class), eq("p999"), eq(7L));
+    }
+
+    @Test
+    public void shouldNotGrowOutputPerRootByDefault() {
+        for (long i = 1; i <= 5; i++) {
+            TelemetryInfo root = new DefaultTelemetryInfo("root");
+            receiver.beginTransmission(root);
+            receiver.recordTiming(root, "time", createTimer(i));
+            receiver.endTransmission(root);
+        }
+        verify(delegate, never()).recordMeasurement(any(TelemetryInfo.class), eq("timing"), anyString());
+        receiver.close();
+        verify(delegate, times(1)).recordMeasurement(any(TelemetryInfo.class), eq("timing"), eq("time"));
+        verify(delegate).recordLong(any(TelemetryInfo.class), eq("count"), eq(5L));
+    }
+
+    @Test
+    public void shouldRecordTimingsGivenByNameOrSymbolInSameHistogram() {
+        TelemetryInfo info = new DefaultTelemetryInfo("justification");
+        receiver.beginTransmission(info);
+        receiver.recordTiming(info, "time", createTimer(3));
+        receiver.recordTiming(info, TelemetrySymbols.getSymbol("time"), createTimer(5));
+        receiver.endTransmission(info);
+        LogLinearHistogram histogram = receiver.getHistogram("justification", "time");
+        assertThat(histogram.getCount(), is(2L));
+        assertThat(histogram.getMax(), is(5L));
+    }
+
+    @Test
+    public void shouldKeepSecondaryClocksInSeparateHistograms() {
+        TelemetryInfo info = new DefaultTelemetryInfo("justification");
+        TelemetryTimer timer = new TelemetryTimer(TelemetryClock.WALL, TelemetryClock.ALLOCATED_BYTES);
+        receiver.recordTiming(info, "time", timer);
+        receiver.recordTiming(info, "time", new TelemetryTimer(TelemetryClock.ALLOCATED_BYTES));
+        assertThat(receiver.getHistogram("justification", "time").getCount(), is(2L));
+        if (TelemetryClock.ALLOCATED_BYTES.isSupported()) {
+            String name = timer.getMeasurementName("time", TelemetryClock.ALLOCATED_BYTES);
+            assertThat(receiver.getHistogram("justification", name).getCount(), is(1L));
+        }
+    }
+
+    private static TelemetryTimer createTimer(long ellapsedTime) {
+        TelemetryTimer timer = mock(TelemetryTimer.class);
+        when(timer.getClocks()).thenReturn(Arrays.asList(TelemetryClock.USER));
+        when(timer.getMeasurementName("time", TelemetryClock.USER)).thenReturn("time");
+        when(timer.getEllapsedTime(TelemetryClock.USER)).thenReturn(ellapsedTime);
+        return timer;
+    }
+}
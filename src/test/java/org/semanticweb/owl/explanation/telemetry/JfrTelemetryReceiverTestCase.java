@@ -0,0 +1,119 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class JfrTelemetryReceiverTestCase {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private JfrTelemetryReceiver receiver;
+
+    @Before
+    public void setUp() {
+        assumeTrue(FlightRecorder.isAvailable());
+        receiver = new JfrTelemetryReceiver();
+    }
+
+    @Test
+    public void shouldRecordTransmissionsAndMeasurementsAsEvents() throws IOException {
+        TelemetryTimer timer = new TelemetryTimer(TelemetryClock.WALL);
+        TelemetryInfo root = new DefaultTelemetryInfo("experiment", timer);
+        TelemetryInfo child = new DefaultTelemetryInfo("justification");
+        List<RecordedEvent> events = record(() -> {
+            timer.start();
+            receiver.beginTransmission(root);
+            receiver.beginTransmission(child);
+            receiver.recordLong(child, "size", 3);
+            receiver.recordDouble(child, "ratio", 0.5);
+            receiver.recordBoolean(child, "minimal", true);
+            receiver.recordMeasurement(child, "axiom", "A SubClassOf B");
+            receiver.recordException(child, new IllegalStateException("Failed"));
+            receiver.endTransmission(child);
+            timer.stop();
+            receiver.endTransmission(root);
+        });
+        RecordedEvent childEvent = getEvent(events, "telemetry.Transmission", "justification");
+        assertThat(childEvent.getLong("id"), is(child.getID()));
+        assertThat(childEvent.getLong("parentId"), is(root.getID()));
+        assertThat(childEvent.getInt("depth"), is(1));
+        RecordedEvent rootEvent = getEvent(events, "telemetry.Transmission", "experiment");
+        assertThat(rootEvent.getLong("parentId"), is(0L));
+        assertThat(rootEvent.getInt("depth"), is(0));
+        assertThat(rootEvent.getLong("wallTime") > 0, is(true));
+        RecordedEvent size = getEvent(events, "telemetry.LongMeasurement", "size");
+        assertThat(size.getLong("value"), is(3L));
+        assertThat(size.getString("transmissionName"), is("justification"));
+        assertThat(size.getLong("transmissionId"), is(child.getID()));
+        assertThat(getEvent(events, "telemetry.DoubleMeasurement", "ratio").getDouble("value"), is(0.5));
+        assertThat(getEvent(events, "telemetry.BooleanMeasurement", "minimal").getBoolean("value"), is(true));
+        assertThat(getEvent(events, "telemetry.Measurement", "axiom").getString("value"), is("A SubClassOf B"));
+        RecordedEvent exception = getEvent(events, "telemetry.Exception", null);
+        assertThat(exception.getString("exceptionClass"), is(IllegalStateException.class.getName()));
+        assertThat(exception.getString("message"), is("Failed"));
+    }
+
+    @Test
+    public void shouldNotBeEnabledWithoutRecording() {
+        assertThat(receiver.isEnabled("experiment"), is(false));
+    }
+
+    @Test
+    public void shouldNotRecordTransmissionThatBeganWithoutRecording() throws IOException {
+        TelemetryInfo root = new DefaultTelemetryInfo("experiment");
+        TelemetryInfo child = new DefaultTelemetryInfo("justification");
+        receiver.beginTransmission(root);
+        List<RecordedEvent> events = record(() -> {
+            receiver.beginTransmission(child);
+            receiver.endTransmission(child);
+            receiver.endTransmission(root);
+        });
+        RecordedEvent childEvent = getEvent(events, "telemetry.Transmission", "justification");
+        assertThat(childEvent.getLong("parentId"), is(root.getID()));
+        for (RecordedEvent event : events) {
+            assertThat("experiment".equals(event.getString("name")), is(false));
+        }
+    }
+
+    private List<RecordedEvent> record(Runnable runnable) throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "telemetry.jfr");
+        Recording recording = new Recording();
+        try {
+            for (String name : new String[]{"Transmission", "Measurement", "LongMeasurement", "DoubleMeasurement", "BooleanMeasurement", "Exception"}) {
+                recording.enable("telemetry." + name).withoutThreshold();
+            }
+            recording.start();
+            runnable.run();
+            recording.stop();
+            recording.dump(file.toPath());
+        } finally {
+            recording.close();
+        }
+        return new ArrayList<RecordedEvent>(RecordingFile.readAllEvents(file.toPath()));
+    }
+
+    private static RecordedEvent getEvent(List<RecordedEvent> events, String eventName, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(eventName) && (name == null || name.equals(event.getString("name")))) {
+                return event;
+            }
+        }
+        throw new AssertionError("No " + eventName + " event named " + name);
+    }
+}
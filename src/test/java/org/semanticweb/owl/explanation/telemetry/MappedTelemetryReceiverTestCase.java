@@ -0,0 +1,80 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MappedTelemetryReceiverTestCase {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("telemetry", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void shouldGrowAcrossSegmentsAndTruncateOnClose() throws IOException {
+        MappedTelemetryReceiver receiver = new MappedTelemetryReceiver(file, 64);
+        TelemetryInfo outer = new DefaultTelemetryInfo("outer");
+        receiver.beginTransmission(outer);
+        for (int i = 0; i < 100; i++) {
+            TelemetryInfo inner = new DefaultTelemetryInfo("inner");
+            receiver.beginTransmission(inner);
+            receiver.recordLong(inner, "index", i);
+            receiver.endTransmission(inner);
+        }
+        receiver.endTransmission(outer);
+        receiver.close();
+
+        BinaryTelemetryReader reader = new BinaryTelemetryReader(file);
+        try {
+            TelemetryNode node = reader.readNext();
+            assertThat(node.getChildren().size(), is(100));
+            assertThat(node.getChildren().get(99).getPropertyValueAsInt("index"), is(99));
+            assertThat(reader.readNext(), is(nullValue()));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void shouldReadRecordsOfReceiverThatWasNotClosed() throws IOException {
+        MappedTelemetryReceiver receiver = new MappedTelemetryReceiver(file, 4096);
+        try {
+            TelemetryInfo complete = new DefaultTelemetryInfo("complete");
+            receiver.beginTransmission(complete);
+            receiver.endTransmission(complete);
+            TelemetryInfo open = new DefaultTelemetryInfo("open");
+            receiver.beginTransmission(open);
+            receiver.recordMeasurement(open, "state", "running");
+
+            // The file still has its zero filled tail
+            assertThat(file.length(), is(4096L));
+            BinaryTelemetryReader reader = new BinaryTelemetryReader(file);
+            try {
+                assertThat(reader.readNext().getName(), is("complete"));
+                TelemetryNode openNode = reader.readNext();
+                assertThat(openNode.getName(), is("open"));
+                assertThat(openNode.getProperties().getProperty("state"), is("running"));
+                assertThat(reader.readNext(), is(nullValue()));
+            } finally {
+                reader.close();
+            }
+        } finally {
+            receiver.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RollingTelemetryReceiverTestCase {
+
+    private File directory;
+
+    private RollingTelemetryReceiver receiver;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("telemetry").toFile();
+        receiver = RollingTelemetryReceiver.createXMLReceiver(directory, "telemetry-");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void shouldStartNewSegmentWhenSizeIsExceeded() throws Exception {
+        receiver.setMaxSegmentSize(1);
+        for (int i = 0; i < 3; i++) {
+            writeExperiment(i);
+        }
+        receiver.close();
+        List<String> manifest = readManifest();
+        assertThat(manifest.size(), is(3));
+        for (int i = 0; i < 3; i++) {
+            String[] fields = manifest.get(i).split("\t");
+            assertThat(fields[0], is("telemetry-00000" + i + ".xml"));
+            assertThat(fields[3], is("1"));
+            Document document = parse(new File(directory, fields[0]));
+            assertThat(document.getDocumentElement().getElementsByTagName("experiment").getLength(), is(1));
+        }
+    }
+
+    @Test
+    public void shouldKeepRootsInOneSegmentBelowThresholds() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            writeExperiment(i);
+        }
+        assertThat(new File(directory, RollingTelemetryReceiver.MANIFEST_NAME).exists(), is(false));
+        receiver.close();
+        List<String> manifest = readManifest();
+        assertThat(manifest.size(), is(1));
+        Document document = parse(new File(directory, "telemetry-000000.xml"));
+        assertThat(document.getDocumentElement().getElementsByTagName("experiment").getLength(), is(3));
+    }
+
+    @Test
+    public void shouldCloseOldSegmentWhenItsLastRootEnds() throws Exception {
+        receiver.setMaxSegmentDuration(0);
+        final TelemetryInfo slow = new DefaultTelemetryInfo("slow");
+        ExecutorService otherThread = Executors.newSingleThreadExecutor();
+        try {
+            otherThread.submit(new Runnable() {
+                public void run() {
+                    receiver.beginTransmission(slow);
+                }
+            }).get();
+            // The old segment is too old, so this begins a new one, but the slow root keeps the old one open
+            writeExperiment(0);
+            assertThat(readManifest().size(), is(0));
+            otherThread.submit(new Runnable() {
+                public void run() {
+                    receiver.recordLong(slow, "size", 7);
+                    receiver.endTransmission(slow);
+                }
+            }).get();
+            List<String> manifest = readManifest();
+            assertThat(manifest.size(), is(1));
+            assertThat(manifest.get(0).split("\t")[0], is("telemetry-000000.xml"));
+            Document document = parse(new File(directory, "telemetry-000000.xml"));
+            assertThat(document.getDocumentElement().getElementsByTagName("slow").getLength(), is(1));
+            assertThat(document.getDocumentElement().getElementsByTagName("experiment").getLength(), is(0));
+        } finally {
+            otherThread.shutdown();
+        }
+        receiver.close();
+        assertThat(readManifest().get(1).split("\t")[0], is("telemetry-000001.xml"));
+    }
+
+    @Test
+    public void shouldListSegmentsInStartOrderWhenOldSegmentClosesLast() throws Exception {
+        receiver.setMaxSegmentDuration(0);
+        final TelemetryInfo slow = new DefaultTelemetryInfo("slow");
+        ExecutorService otherThread = Executors.newSingleThreadExecutor();
+        try {
+            otherThread.submit(new Runnable() {
+                public void run() {
+                    receiver.beginTransmission(slow);
+                }
+            }).get();
+            // Each of these starts a new segment, which closes the one before it apart from the slow root's
+            writeExperiment(0);
+            writeExperiment(1);
+            assertThat(readManifest().size(), is(0));
+            otherThread.submit(new Runnable() {
+                public void run() {
+                    receiver.endTransmission(slow);
+                }
+            }).get();
+        } finally {
+            otherThread.shutdown();
+        }
+        List<String> manifest = readManifest();
+        assertThat(manifest.size(), is(2));
+        assertThat(manifest.get(0).split("\t")[0], is("telemetry-000000.xml"));
+        assertThat(manifest.get(1).split("\t")[0], is("telemetry-000001.xml"));
+        receiver.close();
+        assertThat(readManifest().get(2).split("\t")[0], is("telemetry-000002.xml"));
+    }
+
+    private void writeExperiment(int index) {
+        TelemetryInfo experiment = new DefaultTelemetryInfo("experiment");
+        receiver.beginTransmission(experiment);
+        receiver.recordLong(experiment, "index", index);
+        TelemetryInfo justification = new DefaultTelemetryInfo("justification");
+        receiver.beginTransmission(justification);
+        receiver.recordLong(justification, "size", index);
+        receiver.endTransmission(justification);
+        receiver.endTransmission(experiment);
+    }
+
+    private List<String> readManifest() throws IOException {
+        File manifest = new File(directory, RollingTelemetryReceiver.MANIFEST_NAME);
+        if (!manifest.exists()) {
+            return Collections.emptyList();
+        }
+        return Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static Document parse(File file) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+    }
+}
@@ -0,0 +1,118 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SamplingTelemetryReceiverTestCase {
+
+    @Mock
+    private TelemetryReceiver delegate;
+
+    private SamplingTelemetryReceiver receiver;
+
+    private TelemetryInfo experiment;
+
+    @Before
+    public void setUp() {
+        receiver = new SamplingTelemetryReceiver(delegate);
+    }
+
+    @Test
+    public void shouldPassOnOneInNTransmissions() {
+        receiver.setSamplingRate("justification", 3);
+        record(new long[9]);
+        verify(delegate, times(7)).beginTransmission(any(TelemetryInfo.class));
+        verify(delegate, times(7)).endTransmission(any(TelemetryInfo.class));
+        verify(delegate).recordLong(any(TelemetryInfo.class), eq("index"), eq(0L));
+        verify(delegate).recordLong(any(TelemetryInfo.class), eq("index"), eq(3L));
+        verify(delegate).recordLong(any(TelemetryInfo.class), eq("index"), eq(6L));
+        verify(delegate, times(3)).recordLong(any(TelemetryInfo.class), eq("index"), anyLong());
+        verify(delegate, times(3)).recordMeasurement(any(TelemetryInfo.class), eq("nested"), eq("value"));
+    }
+
+    @Test
+    public void shouldEmitSlowestUnsampledTransmissionsFromReservoirAtRootEnd() {
+        receiver.setSamplingRate("justification", 0);
+        receiver.setReservoirSize("justification", 2);
+        long[] ids = record(new long[]{0, 50, 0, 100, 0});
+        verify(delegate, never()).recordLong(any(TelemetryInfo.class), eq("index"), anyLong());
+        verify(delegate, never()).recordMeasurement(any(TelemetryInfo.class), eq("nested"), eq("value"));
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).recordMeasurement(any(TelemetryInfo.class), eq(SamplingTelemetryReceiver.RESERVOIR_NAME_MEASUREMENT_NAME), eq("justification"));
+        inOrder.verify(delegate).recordLong(any(TelemetryInfo.class), eq(SamplingTelemetryReceiver.ID_MEASUREMENT_NAME), eq(ids[3]));
+        inOrder.verify(delegate).recordLong(any(TelemetryInfo.class), eq(SamplingTelemetryReceiver.ID_MEASUREMENT_NAME), eq(ids[1]));
+        inOrder.verify(delegate).endTransmission(experiment);
+        verify(delegate, times(2)).recordLong(any(TelemetryInfo.class), eq(SamplingTelemetryReceiver.ID_MEASUREMENT_NAME), anyLong());
+        verify(delegate, times(2)).recordLong(any(TelemetryInfo.class), eq(SamplingTelemetryReceiver.DURATION_MEASUREMENT_NAME), anyLong());
+        verify(delegate, times(2)).recordMeasurement(any(TelemetryInfo.class), eq(SamplingTelemetryReceiver.PATH_MEASUREMENT_NAME), eq("experiment/justification"));
+    }
+
+    @Test
+    public void shouldEmptyReservoirWhenItIsEmitted() {
+        receiver.setSamplingRate("justification", 0);
+        receiver.setReservoirSize("justification", 2);
+        record(new long[]{0, 0});
+        receiver.flushReservoirs();
+        verify(delegate, times(2)).recordLong(any(TelemetryInfo.class), eq(SamplingTelemetryReceiver.ID_MEASUREMENT_NAME), anyLong());
+    }
+
+    @Test
+    public void shouldEmitReservoirForTopLevelTransmissionsAfterInterval() {
+        receiver.setSamplingRate("justification", 0);
+        receiver.setReservoirSize("justification", 2);
+        receiver.setReservoirInterval(0, TimeUnit.MILLISECONDS);
+        TelemetryInfo justification = new DefaultTelemetryInfo("justification");
+        receiver.beginTransmission(justification);
+        receiver.endTransmission(justification);
+        verify(delegate).recordLong(any(TelemetryInfo.class), eq(SamplingTelemetryReceiver.ID_MEASUREMENT_NAME), eq(justification.getID()));
+        verify(delegate).recordMeasurement(any(TelemetryInfo.class), eq(SamplingTelemetryReceiver.PATH_MEASUREMENT_NAME), eq("justification"));
+    }
+
+    /**
+     * Records an experiment that contains a justification for each element of sleepTimes, each of which takes at
+     * least the specified number of milliseconds and contains a nested transmission.
+     * @return The IDs of the justifications.
+     */
+    private long[] record(long[] sleepTimes) {
+        long[] ids = new long[sleepTimes.length];
+        experiment = new DefaultTelemetryInfo("experiment");
+        receiver.beginTransmission(experiment);
+        for (int i = 0; i < sleepTimes.length; i++) {
+            TelemetryInfo justification = new DefaultTelemetryInfo("justification");
+            ids[i] = justification.getID();
+            receiver.beginTransmission(justification);
+            receiver.recordLong(justification, "index", i);
+            TelemetryInfo nested = new DefaultTelemetryInfo("nested");
+            receiver.beginTransmission(nested);
+            receiver.recordMeasurement(nested, "nested", "value");
+            receiver.endTransmission(nested);
+            sleep(sleepTimes[i]);
+            receiver.endTransmission(justification);
+        }
+        receiver.endTransmission(experiment);
+        return ids;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TelemetryAggregateIndexTestCase {
+
+    private DefaultTelemetryNode root;
+
+    private DefaultTelemetryNode child;
+
+    @Before
+    public void setUp() {
+        root = createTree();
+        child = (DefaultTelemetryNode) root.getChildren().get(0);
+    }
+
+    private static DefaultTelemetryNode createTree() {
+        DefaultTelemetryNode root = new DefaultTelemetryNode("tree");
+        root.setProperty("time", "10");
+        for (int i = 0; i < 2; i++) {
+            DefaultTelemetryNode child = new DefaultTelemetryNode("node");
+            child.setProperty("time", Integer.toString(i + 1));
+            child.setProperty("label", "not a number");
+            root.addChild(child);
+            DefaultTelemetryNode grandchild = new DefaultTelemetryNode("node");
+            grandchild.setProperty("time", Integer.toString(4 * (i + 1)));
+            child.addChild(grandchild);
+        }
+        return root;
+    }
+
+    @Test
+    public void shouldAggregateSubtrees() {
+        TelemetryAggregateIndex.build(root);
+        PropertyAggregate aggregate = root.getPropertyAggregate("time");
+        assertThat(aggregate.getCount(), is(5L));
+        assertThat(aggregate.getSum(), is(25.0));
+        assertThat(aggregate.getSumOfSquares(), is(185.0));
+        assertThat(root.getMaxPropertyValue("time"), is(10.0));
+        assertThat(root.getMinPropertyValue("time"), is(1.0));
+        assertThat(root.getMeanPropertyValue("time"), is(5.0));
+        assertThat(child.getMeanPropertyValue("time"), is(2.5));
+        assertThat(root.getMeanPropertyValue("label"), is(nullValue()));
+        assertThat(root.getPropertyAggregate("label").getCount(), is(0L));
+    }
+
+    @Test
+    public void shouldMatchWalkOfUnindexedTree() {
+        DefaultTelemetryNode unindexed = createTree();
+        TelemetryAggregateIndex.build(root);
+        assertThat(root.getMaxPropertyValue("time"), is(unindexed.getMaxPropertyValue("time")));
+        assertThat(root.getMinPropertyValue("time"), is(unindexed.getMinPropertyValue("time")));
+        assertThat(root.getMeanPropertyValue("time"), is(unindexed.getMeanPropertyValue("time")));
+    }
+
+    @Test
+    public void shouldInvalidateAncestorsWhenTreeChanges() {
+        TelemetryAggregateIndex.build(root);
+        child.setProperty("time", "100");
+        assertThat(root.getMaxPropertyValue("time"), is(100.0));
+        assertThat(child.getMaxPropertyValue("time"), is(100.0));
+    }
+
+    @Test
+    public void shouldIndexLazilyOnFirstQuery() {
+        assertThat(root.getAggregates(), is(nullValue()));
+        assertThat(child.getMaxPropertyValue("time"), is(4.0));
+        assertThat(child.getAggregates() != null, is(true));
+        assertThat(root.getAggregates(), is(nullValue()));
+        ((DefaultTelemetryNode) child.getChildren().get(0)).setProperty("time", "50");
+        assertThat(child.getAggregates(), is(nullValue()));
+        assertThat(root.getMaxPropertyValue("time"), is(50.0));
+        assertThat(child.getMaxPropertyValue("time"), is(50.0));
+    }
+
+    @Test
+    public void shouldReadWrittenIndex() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        TelemetryAggregateIndex.write(Collections.singletonList(root), bos);
+        DefaultTelemetryNode copy = createTree();
+        // Properties that are not in the index are not consulted once it has been read
+        copy.getProperties().clear();
+        TelemetryAggregateIndex.read(Collections.singletonList(copy), new ByteArrayInputStream(bos.toByteArray()));
+        assertThat(copy.getMaxPropertyValue("time"), is(10.0));
+        assertThat(copy.getChildren().get(1).getMeanPropertyValue("time"), is(5.0));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectIndexForDifferentTree() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        TelemetryAggregateIndex.write(Collections.singletonList(root), bos);
+        TelemetryNode other = new DefaultTelemetryNode("tree");
+        TelemetryAggregateIndex.read(Collections.singletonList(other), new ByteArrayInputStream(bos.toByteArray()));
+    }
+}
@@ -0,0 +1,165 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TelemetryScopeTestCase {
+
+    @Mock
+    private TelemetryReceiver receiver;
+
+    private TelemetryTransmitter transmitter;
+
+    @Before
+    public void setUp() {
+        transmitter = TelemetryTransmitter.getTransmitter();
+        transmitter.setTelemetryReceiver(receiver);
+    }
+
+    @After
+    public void tearDown() {
+        transmitter.setTelemetryReceiver(null);
+    }
+
+    @Test
+    public void shouldBeginAndEndTransmission() {
+        TelemetryScope outer = transmitter.open("outer");
+        TelemetryScope inner = transmitter.open("inner", false);
+        inner.close();
+        outer.close();
+        InOrder order = inOrder(receiver);
+        order.verify(receiver).beginTransmission(outer);
+        order.verify(receiver).beginTransmission(inner);
+        order.verify(receiver).recordTiming(inner, TelemetryScope.TIME_MEASUREMENT_NAME, inner.getTimer());
+        order.verify(receiver).endTransmission(inner);
+        order.verify(receiver).recordTiming(outer, TelemetryScope.TIME_MEASUREMENT_NAME, outer.getTimer());
+        order.verify(receiver).endTransmission(outer);
+        assertThat(outer.isAutoFlush(), is(true));
+        assertThat(inner.isAutoFlush(), is(false));
+    }
+
+    @Test
+    public void shouldAdvertiseClocksOfItsTimer() {
+        TelemetryScope scope = transmitter.open("scope");
+        try {
+            assertThat(scope.getClocks(), is((Set<TelemetryClock>) EnumSet.copyOf(scope.getTimer().getClocks())));
+        } finally {
+            scope.close();
+        }
+    }
+
+    @Test
+    public void shouldReuseScopeWithNewID() {
+        TelemetryScope first = transmitter.open("first");
+        long firstID = first.getID();
+        first.close();
+        TelemetryScope second = transmitter.open("second");
+        second.close();
+        assertThat(second, is(sameInstance(first)));
+        assertThat(second.getID(), is(not(firstID)));
+        assertThat(second.getName(), is("second"));
+    }
+
+    @Test
+    public void shouldNotTransmitWhenDisabled() {
+        transmitter.setTelemetryReceiver(null);
+        TelemetryScope scope = transmitter.open("disabled");
+        scope.close();
+        assertThat(scope.getTimer().isRunning(), is(false));
+        verifyZeroInteractions(receiver);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldThrowIllegalStateExceptionWhenClosedOutOfOrder() {
+        TelemetryScope outer = transmitter.open("outer");
+        TelemetryScope inner = transmitter.open("inner");
+        try {
+            outer.close();
+        } finally {
+            inner.close();
+            outer.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldThrowIllegalStateExceptionWhenClosedTwice() {
+        TelemetryScope scope = transmitter.open("scope");
+        scope.close();
+        scope.close();
+    }
+
+    @Test
+    public void shouldNotAllocateWhenScopesAreReused() {
+        assumeTrue(TelemetryClock.ALLOCATED_BYTES.isSupported());
+        transmitter.setTelemetryReceiver(new DiscardingTelemetryReceiver());
+        int scopeCount = 100000;
+        // Warm up the pool
+        openScopes(scopeCount);
+        long allocatedBefore = TelemetryClock.ALLOCATED_BYTES.read();
+        openScopes(scopeCount);
+        long allocated = TelemetryClock.ALLOCATED_BYTES.read() - allocatedBefore;
+        assertThat("Bytes allocated per scope: " + allocated / scopeCount, allocated / scopeCount < 8, is(true));
+    }
+
+    @Test
+    public void shouldGiveUniqueIDsToDefaultTelemetryInfos() {
+        TelemetryInfo first = new DefaultTelemetryInfo("info");
+        TelemetryInfo second = new DefaultTelemetryInfo("info");
+        assertThat(second.getID(), is(not(first.getID())));
+        assertThat(second.equals(first), is(false));
+    }
+
+    private void openScopes(int count) {
+        for (int i = 0; i < count; i++) {
+            try (TelemetryScope outer = transmitter.open("outer")) {
+                try (TelemetryScope inner = transmitter.open("inner")) {
+                    transmitter.recordLong(inner, "size", i);
+                }
+            }
+        }
+    }
+
+    /**
+     * A receiver that does nothing, but that is not a {@link NullTelemetryReceiver} so that telemetry is enabled.
+     */
+    private static class DiscardingTelemetryReceiver implements TelemetryReceiver {
+
+        public void beginTransmission(TelemetryInfo info) {
+        }
+
+        public void recordMeasurement(TelemetryInfo info, String propertyName, String value) {
+        }
+
+        public void recordLong(TelemetryInfo info, String propertyName, long value) {
+        }
+
+        public void recordObject(TelemetryInfo info, String namePrefix, String nameSuffix, Object object) {
+        }
+
+        public void recordTiming(TelemetryInfo info, String name, TelemetryTimer telemetryTimer) {
+        }
+
+        public void recordException(TelemetryInfo info, Throwable exception) {
+        }
+
+        public void endTransmission(TelemetryInfo info) {
+        }
+    }
+}
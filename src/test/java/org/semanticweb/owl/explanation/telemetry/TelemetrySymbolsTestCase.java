@@ -0,0 +1,73 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class TelemetrySymbolsTestCase {
+
+    @Test
+    public void shouldGiveSameSymbolToSameName() {
+        int symbol = TelemetrySymbols.getSymbol("symbols-test-name");
+        assertThat(TelemetrySymbols.getSymbol(new String("symbols-test-name")), is(symbol));
+        assertThat(TelemetrySymbols.getName(symbol), is("symbols-test-name"));
+    }
+
+    @Test
+    public void shouldGiveDenseSymbolsToNewNames() {
+        int first = TelemetrySymbols.getSymbol("symbols-test-first");
+        int second = TelemetrySymbols.getSymbol("symbols-test-second");
+        assertThat(second, is(not(first)));
+        assertThat(first < TelemetrySymbols.getSymbolCount(), is(true));
+        assertThat(second < TelemetrySymbols.getSymbolCount(), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentExceptionForUnknownSymbol() {
+        TelemetrySymbols.getName(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void shouldGiveNameSymbolOfTelemetryInfo() {
+        TelemetryInfo info = new DefaultTelemetryInfo("symbols-test-info");
+        assertThat(info.getNameSymbol(), is(TelemetrySymbols.getSymbol("symbols-test-info")));
+    }
+
+    @Test
+    public void shouldGiveOneSymbolToNameAddedConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+            for (int thread = 0; thread < 4; thread++) {
+                results.add(executor.submit(new Callable<int[]>() {
+                    public int[] call() {
+                        int[] symbols = new int[1000];
+                        for (int i = 0; i < symbols.length; i++) {
+                            symbols[i] = TelemetrySymbols.getSymbol("symbols-test-concurrent-" + i);
+                        }
+                        return symbols;
+                    }
+                }));
+            }
+            int[] expected = results.get(0).get();
+            for (Future<int[]> result : results) {
+                int[] symbols = result.get();
+                for (int i = 0; i < symbols.length; i++) {
+                    assertThat(symbols[i], is(expected[i]));
+                    assertThat(TelemetrySymbols.getName(symbols[i]), is("symbols-test-concurrent-" + i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TelemetryTimerTestCase {
+
+    private static final long MILLISECOND = 1000000;
+
+    private static final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void shouldExcludeOverheadChargedWhilstRunning() {
+        TelemetryTimer timer = new TelemetryTimer();
+        timer.start();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        // Nested brackets are only charged once
+        TelemetryOverhead.enter().exit();
+        spin(200);
+        overhead.exit();
+        timer.stop();
+        assertThat(timer.getEllapsedTime() < 100 * MILLISECOND, is(true));
+    }
+
+    @Test
+    public void shouldNotExcludeOverheadChargedWhilstStopped() {
+        TelemetryTimer timer = new TelemetryTimer();
+        timer.start();
+        spin(200);
+        timer.stop();
+        TelemetryOverhead overhead = TelemetryOverhead.enter();
+        spin(200);
+        overhead.exit();
+        timer.start();
+        timer.stop();
+        assertThat(timer.getEllapsedTime() > 100 * MILLISECOND, is(true));
+        assertThat(timer.getEllapsedTime() < 300 * MILLISECOND, is(true));
+    }
+
+    @Test
+    public void shouldMeasureSeveralClocks() {
+        TelemetryTimer timer = new TelemetryTimer(TelemetryClock.WALL, TelemetryClock.CPU, TelemetryClock.USER);
+        assertThat(timer.getClocks(), is(Arrays.asList(TelemetryClock.WALL, TelemetryClock.CPU, TelemetryClock.USER)));
+        timer.start();
+        spin(50);
+        timer.stop();
+        assertThat(timer.getEllapsedTime(), is(timer.getEllapsedTime(TelemetryClock.WALL)));
+        assertThat(timer.getEllapsedTime(TelemetryClock.WALL) >= 50 * MILLISECOND, is(true));
+        assertThat(timer.getEllapsedTime(TelemetryClock.CPU) >= timer.getEllapsedTime(TelemetryClock.USER), is(true));
+    }
+
+    @Test
+    public void shouldDefaultToUserTime() {
+        assertThat(new TelemetryTimer().getClocks(), is(Arrays.asList(TelemetryClock.USER)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectClockThatIsNotMeasured() {
+        new TelemetryTimer(TelemetryClock.WALL).getEllapsedTime(TelemetryClock.CPU);
+    }
+
+    @Test
+    public void shouldReportSelectedClocksAsSeparateMeasurements() throws IOException {
+        StringWriter writer = new StringWriter();
+        XMLTelemetryReceiver receiver = new XMLTelemetryReceiver(writer);
+        TelemetryTimer timer = new TelemetryTimer(TelemetryClock.WALL, TelemetryClock.CPU, TelemetryClock.USER);
+        TelemetryInfo info = new DefaultTelemetryInfo("test", true, EnumSet.of(TelemetryClock.WALL, TelemetryClock.USER), timer);
+        receiver.beginTransmission(info);
+        timer.start();
+        timer.stop();
+        receiver.recordTiming(info, "time", timer);
+        receiver.endTransmission(info);
+        receiver.endTransmission(new DefaultTelemetryInfo("end"));
+        TelemetryNode node = new XMLTelemetryReader(new ByteArrayInputStream(writer.toString().getBytes("UTF-8")), false).readNext();
+        assertThat(node.hasPropertyValue("time"), is(true));
+        assertThat(node.hasPropertyValue("time.user"), is(true));
+        assertThat(node.hasPropertyValue("time.cpu"), is(false));
+    }
+
+    /**
+     * Uses at least the specified amount of user time on the current thread.
+     */
+    private static void spin(long millis) {
+        long end = bean.getCurrentThreadUserTime() + millis * MILLISECOND;
+        while (bean.getCurrentThreadUserTime() < end) {
+            Thread.yield();
+        }
+    }
+}
@@ -1,14 +1,22 @@
 package org.semanticweb.owl.explanation.telemetry;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Matthew Horridge, Stanford University, Bio-Medical Informatics Research Group, Date: 04/06/2014
@@ -31,6 +39,11 @@ public class TelemetryTransmitterTestCase {
         transmitter.setTelemetryReceiver(receiver);
     }
 
+    @After
+    public void tearDown() {
+        transmitter.setTelemetryReceiver(null);
+    }
+
     @Test
     public void shouldCallBeginTransmission() {
         transmitter.setTelemetryReceiver(receiver);
@@ -57,14 +70,44 @@ public class TelemetryTransmitterTestCase {
         String name = "name";
         Integer value = 3;
         transmitter.recordMeasurement(info, name, value);
-        verify(receiver).recordMeasurement(info, name, "3");
+        verify(receiver).recordLong(info, name, 3L);
+    }
+
+    @Test
+    public void shouldCallRecordLongWithPrimitiveValue() {
+        String name = "name";
+        transmitter.recordMeasurement(info, name, 3L);
+        verify(receiver).recordLong(info, name, 3L);
+    }
+
+    @Test
+    public void shouldCallRecordDoubleWithDoubleValue() {
+        String name = "name";
+        Double value = 0.5;
+        transmitter.recordMeasurement(info, name, value);
+        verify(receiver).recordDouble(info, name, 0.5);
+    }
+
+    @Test
+    public void shouldFormatPrimitiveFloatValueAsFloat() {
+        String name = "name";
+        transmitter.recordMeasurement(info, name, 0.1f);
+        verify(receiver).recordMeasurement(info, name, "0.1");
+    }
+
+    @Test
+    public void shouldFormatFloatValueAsFloat() {
+        String name = "name";
+        Float value = 0.1f;
+        transmitter.recordMeasurement(info, name, value);
+        verify(receiver).recordMeasurement(info, name, "0.1");
     }
 
     @Test
     public void shouldCallRecordMeasurementWithBooleanValue() {
         String name = "name";
         transmitter.recordMeasurement(info, name, true);
-        verify(receiver).recordMeasurement(info, name, "true");
+        verify(receiver).recordBoolean(info, name, true);
     }
 
     @Test
@@ -89,4 +132,91 @@ public class TelemetryTransmitterTestCase {
         verify(receiver).recordObject(info, "prefix", "suffix", object);
     }
 
+    @Test
+    public void shouldBeEnabledWithReceiver() {
+        when(receiver.isEnabled("name")).thenReturn(true);
+        assertThat(transmitter.isEnabled(), is(true));
+        assertThat(transmitter.isEnabled("name"), is(true));
+    }
+
+    @Test
+    public void shouldBeDisabledWithoutReceiver() {
+        transmitter.setTelemetryReceiver(null);
+        assertThat(transmitter.isEnabled(), is(false));
+        assertThat(transmitter.isEnabled("name"), is(false));
+    }
+
+    @Test
+    public void shouldBeDisabledWithNullTelemetryReceiver() {
+        transmitter.setTelemetryReceiver(new NullTelemetryReceiver());
+        assertThat(transmitter.isEnabled(), is(false));
+    }
+
+    @Test
+    public void shouldAskReceiverWhetherNameIsEnabled() {
+        when(receiver.isEnabled("name")).thenReturn(false);
+        assertThat(transmitter.isEnabled("name"), is(false));
+    }
+
+    @Test
+    public void shouldCallRecordLongWithSuppliedValue() {
+        transmitter.recordLong(info, "name", () -> 3L);
+        verify(receiver).recordLong(info, "name", 3L);
+    }
+
+    @Test
+    public void shouldCallRecordDoubleWithSuppliedNumber() {
+        transmitter.recordMeasurement(info, "name", () -> 0.5);
+        verify(receiver).recordDouble(info, "name", 0.5);
+    }
+
+    @Test
+    public void shouldCallRecordMeasurementWithSuppliedObject() {
+        transmitter.recordMeasurement(info, "name", () -> new StringBuilder("value"));
+        verify(receiver).recordMeasurement(info, "name", "value");
+    }
+
+    @Test
+    public void shouldNotCallSuppliersWhenDisabled() {
+        transmitter.setTelemetryReceiver(null);
+        LongSupplier longSupplier = mock(LongSupplier.class);
+        Supplier<?> supplier = mock(Supplier.class);
+        transmitter.recordLong(info, "name", longSupplier);
+        transmitter.recordMeasurement(info, "name", supplier);
+        verifyZeroInteractions(longSupplier, supplier);
+    }
+
+    @Test
+    public void shouldNotPassAnythingOnWhenDisabled() {
+        NullTelemetryReceiver nullReceiver = mock(NullTelemetryReceiver.class);
+        transmitter.setTelemetryReceiver(nullReceiver);
+        TelemetryTimer timer = new TelemetryTimer();
+        transmitter.beginTransmission(info);
+        transmitter.recordMeasurement(info, "name", "value");
+        transmitter.recordMeasurement(info, "name", 1L);
+        transmitter.recordMeasurement(info, "name", 1.0f);
+        transmitter.recordMeasurement(info, "name", 1.0);
+        transmitter.recordMeasurement(info, "name", true);
+        transmitter.recordLong(info, "name", 1L);
+        transmitter.recordLong(info, 0, 1L);
+        transmitter.recordDouble(info, "name", 1.0);
+        transmitter.recordDouble(info, 0, 1.0);
+        transmitter.recordBoolean(info, "name", true);
+        transmitter.recordBoolean(info, 0, true);
+        transmitter.recordException(info, new RuntimeException());
+        transmitter.recordObject(info, "prefix", "suffix", "object");
+        transmitter.recordTiming(info, "name", timer);
+        transmitter.recordTiming(info, 0, timer);
+        transmitter.endTransmission(info);
+        verifyZeroInteractions(nullReceiver);
+    }
+
+    @Test
+    public void shouldBeEnabledAgainWhenReceiverIsSetAfterDisabling() {
+        transmitter.setTelemetryReceiver(null);
+        transmitter.setTelemetryReceiver(receiver);
+        assertThat(transmitter.isEnabled(), is(true));
+        transmitter.recordLong(info, "name", 2L);
+        verify(receiver).recordLong(info, "name", 2L);
+    }
 }
@@ -2,9 +2,12 @@ package org.semanticweb.owl.explanation.telemetry;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.io.Writer;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -42,4 +45,133 @@ public class TelemetryXMLWriteTestCase {
         writer.writeEndElement();
         assertThat(baseWriter.toString().trim(), is("<experiment name=\"ExperimentName\"/>"));
     }
+
+    @Test
+    public void shouldEscapeAttributeValuesAndText() throws IOException {
+        writer.writeStartElement("experiment");
+        writer.writeAttribute("name", "<a & 'b'>\"");
+        writer.writeTextContent("x < y");
+        writer.writeEndElement();
+        assertThat(baseWriter.toString().trim(),
+                is("<experiment name=\"&lt;a &amp; &apos;b&apos;&gt;&quot;\">x &lt; y</experiment>"));
+    }
+
+    @Test
+    public void shouldReplaceAttributeWithSameName() throws IOException {
+        writer.writeStartElement("experiment");
+        writer.writeAttribute("name", "first");
+        writer.writeAttribute("name", "second");
+        writer.writeEndElement();
+        assertThat(baseWriter.toString().trim(), is("<experiment name=\"second\"/>"));
+    }
+
+    @Test
+    public void shouldReuseElementFrames() throws IOException {
+        writer.writeStartElement("outer");
+        writer.writeStartElement("measurement");
+        writer.writeAttribute("name", "a");
+        writer.writeAttribute("value", "1");
+        writer.writeEndElement();
+        writer.writeStartElement("measurement");
+        writer.writeAttribute("name", "b");
+        writer.writeEndElement();
+        writer.writeEndElement();
+        assertThat(baseWriter.toString().replaceAll("\\s+", " ").trim(),
+                is("<outer> <measurement name=\"a\" value=\"1\"/> <measurement name=\"b\"/> </outer>"));
+    }
+
+    @Test
+    public void shouldNotAllocateWhenWritingMeasurements() throws IOException {
+        assumeTrue(TelemetryClock.ALLOCATED_BYTES.isSupported());
+        TelemetryXMLWriter discardingWriter = new TelemetryXMLWriter(new DiscardingWriter(), nsm, "http://base.com/stuff");
+        discardingWriter.writeStartElement("experiment");
+        int measurementCount = 100000;
+        // Warm up the name cache and the element frames
+        writeMeasurements(discardingWriter, measurementCount);
+        long allocatedBefore = TelemetryClock.ALLOCATED_BYTES.read();
+        writeMeasurements(discardingWriter, measurementCount);
+        long allocated = TelemetryClock.ALLOCATED_BYTES.read() - allocatedBefore;
+        assertThat("Bytes allocated per measurement: " + allocated / measurementCount, allocated / measurementCount < 8, is(true));
+    }
+
+    @Test
+    public void shouldNotAllocateWhenWritingStreamedObjects() throws IOException {
+        assumeTrue(TelemetryClock.ALLOCATED_BYTES.isSupported());
+        TelemetryXMLWriter discardingWriter = new TelemetryXMLWriter(new DiscardingWriter(), nsm, "http://base.com/stuff");
+        discardingWriter.writeStartElement("experiment");
+        TelemetryObject object = new StreamedObject();
+        int objectCount = 100000;
+        writeObjects(discardingWriter, object, objectCount);
+        long allocatedBefore = TelemetryClock.ALLOCATED_BYTES.read();
+        writeObjects(discardingWriter, object, objectCount);
+        long allocated = TelemetryClock.ALLOCATED_BYTES.read() - allocatedBefore;
+        assertThat("Bytes allocated per object: " + allocated / objectCount, allocated / objectCount < 8, is(true));
+    }
+
+    static void writeObjects(TelemetryXMLWriter writer, TelemetryObject object, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            writer.writeStartElement("object");
+            writer.writeObject(object);
+            writer.writeEndElement();
+        }
+    }
+
+    static void writeMeasurements(TelemetryXMLWriter writer, int count) {
+        for (int i = 0; i < count; i++) {
+            writer.writeStartElement("measurement");
+            writer.writeAttribute("name", "size");
+            writer.writeAttribute("value", "a < b");
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * An object that is streamed as a small XML tree, leaving one element open.
+     */
+    static class StreamedObject implements TelemetryObject {
+
+        public String getPreferredSerialisedName() {
+            return "object";
+        }
+
+        public boolean isSerialisedAsXML() {
+            return true;
+        }
+
+        public void serialise(OutputStream outputStream) {
+        }
+
+        public void serialise(TelemetryObjectXMLWriter writer) {
+            writer.startElement("axiom");
+            writer.writeAttribute("type", "SubClassOf");
+            writer.startElement("class");
+            writer.writeTextContent("A");
+            writer.endElement();
+            writer.startElement("class");
+            writer.writeTextContent("B");
+        }
+    }
+
+    static class DiscardingWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(int c) {
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
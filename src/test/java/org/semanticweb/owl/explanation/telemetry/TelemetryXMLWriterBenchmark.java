@@ -0,0 +1,66 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.IOException;
+
+import org.semanticweb.owlapi.rdf.rdfxml.renderer.XMLWriterNamespaceManager;
+
+/**
+ * Measures the time and the memory that {@link TelemetryXMLWriter} takes to write measurements and streamed objects
+ * into a writer that discards its output.  Each case is warmed up and then run for several rounds, and the time and
+ * bytes allocated per operation are printed for each round.  Run its main method with the test classpath; it is
+ * not a test case, so it is not run by the build.
+ */
+public class TelemetryXMLWriterBenchmark {
+
+    private static final int OPERATIONS = 1000000;
+
+    private static final int WARM_UP_ROUNDS = 5;
+
+    private static final int ROUNDS = 5;
+
+    private interface Case {
+
+        void run(TelemetryXMLWriter writer, int count) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        run("string measurement", new Case() {
+            public void run(TelemetryXMLWriter writer, int count) {
+                TelemetryXMLWriteTestCase.writeMeasurements(writer, count);
+            }
+        });
+        run("long measurement", new Case() {
+            public void run(TelemetryXMLWriter writer, int count) {
+                for (int i = 0; i < count; i++) {
+                    writer.writeStartElement("measurement");
+                    writer.writeAttribute("name", "size");
+                    writer.writeLongAttribute("value", i);
+                    writer.writeEndElement();
+                }
+            }
+        });
+        final TelemetryObject object = new TelemetryXMLWriteTestCase.StreamedObject();
+        run("streamed object", new Case() {
+            public void run(TelemetryXMLWriter writer, int count) throws IOException {
+                TelemetryXMLWriteTestCase.writeObjects(writer, object, count);
+            }
+        });
+    }
+
+    private static void run(String name, Case benchmarkCase) throws IOException {
+        XMLWriterNamespaceManager nsm = new XMLWriterNamespaceManager("http://base.com/stuff/");
+        TelemetryXMLWriter writer = new TelemetryXMLWriter(new TelemetryXMLWriteTestCase.DiscardingWriter(), nsm, "http://base.com/stuff");
+        writer.writeStartElement("experiment");
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            benchmarkCase.run(writer, OPERATIONS);
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            long allocatedBefore = TelemetryClock.ALLOCATED_BYTES.read();
+            long start = System.nanoTime();
+            benchmarkCase.run(writer, OPERATIONS);
+            long time = System.nanoTime() - start;
+            long allocated = TelemetryClock.ALLOCATED_BYTES.read() - allocatedBefore;
+            System.out.printf("%-20s %8.1f ns/op %8.2f bytes/op%n", name, (double) time / OPERATIONS, (double) allocated / OPERATIONS);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class XMLTelemetryReaderTestCase {
+
+    private StringWriter baseWriter;
+
+    private XMLTelemetryReceiver receiver;
+
+    @Before
+    public void setUp() {
+        baseWriter = new StringWriter();
+        receiver = new XMLTelemetryReceiver(baseWriter);
+        for (int i = 0; i < 2; i++) {
+            TelemetryInfo experiment = new DefaultTelemetryInfo("experiment");
+            receiver.beginTransmission(experiment);
+            receiver.recordLong(experiment, "index", i);
+            TelemetryInfo justification = new DefaultTelemetryInfo("justification");
+            receiver.beginTransmission(justification);
+            receiver.recordMeasurement(justification, "size", "3");
+            receiver.recordObject(justification, "text", "", "a < b");
+            receiver.recordObject(justification, "xml", "", new XMLObject());
+            receiver.endTransmission(justification);
+            receiver.endTransmission(experiment);
+        }
+        receiver.endTransmission(new DefaultTelemetryInfo("end"));
+    }
+
+    @Test
+    public void shouldReadTopLevelTransmissionsOneAtATime() throws IOException {
+        XMLTelemetryReader reader = createReader(false);
+        for (int i = 0; i < 2; i++) {
+            TelemetryNode experiment = reader.readNext();
+            assertThat(experiment.getName(), is("experiment"));
+            assertThat(experiment.getPropertyValueAsInt("index"), is(i));
+            TelemetryNode justification = experiment.getChildren().get(0);
+            assertThat(justification.getName(), is("justification"));
+            assertThat(justification.getParent(), is(experiment));
+            assertThat(justification.getPropertyValueAsInt("size"), is(3));
+            assertThat(justification.getObjectNames(), is(Collections.<String>emptyList()));
+        }
+        assertThat(reader.readNext(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReadObjectsWhenRequested() throws IOException {
+        XMLTelemetryReader reader = createReader(true);
+        TelemetryNode justification = reader.readNext().getChildren().get(0);
+        assertThat(justification.getObjectNames(), is(Arrays.asList("text", "xml")));
+        assertThat(readFully(justification.getInputStream("text")), is("a < b"));
+        assertThat(readFully(justification.getInputStream("xml")), is("<axiom iri=\"A\">B</axiom>"));
+    }
+
+    private XMLTelemetryReader createReader(boolean readObjects) throws IOException {
+        return new XMLTelemetryReader(new ByteArrayInputStream(baseWriter.toString().getBytes("UTF-8")), readObjects);
+    }
+
+    private static String readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int b;
+        while ((b = inputStream.read()) != -1) {
+            bos.write(b);
+        }
+        return bos.toString("UTF-8");
+    }
+
+    private static class XMLObject implements TelemetryObject {
+
+        public String getPreferredSerialisedName() {
+            return "xml";
+        }
+
+        public void serialise(OutputStream outputStream) throws IOException {
+            outputStream.write("<axiom iri=\"A\">B</axiom>".getBytes("UTF-8"));
+        }
+
+        public boolean isSerialisedAsXML() {
+            return true;
+        }
+    }
+}
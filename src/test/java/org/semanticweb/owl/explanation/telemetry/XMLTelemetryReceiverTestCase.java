@@ -0,0 +1,294 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.FilterWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class XMLTelemetryReceiverTestCase {
+
+    private StringWriter baseWriter;
+
+    private XMLTelemetryReceiver receiver;
+
+    @Before
+    public void setUp() {
+        baseWriter = new StringWriter();
+        receiver = new XMLTelemetryReceiver(baseWriter);
+    }
+
+    @Test
+    public void shouldWriteNestedTransmissions() throws Exception {
+        TelemetryInfo outer = new DefaultTelemetryInfo("outer");
+        TelemetryInfo inner = new DefaultTelemetryInfo("inner");
+        receiver.beginTransmission(outer);
+        receiver.beginTransmission(inner);
+        receiver.recordMeasurement(inner, "name", "value");
+        receiver.endTransmission(inner);
+        receiver.endTransmission(outer);
+        Document document = endDocument();
+        Element outerElement = (Element) document.getDocumentElement().getElementsByTagName("outer").item(0);
+        Element measurement = (Element) outerElement.getElementsByTagName("measurement").item(0);
+        assertThat(measurement.getParentNode().getNodeName(), is("inner"));
+        assertThat(measurement.getAttribute("value"), is("value"));
+    }
+
+    @Test
+    public void shouldWritePrimitiveMeasurements() throws Exception {
+        TelemetryInfo info = new DefaultTelemetryInfo("justification");
+        receiver.beginTransmission(info);
+        receiver.recordLong(info, "size", -1234567890123L);
+        receiver.recordDouble(info, "ratio", 0.125);
+        receiver.recordBoolean(info, "entailed", true);
+        receiver.recordLong(info, "count", 1);
+        receiver.recordLong(info, "count", 2);
+        receiver.endTransmission(info);
+        Document document = endDocument();
+        NodeList measurements = document.getDocumentElement().getElementsByTagName("measurement");
+        assertThat(measurements.getLength(), is(5));
+        assertThat(((Element) measurements.item(0)).getAttribute("value"), is("-1234567890123"));
+        assertThat(((Element) measurements.item(1)).getAttribute("value"), is("0.125"));
+        assertThat(((Element) measurements.item(2)).getAttribute("value"), is("true"));
+        assertThat(((Element) measurements.item(4)).getAttribute("value"), is("2"));
+    }
+
+    @Test
+    public void shouldKeepNestingOfConcurrentTransmissions() throws Exception {
+        final int threadCount = 8;
+        final int transmissionsPerThread = 200;
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < transmissionsPerThread; i++) {
+                        TelemetryInfo root = new DefaultTelemetryInfo("justification");
+                        TelemetryInfo child = new DefaultTelemetryInfo("check");
+                        receiver.beginTransmission(root);
+                        receiver.beginTransmission(child);
+                        receiver.recordMeasurement(child, "size", Integer.toString(i));
+                        receiver.endTransmission(child);
+                        receiver.endTransmission(root);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Document document = endDocument();
+        NodeList roots = document.getDocumentElement().getElementsByTagName("justification");
+        assertThat(roots.getLength(), is(threadCount * transmissionsPerThread));
+        for (int i = 0; i < roots.getLength(); i++) {
+            Element root = (Element) roots.item(i);
+            assertThat(root.getParentNode(), is((Node) document.getDocumentElement()));
+            assertThat(root.getElementsByTagName("check").getLength(), is(1));
+        }
+    }
+
+    @Test
+    public void shouldAppendWorkerSubtreesWithoutWaitingForOpenRoot() throws Exception {
+        receiver.setMaxBufferedSubtreeChars(0);
+        TelemetryInfo experiments = new DefaultTelemetryInfo("experiments-run");
+        TelemetryInfo experiment = new DefaultTelemetryInfo("experiment");
+        receiver.beginTransmission(experiments);
+        receiver.beginTransmission(experiment);
+        final int workerCount = 4;
+        final int rootsPerWorker = 50;
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int w = 0; w < workerCount; w++) {
+            workers.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < rootsPerWorker; i++) {
+                        TelemetryInfo root = new DefaultTelemetryInfo("justification");
+                        TelemetryInfo child = new DefaultTelemetryInfo("check");
+                        receiver.beginTransmission(root);
+                        receiver.beginTransmission(child);
+                        receiver.recordMeasurement(child, "size", Integer.toString(i));
+                        receiver.endTransmission(child);
+                        receiver.endTransmission(root);
+                    }
+                }
+            });
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        receiver.flush();
+        // The workers' subtrees are in the document although the first root is still open
+        assertThat(baseWriter.toString().contains("justification"), is(true));
+        assertThat(baseWriter.toString().contains("experiments-run"), is(false));
+        receiver.recordMeasurement(experiment, "name", "value");
+        receiver.endTransmission(experiment);
+        receiver.endTransmission(experiments);
+        Document document = endDocument();
+        NodeList roots = document.getDocumentElement().getElementsByTagName("justification");
+        assertThat(roots.getLength(), is(workerCount * rootsPerWorker));
+        for (int i = 0; i < roots.getLength(); i++) {
+            Element root = (Element) roots.item(i);
+            assertThat(root.getParentNode(), is((Node) document.getDocumentElement()));
+            NodeList checks = root.getElementsByTagName("check");
+            assertThat(checks.getLength(), is(1));
+            assertThat(((Element) checks.item(0)).getElementsByTagName("measurement").getLength(), is(1));
+        }
+        Element run = (Element) document.getDocumentElement().getElementsByTagName("experiments-run").item(0);
+        assertThat(run.getParentNode(), is((Node) document.getDocumentElement()));
+        Element experimentElement = (Element) run.getElementsByTagName("experiment").item(0);
+        assertThat(experimentElement.getParentNode(), is((Node) run));
+        assertThat(((Element) experimentElement.getElementsByTagName("measurement").item(0)).getAttribute("value"), is("value"));
+        assertThat(run.getElementsByTagName("justification").getLength(), is(0));
+    }
+
+    @Test
+    public void shouldStreamObjectsThatAreStreamedAsXML() throws Exception {
+        TelemetryInfo info = new DefaultTelemetryInfo("outer");
+        receiver.beginTransmission(info);
+        receiver.recordObject(info, "axiom", ".xml", new StreamedObject());
+        receiver.endTransmission(info);
+        Document document = endDocument();
+        Element object = (Element) document.getDocumentElement().getElementsByTagName("object").item(0);
+        assertThat(object.getAttribute("name"), is("axiom"));
+        Element axiom = (Element) object.getElementsByTagName("axiom").item(0);
+        assertThat(axiom.getAttribute("kind"), is("subclass"));
+        assertThat(axiom.getElementsByTagName("class").getLength(), is(2));
+        assertThat(axiom.getElementsByTagName("class").item(1).getTextContent(), is("B & C"));
+        // The element that the object left open is closed inside the object element
+        assertThat(axiom.getParentNode(), is((Node) object));
+    }
+
+    private static class StreamedObject implements TelemetryObject {
+
+        public String getPreferredSerialisedName() {
+            return "axiom";
+        }
+
+        public void serialise(OutputStream outputStream) throws IOException {
+            throw new IOException("Should have been streamed");
+        }
+
+        public boolean isSerialisedAsXML() {
+            return true;
+        }
+
+        @Override
+        public boolean isStreamedAsXML() {
+            return true;
+        }
+
+        @Override
+        public void serialise(TelemetryObjectXMLWriter writer) throws IOException {
+            writer.startElement("axiom");
+            writer.writeAttribute("kind", "subclass");
+            writer.startElement("class");
+            writer.writeTextContent("A");
+            writer.endElement();
+            writer.startElement("class");
+            writer.writeTextContent("B & C");
+            // Left open on purpose
+        }
+    }
+
+    @Test
+    public void shouldWriteAttributesAndTextBeforeFirstElementToObjectElement() throws Exception {
+        TelemetryInfo info = new DefaultTelemetryInfo("outer");
+        receiver.beginTransmission(info);
+        receiver.recordObject(info, "label", ".txt", new StreamedObject() {
+            @Override
+            public void serialise(TelemetryObjectXMLWriter writer) throws IOException {
+                writer.writeAttribute("lang", "en");
+                writer.writeTextContent("A label");
+            }
+        });
+        receiver.endTransmission(info);
+        Document document = endDocument();
+        Element object = (Element) document.getDocumentElement().getElementsByTagName("object").item(0);
+        assertThat(object.getAttribute("name"), is("label"));
+        assertThat(object.getAttribute("lang"), is("en"));
+        assertThat(object.getTextContent(), is("A label"));
+    }
+
+    @Test
+    public void shouldStreamObjectAsCDataByDefault() throws Exception {
+        TelemetryInfo info = new DefaultTelemetryInfo("outer");
+        receiver.beginTransmission(info);
+        receiver.recordObject(info, "text", ".txt", new TelemetryObject() {
+            public String getPreferredSerialisedName() {
+                return "text";
+            }
+
+            public void serialise(OutputStream outputStream) throws IOException {
+                outputStream.write("a < b".getBytes());
+            }
+
+            public boolean isSerialisedAsXML() {
+                return false;
+            }
+
+            @Override
+            public boolean isStreamedAsXML() {
+                return true;
+            }
+        });
+        receiver.endTransmission(info);
+        Document document = endDocument();
+        Element object = (Element) document.getDocumentElement().getElementsByTagName("object").item(0);
+        assertThat(object.getTextContent(), is("a < b"));
+    }
+
+    @Test
+    public void shouldOnlyFlushWhenAutoFlushedRootEnds() throws Exception {
+        final AtomicInteger flushes = new AtomicInteger();
+        Writer countingWriter = new FilterWriter(new StringWriter()) {
+            @Override
+            public void flush() throws IOException {
+                flushes.incrementAndGet();
+                super.flush();
+            }
+        };
+        receiver = new XMLTelemetryReceiver(countingWriter);
+        TelemetryInfo buffered = new DefaultTelemetryInfo("buffered", false);
+        receiver.beginTransmission(buffered);
+        receiver.endTransmission(buffered);
+        assertThat(flushes.get(), is(0));
+        TelemetryInfo root = new DefaultTelemetryInfo("root", false);
+        TelemetryInfo flushed = new DefaultTelemetryInfo("flushed", true);
+        receiver.beginTransmission(root);
+        receiver.beginTransmission(flushed);
+        receiver.endTransmission(flushed);
+        assertThat(flushes.get(), is(0));
+        receiver.endTransmission(root);
+        assertThat(flushes.get(), is(1));
+    }
+
+    private Document endDocument() throws Exception {
+        // An unbalanced end at the top level ends the document
+        receiver.endTransmission(new DefaultTelemetryInfo("end"));
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new InputSource(new StringReader(baseWriter.toString())));
+    }
+}
@@ -0,0 +1,106 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ZipTelemetryArchiveTestCase {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("telemetry", ".zip");
+        ZipTelemetryReceiver receiver = new ZipTelemetryReceiver(file);
+        for (int i = 0; i < 2; i++) {
+            TelemetryInfo experiment = new DefaultTelemetryInfo("experiment");
+            receiver.beginTransmission(experiment);
+            receiver.recordLong(experiment, "index", i);
+            for (int j = 0; j < 3; j++) {
+                TelemetryInfo justification = new DefaultTelemetryInfo("justification");
+                receiver.beginTransmission(justification);
+                receiver.recordLong(justification, "size", j);
+                receiver.recordObject(justification, "axioms", ".txt", "A SubClassOf B");
+                receiver.endTransmission(justification);
+            }
+            receiver.endTransmission(experiment);
+        }
+        receiver.close();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".aggregates").delete();
+    }
+
+    @Test
+    public void shouldBuildTreeFromEntryNames() throws IOException {
+        ZipTelemetryArchive archive = new ZipTelemetryArchive(file);
+        try {
+            assertThat(archive.getRoots().size(), is(2));
+            TelemetryNode experiment = archive.getRoots().get(1);
+            assertThat(experiment.getName(), is("experiment"));
+            assertThat(experiment.getParent(), is(nullValue()));
+            assertThat(experiment.getPropertyValueAsInt("index"), is(1));
+            assertThat(experiment.getChildren().size(), is(3));
+            TelemetryNode justification = experiment.getChildren().get(2);
+            assertThat(justification.getName(), is("justification"));
+            assertThat(justification.getParent(), is(experiment));
+            assertThat(justification.getPropertyValueAsInt("size"), is(2));
+            assertThat(justification.getObjectNames(), is(Arrays.asList("axioms.txt")));
+            assertThat(readFully(justification.getInputStream("axioms.txt")), is("A SubClassOf B"));
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void shouldFindNodeByEntryName() throws IOException {
+        ZipTelemetryArchive archive = new ZipTelemetryArchive(file);
+        try {
+            ZipTelemetryNode node = archive.getNode("telemetry/experiment.0/justification.1");
+            assertThat(node.getEntryName(), is("telemetry/experiment.0/justification.1/"));
+            assertThat(node.getPropertyValueAsInt("size"), is(1));
+            assertThat(archive.getNode("telemetry/experiment.5/"), is(nullValue()));
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void shouldSaveAndLoadAggregateIndex() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            ZipTelemetryArchive archive = new ZipTelemetryArchive(file);
+            try {
+                archive.indexAggregates();
+                TelemetryNode experiment = archive.getRoots().get(0);
+                assertThat(experiment.getMaxPropertyValue("size"), is(2.0));
+                assertThat(experiment.getMeanPropertyValue("size"), is(1.0));
+            } finally {
+                archive.close();
+            }
+            assertThat(new File(file.getPath() + ".aggregates").exists(), is(true));
+        }
+    }
+
+    private static String readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int b;
+        while ((b = inputStream.read()) != -1) {
+            bos.write(b);
+        }
+        inputStream.close();
+        return bos.toString("UTF-8");
+    }
+}
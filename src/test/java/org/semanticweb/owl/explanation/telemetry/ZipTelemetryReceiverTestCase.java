@@ -0,0 +1,298 @@
+package org.semanticweb.owl.explanation.telemetry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ZipTelemetryReceiverTestCase {
+
+    private File file;
+
+    private File otherFile;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("telemetry", ".zip");
+        otherFile = File.createTempFile("telemetry", ".zip");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        otherFile.delete();
+    }
+
+    @Test
+    public void shouldWriteSameEntriesInParallelMode() throws IOException {
+        writeExperiments(new ZipTelemetryReceiver(file));
+        writeExperiments(new ZipTelemetryReceiver(otherFile, ZipType.ZIPPED, Deflater.BEST_SPEED, 4));
+        List<String> expected = getEntryNames(file);
+        assertThat(getEntryNames(otherFile), is(expected));
+        ZipFile zipFile = new ZipFile(otherFile);
+        try {
+            ZipEntry axioms = zipFile.getEntry("telemetry/experiment.0/justification.99/axioms.txt");
+            assertThat(axioms.getMethod(), is(ZipEntry.DEFLATED));
+            assertThat(readFully(zipFile.getInputStream(axioms)), is(getAxioms(99)));
+            Properties properties = new Properties();
+            properties.load(zipFile.getInputStream(zipFile.getEntry("telemetry/experiment.0/justification.99/justification.properties")));
+            assertThat(properties.getProperty("size"), is("99"));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void shouldWritePrimitivePropertiesWhenTransmissionEnds() throws IOException {
+        ZipTelemetryReceiver receiver = new ZipTelemetryReceiver(file);
+        TelemetryInfo info = new DefaultTelemetryInfo("justification");
+        receiver.beginTransmission(info);
+        receiver.recordLong(info, "size", 3);
+        receiver.recordDouble(info, "ratio", 0.5);
+        receiver.recordBoolean(info, "entailed", false);
+        receiver.recordMeasurement(info, "size", "replaced");
+        receiver.endTransmission(info);
+        receiver.close();
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            Properties properties = new Properties();
+            properties.load(zipFile.getInputStream(zipFile.getEntry("telemetry/justification.0/justification.properties")));
+            assertThat(properties.getProperty("size"), is("replaced"));
+            assertThat(properties.getProperty("ratio"), is("0.5"));
+            assertThat(properties.getProperty("entailed"), is("false"));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void shouldCompressEntriesOnCallingThreadWithoutCompressionThreads() throws IOException {
+        writeExperiments(new ZipTelemetryReceiver(file));
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            ZipEntry axioms = zipFile.getEntry("telemetry/experiment.0/justification.99/axioms.txt");
+            assertThat(axioms.getMethod(), is(ZipEntry.DEFLATED));
+            assertThat(readFully(zipFile.getInputStream(axioms)), is(getAxioms(99)));
+        } finally {
+            zipFile.close();
+        }
+        // Sequential readers must also be able to follow the entries
+        ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(file));
+        try {
+            int count = 0;
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                if (entry.getName().equals("telemetry/experiment.0/justification.199/axioms.txt")) {
+                    StringBuilder sb = new StringBuilder();
+                    byte[] buffer = new byte[1024];
+                    int read;
+                    while ((read = zipInputStream.read(buffer)) != -1) {
+                        sb.append(new String(buffer, 0, read, "UTF-8"));
+                    }
+                    assertThat(sb.toString(), is(getAxioms(199)));
+                }
+                count++;
+            }
+            assertThat(count, is(getEntryNames(file).size()));
+        } finally {
+            zipInputStream.close();
+        }
+    }
+
+    @Test
+    public void shouldLeaveOverheadBalancedWhenObjectCannotBeSerialised() throws IOException {
+        ZipTelemetryReceiver receiver = new ZipTelemetryReceiver(file);
+        TelemetryInfo info = new DefaultTelemetryInfo("justification");
+        receiver.beginTransmission(info);
+        try {
+            receiver.recordObject(info, "broken", ".txt", new TelemetryObject() {
+                public String getPreferredSerialisedName() {
+                    return "broken";
+                }
+
+                public boolean isSerialisedAsXML() {
+                    return false;
+                }
+
+                public void serialise(OutputStream outputStream) {
+                    throw new IllegalStateException("Cannot serialise");
+                }
+            });
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertThat(TelemetryOverhead.getOverhead().getDepth(), is(0));
+        receiver.endTransmission(info);
+        receiver.close();
+    }
+
+    @Test
+    public void shouldStoreEntriesWhenUnzipped() throws IOException {
+        writeExperiments(new ZipTelemetryReceiver(file, ZipType.UNZIPPED));
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            ZipEntry axioms = zipFile.getEntry("telemetry/experiment.0/justification.3/axioms.txt");
+            assertThat(axioms.getMethod(), is(ZipEntry.STORED));
+            assertThat(readFully(zipFile.getInputStream(axioms)), is(getAxioms(3)));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void shouldWriteArchivesWithMoreThan65535Entries() throws IOException {
+        ZipTelemetryReceiver receiver = new ZipTelemetryReceiver(file, ZipType.ZIPPED, Deflater.BEST_SPEED, 2);
+        for (int i = 0; i < 400; i++) {
+            TelemetryInfo experiment = new DefaultTelemetryInfo("experiment");
+            receiver.beginTransmission(experiment);
+            for (int j = 0; j < 100; j++) {
+                TelemetryInfo check = new DefaultTelemetryInfo("check");
+                receiver.beginTransmission(check);
+                receiver.endTransmission(check);
+            }
+            receiver.endTransmission(experiment);
+        }
+        receiver.close();
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            // The root, and a directory and properties for each experiment and check
+            assertThat(zipFile.size(), is(1 + 2 * 400 * 101));
+            assertThat(zipFile.getEntry("telemetry/experiment.399/check.99/check.properties") != null, is(true));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void shouldNumberWideSiblingsInOrder() throws IOException {
+        ZipTelemetryReceiver receiver = new ZipTelemetryReceiver(file, ZipType.ZIPPED, Deflater.BEST_SPEED, 0);
+        for (int i = 0; i < 2; i++) {
+            TelemetryInfo experiment = new DefaultTelemetryInfo("experiment");
+            receiver.beginTransmission(experiment);
+            for (int j = 0; j < 20000; j++) {
+                TelemetryInfo justification = new DefaultTelemetryInfo(j % 2 == 0 ? "justification" : "check");
+                receiver.beginTransmission(justification);
+                receiver.endTransmission(justification);
+            }
+            receiver.endTransmission(experiment);
+        }
+        receiver.close();
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            assertThat(zipFile.getEntry("telemetry/experiment.1/justification.9999/") != null, is(true));
+            assertThat(zipFile.getEntry("telemetry/experiment.1/check.9999/") != null, is(true));
+            assertThat(zipFile.getEntry("telemetry/experiment.1/check.10000/") == null, is(true));
+            assertThat(zipFile.getEntry("telemetry/experiment.2/") == null, is(true));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void shouldNumberRootsInOneSequenceAcrossNames() throws IOException {
+        ZipTelemetryReceiver receiver = new ZipTelemetryReceiver(file);
+        for (String name : new String[]{"run-a", "run-b", "run-a"}) {
+            TelemetryInfo root = new DefaultTelemetryInfo(name);
+            receiver.beginTransmission(root);
+            receiver.endTransmission(root);
+        }
+        receiver.close();
+        List<String> entryNames = getEntryNames(file);
+        assertThat(entryNames.contains("telemetry/run-a.0/"), is(true));
+        assertThat(entryNames.contains("telemetry/run-b.1/"), is(true));
+        assertThat(entryNames.contains("telemetry/run-a.2/"), is(true));
+    }
+
+    @Test
+    public void shouldBufferEntriesUntilAutoFlushedRootEnds() throws IOException {
+        ZipTelemetryReceiver receiver = new ZipTelemetryReceiver(file);
+        TelemetryInfo buffered = new DefaultTelemetryInfo("buffered", false);
+        receiver.beginTransmission(buffered);
+        receiver.recordLong(buffered, "size", 1);
+        receiver.endTransmission(buffered);
+        assertThat(file.length(), is(0L));
+        TelemetryInfo committed = new DefaultTelemetryInfo("committed", true);
+        receiver.beginTransmission(committed);
+        receiver.endTransmission(committed);
+        long committedLength = file.length();
+        assertThat(committedLength > 0, is(true));
+        receiver.close();
+        assertThat(getEntryNames(file).contains("telemetry/buffered.0/buffered.properties"), is(true));
+    }
+
+    @Test
+    public void shouldWriteEntriesWhenCommittingDurably() throws IOException {
+        ZipTelemetryReceiver receiver = new ZipTelemetryReceiver(file);
+        receiver.setDurableCommit(true);
+        TelemetryInfo committed = new DefaultTelemetryInfo("committed", true);
+        receiver.beginTransmission(committed);
+        receiver.recordLong(committed, "size", 1);
+        receiver.endTransmission(committed);
+        assertThat(file.length() > 0, is(true));
+        receiver.close();
+        assertThat(getEntryNames(file).contains("telemetry/committed.0/committed.properties"), is(true));
+    }
+
+    private static void writeExperiments(ZipTelemetryReceiver receiver) {
+        TelemetryInfo experiment = new DefaultTelemetryInfo("experiment");
+        receiver.beginTransmission(experiment);
+        for (int i = 0; i < 200; i++) {
+            TelemetryInfo justification = new DefaultTelemetryInfo("justification");
+            receiver.beginTransmission(justification);
+            receiver.recordLong(justification, "size", i);
+            receiver.recordObject(justification, "axioms", ".txt", getAxioms(i));
+            receiver.endTransmission(justification);
+        }
+        receiver.endTransmission(experiment);
+        receiver.close();
+    }
+
+    private static String getAxioms(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("A").append(i).append(" SubClassOf B").append(i).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static List<String> getEntryNames(File file) throws IOException {
+        List<String> names = new ArrayList<String>();
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement().getName());
+            }
+        } finally {
+            zipFile.close();
+        }
+        return names;
+    }
+
+    private static String readFully(InputStream inputStream) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            sb.append(new String(buffer, 0, read, "UTF-8"));
+        }
+        inputStream.close();
+        return sb.toString();
+    }
+}